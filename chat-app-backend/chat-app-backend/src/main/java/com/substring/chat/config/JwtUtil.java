@@ -1,9 +1,11 @@
 package com.substring.chat.config;
 
+import com.substring.chat.entities.User;
 import io.jsonwebtoken.Claims;
+import io.jsonwebtoken.JwtParser;
 import io.jsonwebtoken.Jwts;
-import io.jsonwebtoken.SignatureAlgorithm;
 import io.jsonwebtoken.security.Keys;
+import jakarta.annotation.PostConstruct;
 import org.springframework.beans.factory.annotation.Value;
 import org.springframework.security.core.userdetails.UserDetails;
 import org.springframework.stereotype.Component;
@@ -13,21 +15,76 @@ import java.nio.charset.StandardCharsets;
 import java.util.Date;
 import java.util.HashMap;
 import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
 import java.util.function.Function;
 
 @Component
 public class JwtUtil {
 
+    public static final String CLAIM_USER_ID = "uid";
+    public static final String CLAIM_NAME = "name";
+
     @Value("${jwt.secret}")
     private String secret;
 
     @Value("${jwt.expiration}")
     private Long expiration; // in milliseconds (24 hours = 86400000)
 
-    // Generate secret key from string
-    private SecretKey getSigningKey() {
-        byte[] keyBytes = secret.getBytes(StandardCharsets.UTF_8);
-        return Keys.hmacShaKeyFor(keyBytes);
+    @Value("${jwt.cache.max-entries:10000}")
+    private int cacheMaxEntries;
+
+    // Built once, both are immutable and thread-safe
+    private SecretKey signingKey;
+    private JwtParser parser;
+
+    // Tokens whose signature was already checked, with their parsed claims
+    private final Map<String, VerifiedToken> verifiedTokens = new ConcurrentHashMap<>();
+
+    private final AtomicLong cacheHits = new AtomicLong();
+    private final AtomicLong cacheMisses = new AtomicLong();
+
+    private record VerifiedToken(Claims claims, long expiresAt) {
+    }
+
+    @PostConstruct
+    public void init() {
+        signingKey = Keys.hmacShaKeyFor(secret.getBytes(StandardCharsets.UTF_8));
+        parser = Jwts.parser().verifyWith(signingKey).build();
+    }
+
+    /**
+     * Verify token and return its claims, parsing it at most once. Tokens seen
+     * before are answered from the cache until they expire; unknown tokens go
+     * through full signature and expiry checks.
+     *
+     * @throws io.jsonwebtoken.JwtException if the token is invalid or expired
+     */
+    public Claims verifyToken(String token) {
+        long now = System.currentTimeMillis();
+        VerifiedToken cached = verifiedTokens.get(token);
+        if (cached != null) {
+            if (cached.expiresAt() > now) {
+                cacheHits.incrementAndGet();
+                return cached.claims();
+            }
+            verifiedTokens.remove(token);
+        }
+
+        cacheMisses.incrementAndGet();
+        Claims claims = extractAllClaims(token);
+
+        Date exp = claims.getExpiration();
+        if (exp != null) {
+            if (verifiedTokens.size() >= cacheMaxEntries) {
+                verifiedTokens.values().removeIf(v -> v.expiresAt() <= now);
+                if (verifiedTokens.size() >= cacheMaxEntries) {
+                    verifiedTokens.clear();
+                }
+            }
+            verifiedTokens.put(token, new VerifiedToken(claims, exp.getTime()));
+        }
+        return claims;
     }
 
     // Extract username (email) from token
@@ -42,22 +99,13 @@ public class JwtUtil {
 
     // Extract specific claim from token
     public <T> T extractClaim(String token, Function<Claims, T> claimsResolver) {
-        final Claims claims = extractAllClaims(token);
+        final Claims claims = verifyToken(token);
         return claimsResolver.apply(claims);
     }
 
-    // Extract all claims from token
+    // Extract all claims from token (verifies signature and expiry)
     private Claims extractAllClaims(String token) {
-        return Jwts.parser()
-                .verifyWith(getSigningKey())
-                .build()
-                .parseSignedClaims(token)
-                .getPayload();
-    }
-
-    // Check if token is expired
-    private Boolean isTokenExpired(String token) {
-        return extractExpiration(token).before(new Date());
+        return parser.parseSignedClaims(token).getPayload();
     }
 
     // Generate token for user
@@ -66,6 +114,24 @@ public class JwtUtil {
         return createToken(claims, username);
     }
 
+    // Generate token carrying user ID and display name, so requests can be
+    // authenticated without loading the user
+    public String generateToken(User user) {
+        Map<String, Object> claims = new HashMap<>();
+        claims.put(CLAIM_USER_ID, user.getId());
+        claims.put(CLAIM_NAME, user.getName());
+        return createToken(claims, user.getEmail());
+    }
+
+    // Build principal from claims, null for tokens issued without a user ID
+    public AuthenticatedUser toPrincipal(Claims claims) {
+        String userId = claims.get(CLAIM_USER_ID, String.class);
+        if (userId == null) {
+            return null;
+        }
+        return new AuthenticatedUser(userId, claims.getSubject(), claims.get(CLAIM_NAME, String.class));
+    }
+
     // Create token with claims
     private String createToken(Map<String, Object> claims, String subject) {
         return Jwts.builder()
@@ -73,23 +139,37 @@ public class JwtUtil {
                 .subject(subject)
                 .issuedAt(new Date(System.currentTimeMillis()))
                 .expiration(new Date(System.currentTimeMillis() + expiration))
-                .signWith(getSigningKey(), Jwts.SIG.HS256)
+                .signWith(signingKey, Jwts.SIG.HS256)
                 .compact();
     }
 
-    // Validate token
+    // Validate token against user, parsing it once
     public Boolean validateToken(String token, UserDetails userDetails) {
-        final String username = extractUsername(token);
-        return (username.equals(userDetails.getUsername()) && !isTokenExpired(token));
+        try {
+            return verifyToken(token).getSubject().equals(userDetails.getUsername());
+        } catch (Exception e) {
+            return false;
+        }
     }
 
     // Validate token without UserDetails
     public Boolean validateToken(String token) {
         try {
-            extractAllClaims(token);
-            return !isTokenExpired(token);
+            verifyToken(token);
+            return true;
         } catch (Exception e) {
             return false;
         }
     }
+
+    /**
+     * Verified-token cache counters
+     */
+    public Map<String, Object> getCacheStats() {
+        Map<String, Object> stats = new HashMap<>();
+        stats.put("tokens", verifiedTokens.size());
+        stats.put("hits", cacheHits.get());
+        stats.put("misses", cacheMisses.get());
+        return stats;
+    }
 }
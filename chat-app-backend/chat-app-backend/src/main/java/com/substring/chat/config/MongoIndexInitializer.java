@@ -0,0 +1,63 @@
+package com.substring.chat.config;
+
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.data.mongodb.core.MongoTemplate;
+import org.springframework.data.mongodb.core.index.IndexDefinition;
+import org.springframework.data.mongodb.core.index.IndexOperations;
+import org.springframework.data.mongodb.core.index.IndexResolver;
+import org.springframework.data.mongodb.core.mapping.Document;
+import org.springframework.data.mongodb.core.mapping.MongoMappingContext;
+import org.springframework.data.mongodb.core.mapping.MongoPersistentEntity;
+import org.springframework.stereotype.Component;
+
+/**
+ * Creates the indexes declared with {@code @Indexed} and {@code @CompoundIndex}
+ * on every {@code @Document} entity.
+ *
+ * Spring Data leaves {@code auto-index-creation} off, so without this the
+ * annotations are documentation only. Indexes are created one by one in the
+ * background; a failing index (e.g. a unique index over duplicate data) is
+ * logged and skipped instead of stopping the application. Creating an index
+ * that already exists is a no-op.
+ */
+@Component
+public class MongoIndexInitializer {
+
+    @Autowired
+    private MongoTemplate mongoTemplate;
+
+    @Autowired
+    private MongoMappingContext mappingContext;
+
+    @EventListener(ApplicationReadyEvent.class)
+    public void createIndexes() {
+        Thread worker = new Thread(this::ensureIndexes, "mongo-indexes");
+        worker.setDaemon(true);
+        worker.start();
+    }
+
+    private void ensureIndexes() {
+        IndexResolver resolver = IndexResolver.create(mappingContext);
+        int created = 0;
+        int failed = 0;
+        for (MongoPersistentEntity<?> entity : mappingContext.getPersistentEntities()) {
+            if (!entity.isAnnotationPresent(Document.class)) {
+                continue;
+            }
+            IndexOperations indexOps = mongoTemplate.indexOps(entity.getType());
+            for (IndexDefinition index : resolver.resolveIndexFor(entity.getTypeInformation())) {
+                try {
+                    indexOps.createIndex(index);
+                    created++;
+                } catch (Exception e) {
+                    failed++;
+                    System.err.println("❌ Could not create index " + index.getIndexKeys() + " on "
+                            + entity.getCollection() + ": " + e.getMessage());
+                }
+            }
+        }
+        System.out.println("🗂️ MongoDB indexes ensured: " + created + " ok, " + failed + " failed");
+    }
+}
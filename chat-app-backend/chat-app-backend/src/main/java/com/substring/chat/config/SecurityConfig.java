@@ -44,6 +44,7 @@ public class SecurityConfig {
                         .requestMatchers("/app/**").permitAll() // WebSocket app destination
                         .requestMatchers("/topic/**").permitAll() // WebSocket topic
                         .requestMatchers("/user/**").permitAll() // WebSocket user queue
+                        .requestMatchers("/api/files/local/**").permitAll() // Local storage, unguessable keys
                         // Protected endpoints
                         .requestMatchers("/api/**").authenticated()
                         .anyRequest().authenticated())
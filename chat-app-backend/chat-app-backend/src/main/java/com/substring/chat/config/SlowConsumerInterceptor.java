@@ -0,0 +1,292 @@
+package com.substring.chat.config;
+
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.event.EventListener;
+import org.springframework.messaging.Message;
+import org.springframework.messaging.MessageChannel;
+import org.springframework.messaging.MessageHandler;
+import org.springframework.messaging.simp.SimpMessageHeaderAccessor;
+import org.springframework.messaging.simp.SimpMessageType;
+import org.springframework.messaging.support.ExecutorChannelInterceptor;
+import org.springframework.stereotype.Component;
+import org.springframework.web.socket.CloseStatus;
+import org.springframework.web.socket.WebSocketHandler;
+import org.springframework.web.socket.WebSocketMessage;
+import org.springframework.web.socket.WebSocketSession;
+import org.springframework.web.socket.handler.ConcurrentWebSocketSessionDecorator;
+import org.springframework.web.socket.handler.WebSocketHandlerDecorator;
+import org.springframework.web.socket.messaging.SessionDisconnectEvent;
+
+import java.io.IOException;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Deque;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Outbound channel guard against clients that read slowly.
+ *
+ * Each WebSocket session is wrapped in a {@link TrackedSession}, the
+ * concurrent send decorator that buffers frames while a send to the socket is
+ * in progress. A session is congested once that buffer holds
+ * {@code backlog-bytes} or a single send has been blocked for
+ * {@code stall-ms}, and frames are then handled by destination type:
+ * <ul>
+ * <li>typing and presence updates are dropped, the next one supersedes them</li>
+ * <li>full-state snapshots (room user lists) are coalesced, at any load: while
+ * one is queued, newer ones replace its payload instead of queueing</li>
+ * <li>everything else goes to a bounded per-session replay queue, sent in order
+ * once the buffer falls to half the limit and no send is stalled</li>
+ * </ul>
+ * The send time and buffer size limits stay as the hard stop for sessions that
+ * never recover.
+ */
+@Component
+public class SlowConsumerInterceptor implements ExecutorChannelInterceptor {
+
+    private enum Policy { DROP, COALESCE, REPLAY }
+
+    private static final int REPLAY_BATCH = 50;
+
+    @Value("${chat.stomp.slow-consumer.backlog-bytes:65536}")
+    private int backlogBytes;
+
+    @Value("${chat.stomp.slow-consumer.stall-ms:2000}")
+    private long stallMs;
+
+    @Value("${chat.stomp.slow-consumer.replay-capacity:500}")
+    private int replayCapacity;
+
+    @Value("${chat.stomp.slow-consumer.send-time-limit-ms:15000}")
+    private int sendTimeLimitMs;
+
+    @Value("${chat.stomp.slow-consumer.send-buffer-size-limit:524288}")
+    private int sendBufferSizeLimit;
+
+    // Open sessions only, registered when the connection is established
+    private final Map<String, TrackedSession> sessions = new ConcurrentHashMap<>();
+
+    // Set while replayed frames are re-sent, so they skip the policies
+    private final ThreadLocal<Boolean> replaying = ThreadLocal.withInitial(() -> false);
+
+    private volatile MessageChannel outboundChannel;
+
+    private final AtomicLong dropped = new AtomicLong();
+    private final AtomicLong coalesced = new AtomicLong();
+    private final AtomicLong deferred = new AtomicLong();
+    private final AtomicLong replayed = new AtomicLong();
+    private final AtomicLong replayOverflow = new AtomicLong();
+
+    /**
+     * The socket-facing send decorator of one session. Wrapped inside the one
+     * the STOMP handler adds, so this is where a slow socket's frames pile up.
+     */
+    private final class TrackedSession extends ConcurrentWebSocketSessionDecorator {
+        final Object lock = new Object();
+        final Deque<Message<?>> replay = new ArrayDeque<>();
+        final Map<String, Message<?>> latest = new HashMap<>(); // Newest snapshot per destination
+        boolean draining;
+
+        TrackedSession(WebSocketSession session) {
+            super(session, sendTimeLimitMs, sendBufferSizeLimit);
+        }
+
+        boolean isCongested() {
+            return getBufferSize() >= backlogBytes || getTimeSinceSendStarted() >= stallMs;
+        }
+
+        boolean hasCaughtUp() {
+            return getBufferSize() <= backlogBytes / 2 && getTimeSinceSendStarted() < stallMs;
+        }
+
+        @Override
+        public void sendMessage(WebSocketMessage<?> message) throws IOException {
+            super.sendMessage(message);
+            // Returns once this thread flushed the buffer, or left it to the thread that is flushing
+            drain(this);
+        }
+    }
+
+    /**
+     * Wraps each session in a {@link TrackedSession} before the STOMP handler
+     * sees it
+     */
+    public WebSocketHandler decorate(WebSocketHandler handler) {
+        return new WebSocketHandlerDecorator(handler) {
+            @Override
+            public void afterConnectionEstablished(WebSocketSession session) throws Exception {
+                TrackedSession tracked = new TrackedSession(session);
+                sessions.put(session.getId(), tracked);
+                super.afterConnectionEstablished(tracked);
+            }
+
+            @Override
+            public void afterConnectionClosed(WebSocketSession session, CloseStatus closeStatus) throws Exception {
+                // Whatever is still deferred is in history; the client reloads it on reconnect
+                sessions.remove(session.getId());
+                super.afterConnectionClosed(session, closeStatus);
+            }
+        };
+    }
+
+    @Override
+    public Message<?> preSend(Message<?> message, MessageChannel channel) {
+        outboundChannel = channel;
+        String sessionId = SimpMessageHeaderAccessor.getSessionId(message.getHeaders());
+        TrackedSession session = sessionId != null ? sessions.get(sessionId) : null;
+        if (session == null || replaying.get()
+                || SimpMessageHeaderAccessor.getMessageType(message.getHeaders()) != SimpMessageType.MESSAGE) {
+            return message;
+        }
+
+        String destination = SimpMessageHeaderAccessor.getDestination(message.getHeaders());
+        Policy policy = policyOf(destination);
+
+        synchronized (session.lock) {
+            boolean congested = session.isCongested();
+            switch (policy) {
+                case DROP -> {
+                    if (congested) {
+                        dropped.incrementAndGet();
+                        return null;
+                    }
+                }
+                case COALESCE -> {
+                    if (session.latest.containsKey(destination)) {
+                        // One is queued already, it will carry this payload
+                        session.latest.put(destination, message);
+                        coalesced.incrementAndGet();
+                        return null;
+                    }
+                    session.latest.put(destination, message);
+                }
+                case REPLAY -> {
+                    if (congested || !session.replay.isEmpty()) {
+                        // Keep order: once anything waits, later frames wait behind it
+                        if (session.replay.size() >= replayCapacity) {
+                            session.replay.pollFirst();
+                            replayOverflow.incrementAndGet();
+                        }
+                        session.replay.addLast(message);
+                        deferred.incrementAndGet();
+                        return null;
+                    }
+                }
+            }
+        }
+        return message;
+    }
+
+    @Override
+    public void afterSendCompletion(Message<?> message, MessageChannel channel, boolean sent, Exception ex) {
+        if (sent) {
+            return;
+        }
+        // Rejected before beforeHandle could take the snapshot; clear it, or every later
+        // snapshot for the destination would be coalesced into one that is never sent
+        String sessionId = SimpMessageHeaderAccessor.getSessionId(message.getHeaders());
+        TrackedSession session = sessionId != null ? sessions.get(sessionId) : null;
+        String destination = SimpMessageHeaderAccessor.getDestination(message.getHeaders());
+        if (session != null && destination != null && policyOf(destination) == Policy.COALESCE) {
+            synchronized (session.lock) {
+                session.latest.remove(destination);
+            }
+        }
+    }
+
+    @Override
+    public Message<?> beforeHandle(Message<?> message, MessageChannel channel, MessageHandler handler) {
+        String sessionId = SimpMessageHeaderAccessor.getSessionId(message.getHeaders());
+        TrackedSession session = sessionId != null ? sessions.get(sessionId) : null;
+        if (session == null) {
+            return message;
+        }
+        String destination = SimpMessageHeaderAccessor.getDestination(message.getHeaders());
+        if (destination != null && policyOf(destination) == Policy.COALESCE) {
+            synchronized (session.lock) {
+                Message<?> newest = session.latest.remove(destination);
+                if (newest != null) {
+                    return newest;
+                }
+            }
+        }
+        return message;
+    }
+
+    @Override
+    public void afterMessageHandled(Message<?> message, MessageChannel channel, MessageHandler handler, Exception ex) {
+        String sessionId = SimpMessageHeaderAccessor.getSessionId(message.getHeaders());
+        TrackedSession session = sessionId != null ? sessions.get(sessionId) : null;
+        if (session != null) {
+            drain(session);
+        }
+    }
+
+    /**
+     * Re-send deferred frames once the session has caught up
+     */
+    private void drain(TrackedSession session) {
+        MessageChannel channel = outboundChannel;
+        List<Message<?>> batch;
+        synchronized (session.lock) {
+            if (channel == null || session.draining || session.replay.isEmpty() || !session.hasCaughtUp()) {
+                return;
+            }
+            session.draining = true;
+            batch = new ArrayList<>();
+            while (!session.replay.isEmpty() && batch.size() < REPLAY_BATCH) {
+                batch.add(session.replay.pollFirst());
+            }
+        }
+        replaying.set(true);
+        try {
+            for (Message<?> frame : batch) {
+                channel.send(frame);
+                replayed.incrementAndGet();
+            }
+        } finally {
+            replaying.set(false);
+            synchronized (session.lock) {
+                session.draining = false;
+            }
+        }
+    }
+
+    @EventListener
+    public void onDisconnect(SessionDisconnectEvent event) {
+        sessions.remove(event.getSessionId());
+    }
+
+    private Policy policyOf(String destination) {
+        if (destination == null) {
+            return Policy.REPLAY;
+        }
+        if (destination.contains("/typing") || destination.endsWith("/queue/user-status")) {
+            return Policy.DROP;
+        }
+        if (destination.startsWith("/topic/users/")) {
+            return Policy.COALESCE;
+        }
+        return Policy.REPLAY;
+    }
+
+    /**
+     * Slow-consumer counters
+     */
+    public Map<String, Object> getStats() {
+        Map<String, Object> stats = new HashMap<>();
+        stats.put("sessions", sessions.size());
+        stats.put("congestedSessions", sessions.values().stream().filter(TrackedSession::isCongested).count());
+        stats.put("bufferedBytes", sessions.values().stream().mapToLong(TrackedSession::getBufferSize).sum());
+        stats.put("dropped", dropped.get());
+        stats.put("coalesced", coalesced.get());
+        stats.put("deferred", deferred.get());
+        stats.put("replayed", replayed.get());
+        stats.put("replayOverflow", replayOverflow.get());
+        return stats;
+    }
+}
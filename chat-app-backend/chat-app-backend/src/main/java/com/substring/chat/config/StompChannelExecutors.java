@@ -0,0 +1,166 @@
+package com.substring.chat.config;
+
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.core.task.SimpleAsyncTaskExecutor;
+import org.springframework.scheduling.concurrent.ThreadPoolTaskExecutor;
+import org.springframework.stereotype.Component;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Executor;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Executors behind the STOMP client inbound and outbound channels.
+ *
+ * {@code pool} mode uses bounded thread pools sized by config. A
+ * {@link ThreadPoolTaskExecutor} only starts threads beyond its core size once
+ * the queue is full, so each pool runs with core size = max size and lets idle
+ * threads time out: it grows to {@code max-pool-size} as soon as work waits,
+ * and the queue only buffers beyond that. {@code virtual}
+ * mode runs every message on its own virtual thread, so handlers blocking on
+ * Mongo no longer hold a scarce pool thread; an optional concurrency limit
+ * caps how many run at once (callers wait when it is reached). Virtual mode
+ * needs a Java 21+ runtime and falls back to pools otherwise. Both are wrapped
+ * to count queued, active, completed and rejected tasks.
+ */
+@Component
+public class StompChannelExecutors {
+
+    @Value("${chat.stomp.executor.mode:pool}")
+    private String mode;
+
+    @Value("${chat.stomp.executor.inbound.max-pool-size:64}")
+    private int inboundMaxPoolSize;
+
+    @Value("${chat.stomp.executor.inbound.queue-capacity:10000}")
+    private int inboundQueueCapacity;
+
+    @Value("${chat.stomp.executor.outbound.max-pool-size:32}")
+    private int outboundMaxPoolSize;
+
+    @Value("${chat.stomp.executor.outbound.queue-capacity:10000}")
+    private int outboundQueueCapacity;
+
+    // Only used in virtual mode, -1 for no limit
+    @Value("${chat.stomp.executor.virtual.concurrency-limit:-1}")
+    private int virtualConcurrencyLimit;
+
+    private InstrumentedExecutor inbound;
+    private InstrumentedExecutor outbound;
+    private final List<ThreadPoolTaskExecutor> pools = new ArrayList<>();
+
+    @PostConstruct
+    public void init() {
+        if ("virtual".equalsIgnoreCase(mode) && Runtime.version().feature() < 21) {
+            System.out.println("⚠️ Virtual threads need Java 21+, using pool executors");
+            mode = "pool";
+        }
+        if ("virtual".equalsIgnoreCase(mode)) {
+            inbound = new InstrumentedExecutor(virtualExecutor("stomp-inbound-"));
+            outbound = new InstrumentedExecutor(virtualExecutor("stomp-outbound-"));
+        } else {
+            inbound = new InstrumentedExecutor(poolExecutor("stomp-inbound-",
+                    inboundMaxPoolSize, inboundQueueCapacity));
+            outbound = new InstrumentedExecutor(poolExecutor("stomp-outbound-",
+                    outboundMaxPoolSize, outboundQueueCapacity));
+        }
+        System.out.println("⚙️ STOMP channel executors: " + mode);
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        pools.forEach(ThreadPoolTaskExecutor::shutdown);
+    }
+
+    public Executor inbound() {
+        return inbound;
+    }
+
+    public Executor outbound() {
+        return outbound;
+    }
+
+    private Executor virtualExecutor(String prefix) {
+        SimpleAsyncTaskExecutor executor = new SimpleAsyncTaskExecutor(prefix);
+        executor.setVirtualThreads(true);
+        executor.setConcurrencyLimit(virtualConcurrencyLimit);
+        return executor;
+    }
+
+    private Executor poolExecutor(String prefix, int maxPoolSize, int queueCapacity) {
+        ThreadPoolTaskExecutor executor = new ThreadPoolTaskExecutor();
+        executor.setThreadNamePrefix(prefix);
+        // Core = max: a smaller core would only grow once the queue is full
+        executor.setCorePoolSize(maxPoolSize);
+        executor.setMaxPoolSize(maxPoolSize);
+        executor.setQueueCapacity(queueCapacity);
+        executor.setAllowCoreThreadTimeOut(true);
+        executor.initialize();
+        pools.add(executor);
+        return executor;
+    }
+
+    /**
+     * Executor counters, per channel
+     */
+    public Map<String, Object> getStats() {
+        Map<String, Object> stats = new HashMap<>();
+        stats.put("mode", mode);
+        stats.put("inbound", inbound.getStats());
+        stats.put("outbound", outbound.getStats());
+        return stats;
+    }
+
+    /**
+     * Counts tasks waiting for a thread (queued) and running (active)
+     */
+    static class InstrumentedExecutor implements Executor {
+        private final Executor delegate;
+        private final AtomicLong queued = new AtomicLong();
+        private final AtomicLong active = new AtomicLong();
+        private final AtomicLong completed = new AtomicLong();
+        private final AtomicLong rejected = new AtomicLong();
+        private final AtomicLong maxQueued = new AtomicLong();
+
+        InstrumentedExecutor(Executor delegate) {
+            this.delegate = delegate;
+        }
+
+        @Override
+        public void execute(Runnable task) {
+            maxQueued.accumulateAndGet(queued.incrementAndGet(), Math::max);
+            try {
+                delegate.execute(() -> {
+                    queued.decrementAndGet();
+                    active.incrementAndGet();
+                    try {
+                        task.run();
+                    } finally {
+                        active.decrementAndGet();
+                        completed.incrementAndGet();
+                    }
+                });
+            } catch (RejectedExecutionException e) {
+                queued.decrementAndGet();
+                rejected.incrementAndGet();
+                throw e;
+            }
+        }
+
+        Map<String, Object> getStats() {
+            Map<String, Object> stats = new HashMap<>();
+            stats.put("queued", queued.get());
+            stats.put("maxQueued", maxQueued.get());
+            stats.put("active", active.get());
+            stats.put("completed", completed.get());
+            stats.put("rejected", rejected.get());
+            return stats;
+        }
+    }
+}
@@ -0,0 +1,357 @@
+package com.substring.chat.config;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.node.ArrayNode;
+import com.fasterxml.jackson.databind.node.JsonNodeFactory;
+import com.fasterxml.jackson.databind.node.ObjectNode;
+import com.fasterxml.jackson.dataformat.cbor.databind.CBORMapper;
+import com.fasterxml.jackson.dataformat.smile.databind.SmileMapper;
+import org.springframework.context.event.EventListener;
+import org.springframework.messaging.Message;
+import org.springframework.messaging.MessageChannel;
+import org.springframework.messaging.MessageHandler;
+import org.springframework.messaging.MessageHeaders;
+import org.springframework.messaging.converter.MappingJackson2MessageConverter;
+import org.springframework.messaging.converter.MessageConverter;
+import org.springframework.messaging.simp.SimpMessageHeaderAccessor;
+import org.springframework.messaging.simp.SimpMessageType;
+import org.springframework.messaging.simp.stomp.StompHeaderAccessor;
+import org.springframework.messaging.support.ExecutorChannelInterceptor;
+import org.springframework.messaging.support.MessageBuilder;
+import org.springframework.stereotype.Component;
+import org.springframework.util.MimeType;
+import org.springframework.util.MimeTypeUtils;
+import org.springframework.web.socket.WebSocketHandler;
+import org.springframework.web.socket.WebSocketSession;
+import org.springframework.web.socket.handler.WebSocketHandlerDecorator;
+import org.springframework.web.socket.messaging.SessionConnectEvent;
+import org.springframework.web.socket.messaging.SessionDisconnectEvent;
+import org.springframework.web.socket.sockjs.transport.SockJsSession;
+
+import java.util.Collections;
+import java.util.EnumMap;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Per-session wire format for outbound STOMP frames.
+ *
+ * A client picks its format with the {@code content-type} header of its
+ * CONNECT frame:
+ * <ul>
+ * <li>{@code application/json} (or none): frames as today</li>
+ * <li>{@code application/vnd.chat.compact+json}: JSON without null or empty
+ * fields and with the short keys from {@link #SHORT_KEYS}</li>
+ * <li>{@code application/cbor} or {@code application/x-jackson-smile}: the
+ * compact tree in that binary encoding, sent as binary WebSocket frames</li>
+ * </ul>
+ * Binary frames need a plain WebSocket session ({@code /chat/websocket});
+ * SockJS sessions asking for one get compact JSON instead. Encoded frames
+ * carry a {@code payload-format} header. Inbound SEND frames may use the
+ * binary content types as well, see {@link #inboundConverters()}.
+ */
+@Component
+public class StompPayloadCodec implements ExecutorChannelInterceptor {
+
+    public enum Format { JSON, COMPACT, CBOR, SMILE }
+
+    public static final String FORMAT_HEADER = "payload-format";
+
+    public static final MimeType COMPACT_JSON = new MimeType("application", "vnd.chat.compact+json");
+    public static final MimeType CBOR = new MimeType("application", "cbor");
+    public static final MimeType SMILE = new MimeType("application", "x-jackson-smile");
+
+    // Set on sessions that are not SockJS and can therefore receive binary frames
+    private static final String BINARY_CAPABLE = "stompBinaryCapable";
+
+    /**
+     * Field name -> short key, applied at every nesting level
+     */
+    public static final Map<String, String> SHORT_KEYS;
+
+    static {
+        Map<String, String> keys = new LinkedHashMap<>();
+        keys.put("conversationId", "cv");
+        keys.put("senderId", "si");
+        keys.put("senderName", "sn");
+        keys.put("senderAvatar", "sa");
+        keys.put("receiverId", "ri");
+        keys.put("receiverName", "rn");
+        keys.put("content", "c");
+        keys.put("timestamp", "ts");
+        keys.put("read", "rd");
+        keys.put("readAt", "ra");
+        keys.put("delivered", "dl");
+        keys.put("deliveredAt", "da");
+        keys.put("fileUrl", "fu");
+        keys.put("fileType", "ft");
+        keys.put("fileName", "fn");
+        keys.put("fileSize", "fs");
+        keys.put("reactions", "rx");
+        keys.put("replyTo", "rt");
+        keys.put("forwardedFromId", "ffi");
+        keys.put("forwardedFromName", "ffn");
+        keys.put("deletedFor", "df");
+        keys.put("deletedForEveryone", "de");
+        keys.put("deletedAt", "dt");
+        keys.put("messageId", "mi");
+        keys.put("groupId", "gi");
+        keys.put("channelId", "ci");
+        keys.put("roomId", "ro");
+        keys.put("userId", "ui");
+        keys.put("userName", "un");
+        keys.put("mentionedUserIds", "mu");
+        keys.put("readBy", "rb");
+        keys.put("pinned", "pn");
+        keys.put("isTyping", "ty");
+        keys.put("status", "st");
+        keys.put("type", "tp");
+        keys.put("emoji", "em");
+        keys.put("count", "ct");
+        keys.put("added", "ad");
+        keys.put("lastSeen", "ls");
+        SHORT_KEYS = Collections.unmodifiableMap(keys);
+    }
+
+    private final ObjectMapper jsonMapper = new ObjectMapper();
+    private final ObjectMapper cborMapper = new CBORMapper();
+    private final ObjectMapper smileMapper = new SmileMapper();
+
+    private final Map<String, Format> sessionFormats = new ConcurrentHashMap<>();
+    private final Map<Format, FormatStats> stats = new EnumMap<>(Format.class);
+
+    private final AtomicLong encodeFailures = new AtomicLong();
+
+    public StompPayloadCodec() {
+        for (Format format : Format.values()) {
+            stats.put(format, new FormatStats());
+        }
+    }
+
+    /**
+     * Converters so inbound SEND frames may be CBOR or Smile. They only match
+     * frames that carry their content type, so outbound messages (which have
+     * none) still go through the default JSON converter.
+     */
+    public List<MessageConverter> inboundConverters() {
+        MappingJackson2MessageConverter cbor = new MappingJackson2MessageConverter(CBOR);
+        cbor.setObjectMapper(CBORMapper.builder().findAndAddModules().build());
+        cbor.setStrictContentTypeMatch(true);
+        MappingJackson2MessageConverter smile = new MappingJackson2MessageConverter(SMILE);
+        smile.setObjectMapper(SmileMapper.builder().findAndAddModules().build());
+        smile.setStrictContentTypeMatch(true);
+        return List.of(cbor, smile);
+    }
+
+    /**
+     * Marks sessions that can take binary frames, so CONNECT can honour a binary
+     * format
+     */
+    public WebSocketHandler decorate(WebSocketHandler handler) {
+        return new WebSocketHandlerDecorator(handler) {
+            @Override
+            public void afterConnectionEstablished(WebSocketSession session) throws Exception {
+                if (!(session instanceof SockJsSession)) {
+                    session.getAttributes().put(BINARY_CAPABLE, Boolean.TRUE);
+                }
+                super.afterConnectionEstablished(session);
+            }
+        };
+    }
+
+    @EventListener
+    public void onConnect(SessionConnectEvent event) {
+        StompHeaderAccessor accessor = StompHeaderAccessor.wrap(event.getMessage());
+        String sessionId = accessor.getSessionId();
+        String requested = accessor.getFirstNativeHeader(StompHeaderAccessor.STOMP_CONTENT_TYPE_HEADER);
+        if (sessionId == null || requested == null) {
+            return;
+        }
+
+        Format format;
+        try {
+            format = formatOf(MimeTypeUtils.parseMimeType(requested));
+        } catch (Exception e) {
+            return;
+        }
+        if (format == Format.CBOR || format == Format.SMILE) {
+            Map<String, Object> attributes = accessor.getSessionAttributes();
+            if (attributes == null || !Boolean.TRUE.equals(attributes.get(BINARY_CAPABLE))) {
+                format = Format.COMPACT;
+            }
+        }
+        if (format != Format.JSON) {
+            sessionFormats.put(sessionId, format);
+        }
+    }
+
+    @EventListener
+    public void onDisconnect(SessionDisconnectEvent event) {
+        sessionFormats.remove(event.getSessionId());
+    }
+
+    /**
+     * Re-encodes JSON MESSAGE frames on the outbound executor thread, so the
+     * work is spread over the pool rather than done by the sender
+     */
+    @Override
+    public Message<?> beforeHandle(Message<?> message, MessageChannel channel, MessageHandler handler) {
+        MessageHeaders headers = message.getHeaders();
+        String sessionId = SimpMessageHeaderAccessor.getSessionId(headers);
+        Format format = sessionId != null ? sessionFormats.get(sessionId) : null;
+        if (format == null
+                || SimpMessageHeaderAccessor.getMessageType(headers) != SimpMessageType.MESSAGE
+                || !(message.getPayload() instanceof byte[] json)
+                || json.length == 0
+                || !isJson(headers.get(MessageHeaders.CONTENT_TYPE))) {
+            return message;
+        }
+
+        long start = System.nanoTime();
+        byte[] encoded;
+        try {
+            JsonNode tree = jsonMapper.readTree(json);
+            if (tree.isMissingNode()) {
+                return message;
+            }
+            // The payload keeps its type, only what is inside it is compacted
+            if (tree.isObject()) {
+                tree = compactObject(tree);
+            } else if (tree.isArray()) {
+                tree = compactArray(tree);
+            }
+            encoded = switch (format) {
+                case CBOR -> cborMapper.writeValueAsBytes(tree);
+                case SMILE -> smileMapper.writeValueAsBytes(tree);
+                default -> jsonMapper.writeValueAsBytes(tree);
+            };
+        } catch (Exception e) {
+            // Not worth losing the frame over, send it as it was
+            encodeFailures.incrementAndGet();
+            return message;
+        }
+        stats.get(format).record(json.length, encoded.length, System.nanoTime() - start);
+
+        SimpMessageHeaderAccessor accessor = SimpMessageHeaderAccessor.wrap(message);
+        if (format == Format.CBOR || format == Format.SMILE) {
+            // Octet-stream is what makes the STOMP handler send a binary frame
+            accessor.setContentType(MimeTypeUtils.APPLICATION_OCTET_STREAM);
+        }
+        accessor.setNativeHeader(FORMAT_HEADER, format.name().toLowerCase());
+        return MessageBuilder.createMessage(encoded, accessor.getMessageHeaders());
+    }
+
+    /**
+     * Drops null and empty values and shortens known keys. Returns null for
+     * values that should be left out.
+     */
+    private JsonNode compact(JsonNode node) {
+        if (node == null || node.isNull() || node.isMissingNode()) {
+            return null;
+        }
+        if (node.isObject()) {
+            ObjectNode result = compactObject(node);
+            return result.isEmpty() ? null : result;
+        }
+        if (node.isArray()) {
+            ArrayNode result = compactArray(node);
+            return result.isEmpty() ? null : result;
+        }
+        if (node.isTextual() && node.textValue().isEmpty()) {
+            return null;
+        }
+        return node;
+    }
+
+    private ObjectNode compactObject(JsonNode node) {
+        ObjectNode result = JsonNodeFactory.instance.objectNode();
+        for (Map.Entry<String, JsonNode> field : node.properties()) {
+            JsonNode value = compact(field.getValue());
+            if (value != null) {
+                result.set(SHORT_KEYS.getOrDefault(field.getKey(), field.getKey()), value);
+            }
+        }
+        return result;
+    }
+
+    private ArrayNode compactArray(JsonNode node) {
+        ArrayNode result = JsonNodeFactory.instance.arrayNode();
+        for (JsonNode element : node) {
+            JsonNode value = compact(element);
+            // Keep positions in arrays, an empty element becomes null
+            result.add(value != null ? value : JsonNodeFactory.instance.nullNode());
+        }
+        return result;
+    }
+
+    private boolean isJson(Object contentType) {
+        if (contentType == null) {
+            return false;
+        }
+        MimeType mimeType = contentType instanceof MimeType m ? m : MimeTypeUtils.parseMimeType(contentType.toString());
+        return MimeTypeUtils.APPLICATION_JSON.isCompatibleWith(mimeType);
+    }
+
+    private Format formatOf(MimeType mimeType) {
+        if (COMPACT_JSON.isCompatibleWith(mimeType)) {
+            return Format.COMPACT;
+        }
+        if (CBOR.isCompatibleWith(mimeType)) {
+            return Format.CBOR;
+        }
+        if (SMILE.isCompatibleWith(mimeType)) {
+            return Format.SMILE;
+        }
+        return Format.JSON;
+    }
+
+    /**
+     * Bytes per frame before and after encoding, and encoding CPU, per format
+     */
+    public Map<String, Object> getStats() {
+        Map<String, Object> result = new LinkedHashMap<>();
+        Map<Format, Long> sessionsByFormat = new EnumMap<>(Format.class);
+        sessionFormats.values().forEach(f -> sessionsByFormat.merge(f, 1L, Long::sum));
+        for (Format format : Format.values()) {
+            if (format == Format.JSON) {
+                continue;
+            }
+            Map<String, Object> formatStats = stats.get(format).toMap();
+            formatStats.put("sessions", sessionsByFormat.getOrDefault(format, 0L));
+            result.put(format.name().toLowerCase(), formatStats);
+        }
+        result.put("encodeFailures", encodeFailures.get());
+        return result;
+    }
+
+    private static final class FormatStats {
+        final AtomicLong frames = new AtomicLong();
+        final AtomicLong jsonBytes = new AtomicLong();
+        final AtomicLong encodedBytes = new AtomicLong();
+        final AtomicLong encodeNanos = new AtomicLong();
+
+        void record(int jsonLength, int encodedLength, long nanos) {
+            frames.incrementAndGet();
+            jsonBytes.addAndGet(jsonLength);
+            encodedBytes.addAndGet(encodedLength);
+            encodeNanos.addAndGet(nanos);
+        }
+
+        Map<String, Object> toMap() {
+            long count = frames.get();
+            Map<String, Object> map = new HashMap<>();
+            map.put("frames", count);
+            map.put("jsonBytes", jsonBytes.get());
+            map.put("encodedBytes", encodedBytes.get());
+            map.put("avgJsonBytesPerFrame", count > 0 ? jsonBytes.get() / count : 0);
+            map.put("avgEncodedBytesPerFrame", count > 0 ? encodedBytes.get() / count : 0);
+            map.put("avgEncodeMicros", count > 0 ? encodeNanos.get() / count / 1000 : 0);
+            return map;
+        }
+    }
+}
@@ -1,24 +1,30 @@
 package com.substring.chat.config;
 
+import com.substring.chat.services.WebSocketSessionRegistry;
+import io.jsonwebtoken.Claims;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.context.annotation.Bean;
 import org.springframework.context.annotation.Configuration;
 import org.springframework.messaging.Message;
 import org.springframework.messaging.MessageChannel;
+import org.springframework.messaging.converter.MessageConverter;
+import org.springframework.messaging.simp.SimpMessageHeaderAccessor;
 import org.springframework.messaging.simp.config.ChannelRegistration;
 import org.springframework.messaging.simp.config.MessageBrokerRegistry;
+import org.springframework.messaging.simp.config.StompBrokerRelayRegistration;
 import org.springframework.messaging.simp.stomp.StompCommand;
 import org.springframework.messaging.simp.stomp.StompHeaderAccessor;
 import org.springframework.messaging.support.ChannelInterceptor;
 import org.springframework.messaging.support.MessageHeaderAccessor;
 import org.springframework.scheduling.concurrent.ThreadPoolTaskScheduler;
-import org.springframework.security.core.userdetails.UserDetails;
-import org.springframework.security.core.userdetails.UserDetailsService;
 import org.springframework.web.socket.config.annotation.EnableWebSocketMessageBroker;
 import org.springframework.web.socket.config.annotation.StompEndpointRegistry;
 import org.springframework.web.socket.config.annotation.WebSocketMessageBrokerConfigurer;
+import org.springframework.web.socket.config.annotation.WebSocketTransportRegistration;
 
 import java.security.Principal;
+import java.util.List;
 
 @Configuration
 @EnableWebSocketMessageBroker
@@ -31,15 +37,78 @@ public class WebSocketConfig implements WebSocketMessageBrokerConfigurer {
     private com.substring.chat.repositories.UserRepository userRepository;
 
     @Autowired
-    private UserDetailsService userDetailsService;
+    private WebSocketSessionRegistry sessionRegistry;
+
+    @Autowired
+    private StompChannelExecutors channelExecutors;
+
+    @Autowired
+    private SlowConsumerInterceptor slowConsumerInterceptor;
+
+    @Autowired
+    private StompPayloadCodec payloadCodec;
+
+    @Value("${chat.stomp.heartbeat-pool-size:2}")
+    private int heartbeatPoolSize;
+
+    @Value("${chat.stomp.slow-consumer.send-time-limit-ms:15000}")
+    private int sendTimeLimitMs;
+
+    @Value("${chat.stomp.slow-consumer.send-buffer-size-limit:524288}")
+    private int sendBufferSizeLimit;
+
+    @Value("${chat.broker.relay.enabled:false}")
+    private boolean relayEnabled;
+
+    @Value("${chat.broker.relay.host:localhost}")
+    private String relayHost;
+
+    @Value("${chat.broker.relay.port:61613}")
+    private int relayPort;
+
+    @Value("${chat.broker.relay.virtual-host:}")
+    private String relayVirtualHost;
+
+    @Value("${chat.broker.relay.client-login:guest}")
+    private String relayClientLogin;
+
+    @Value("${chat.broker.relay.client-passcode:guest}")
+    private String relayClientPasscode;
+
+    @Value("${chat.broker.relay.system-login:guest}")
+    private String relaySystemLogin;
+
+    @Value("${chat.broker.relay.system-passcode:guest}")
+    private String relaySystemPasscode;
 
     @Override
     public void configureMessageBroker(MessageBrokerRegistry config) {
-        // Enable simple broker for topics and user-specific queues
-        // 10 second heartbeat for production stability
-        config.enableSimpleBroker("/topic", "/queue")
-                .setHeartbeatValue(new long[] { 10000, 10000 })
-                .setTaskScheduler(heartBeatScheduler());
+        if (relayEnabled) {
+            // External STOMP broker, so /topic and /user/queue reach sessions on every node.
+            // Nodes share their user registries over the broker and hand user messages they
+            // cannot resolve locally to the others.
+            StompBrokerRelayRegistration relay = config.enableStompBrokerRelay("/topic", "/queue")
+                    .setRelayHost(relayHost)
+                    .setRelayPort(relayPort)
+                    .setClientLogin(relayClientLogin)
+                    .setClientPasscode(relayClientPasscode)
+                    .setSystemLogin(relaySystemLogin)
+                    .setSystemPasscode(relaySystemPasscode)
+                    .setSystemHeartbeatSendInterval(10000)
+                    .setSystemHeartbeatReceiveInterval(10000)
+                    .setUserRegistryBroadcast("/topic/simp-user-registry")
+                    .setUserDestinationBroadcast("/topic/unresolved-user-destination");
+            if (!relayVirtualHost.isEmpty()) {
+                relay.setVirtualHost(relayVirtualHost);
+            }
+            System.out.println("📡 STOMP broker relay enabled: " + relayHost + ":" + relayPort);
+        } else {
+            // Enable simple broker for topics and user-specific queues (single node)
+            // 10 second heartbeat for production stability
+            config.enableSimpleBroker("/topic", "/queue")
+                    .setHeartbeatValue(new long[] { 10000, 10000 })
+                    .setTaskScheduler(heartBeatScheduler());
+        }
 
         // Application destination prefix
         config.setApplicationDestinationPrefixes("/app");
@@ -50,36 +119,44 @@ public class WebSocketConfig implements WebSocketMessageBrokerConfigurer {
 
     @Override
     public void configureClientInboundChannel(ChannelRegistration registration) {
+        registration.executor(channelExecutors.inbound());
         registration.interceptors(new ChannelInterceptor() {
             @Override
             public Message<?> preSend(Message<?> message, MessageChannel channel) {
                 StompHeaderAccessor accessor = MessageHeaderAccessor.getAccessor(message, StompHeaderAccessor.class);
 
+                // Any inbound frame, heartbeats included, counts as session activity
+                String sessionId = SimpMessageHeaderAccessor.getSessionId(message.getHeaders());
+                if (sessionId != null) {
+                    sessionRegistry.touch(sessionId);
+                }
+
                 if (accessor != null && StompCommand.CONNECT.equals(accessor.getCommand())) {
                     String authHeader = accessor.getFirstNativeHeader("Authorization");
                     if (authHeader != null && authHeader.startsWith("Bearer ")) {
                         String token = authHeader.substring(7);
                         try {
-                            String email = jwtUtil.extractUsername(token);
-                            if (email != null) {
-                                UserDetails userDetails = userDetailsService.loadUserByUsername(email);
-                                if (jwtUtil.validateToken(token, userDetails)) {
-                                    // Find user to get ID
-                                    com.substring.chat.entities.User user = userRepository.findByEmail(email)
-                                            .orElse(null);
-                                    if (user != null) {
-                                        System.out.println("✅ STOMP Authenticated: " + user.getName() + " (ID: "
-                                                + user.getId() + ")");
-                                        // Create principal with ID instead of email for consistent delivery
-                                        Principal principal = new Principal() {
-                                            @Override
-                                            public String getName() {
-                                                return user.getId();
-                                            }
-                                        };
-                                        accessor.setUser(principal);
+                            // Parsing verifies signature and expiry
+                            Claims claims = jwtUtil.verifyToken(token);
+                            AuthenticatedUser user = jwtUtil.toPrincipal(claims);
+                            if (user == null) {
+                                // Token issued before it carried the user ID
+                                user = userRepository.findByEmail(claims.getSubject())
+                                        .map(AuthenticatedUser::of)
+                                        .orElse(null);
+                            }
+                            if (user != null) {
+                                String userId = user.getId();
+                                System.out.println("✅ STOMP Authenticated: " + user.getName() + " (ID: "
+                                        + userId + ")");
+                                // Create principal with ID instead of email for consistent delivery
+                                Principal principal = new Principal() {
+                                    @Override
+                                    public String getName() {
+                                        return userId;
                                     }
-                                }
+                                };
+                                accessor.setUser(principal);
                             }
                         } catch (Exception e) {
                             System.out.println("❌ STOMP Auth failed: " + e.getMessage());
@@ -93,18 +170,44 @@ public class WebSocketConfig implements WebSocketMessageBrokerConfigurer {
         });
     }
 
+    @Override
+    public void configureClientOutboundChannel(ChannelRegistration registration) {
+        registration.executor(channelExecutors.outbound());
+        // Slow-consumer policies first, so frames that are dropped are never encoded
+        registration.interceptors(slowConsumerInterceptor, payloadCodec);
+    }
+
+    @Override
+    public boolean configureMessageConverters(List<MessageConverter> messageConverters) {
+        // CBOR and Smile for inbound frames that declare them; JSON defaults stay
+        messageConverters.addAll(payloadCodec.inboundConverters());
+        return true;
+    }
+
+    @Override
+    public void configureWebSocketTransport(WebSocketTransportRegistration registration) {
+        // Hard limits per session: a send blocked longer than this, or more buffered
+        // than this, closes the session. The slow-consumer decorator applies the same
+        // limits closer to the socket, where the frames actually wait.
+        // Factories wrap in order, so the codec (added last) sees the raw session first
+        registration.setSendTimeLimit(sendTimeLimitMs)
+                .setSendBufferSizeLimit(sendBufferSizeLimit)
+                .addDecoratorFactory(slowConsumerInterceptor::decorate)
+                .addDecoratorFactory(payloadCodec::decorate);
+    }
+
     @Override
     public void registerStompEndpoints(StompEndpointRegistry registry) {
         registry.addEndpoint("/chat") // WebSocket connection endpoint
                 .setAllowedOriginPatterns("*") // Broaden for debugging/stability
-                .withSockJS();
+                .withSockJS(); // Plain WebSocket clients (binary frames) use /chat/websocket
     }
 
     // Required for heartbeat
     @Bean
     public ThreadPoolTaskScheduler heartBeatScheduler() {
         ThreadPoolTaskScheduler scheduler = new ThreadPoolTaskScheduler();
-        scheduler.setPoolSize(1);
+        scheduler.setPoolSize(heartbeatPoolSize);
         scheduler.setThreadNamePrefix("wss-heartbeat-thread-");
         scheduler.initialize();
         return scheduler;
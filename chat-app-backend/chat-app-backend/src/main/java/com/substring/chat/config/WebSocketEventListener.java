@@ -1,6 +1,7 @@
 package com.substring.chat.config;
 
 import com.substring.chat.services.UserStatusService;
+import com.substring.chat.services.WebSocketSessionRegistry;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.context.event.EventListener;
 import org.springframework.messaging.simp.stomp.StompHeaderAccessor;
@@ -16,6 +17,9 @@ public class WebSocketEventListener {
     @Autowired
     private UserStatusService userStatusService;
 
+    @Autowired
+    private WebSocketSessionRegistry sessionRegistry;
+
     @EventListener
     public void handleWebSocketConnectListener(SessionConnectEvent event) {
         StompHeaderAccessor headerAccessor = StompHeaderAccessor.wrap(event.getMessage());
@@ -23,22 +27,22 @@ public class WebSocketEventListener {
 
         if (userPrincipal != null) {
             String userId = getUserIdFromPrincipal(userPrincipal);
-            if (userId != null) {
-                userStatusService.setUserOnline(userId, true);
+            if (userId != null && headerAccessor.getSessionId() != null) {
+                // Only the first session of a user changes presence
+                if (sessionRegistry.register(userId, headerAccessor.getSessionId())) {
+                    userStatusService.setUserOnline(userId, true);
+                }
             }
         }
     }
 
     @EventListener
     public void handleWebSocketDisconnectListener(SessionDisconnectEvent event) {
-        StompHeaderAccessor headerAccessor = StompHeaderAccessor.wrap(event.getMessage());
-        Principal userPrincipal = headerAccessor.getUser();
-
-        if (userPrincipal != null) {
-            String userId = getUserIdFromPrincipal(userPrincipal);
-            if (userId != null) {
-                userStatusService.setUserOnline(userId, false);
-            }
+        // Sessions are looked up by ID, so this works even without a principal
+        String userId = sessionRegistry.unregister(event.getSessionId());
+        if (userId != null) {
+            // Last session of the user closed
+            userStatusService.setUserOnline(userId, false);
         }
     }
 
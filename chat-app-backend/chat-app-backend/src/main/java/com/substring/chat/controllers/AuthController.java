@@ -1,5 +1,6 @@
 package com.substring.chat.controllers;
 
+import com.substring.chat.config.AuthenticatedUser;
 import com.substring.chat.config.JwtUtil;
 import com.substring.chat.entities.User;
 import com.substring.chat.payload.AuthResponse;
@@ -14,9 +15,7 @@ import org.springframework.http.ResponseEntity;
 import org.springframework.security.authentication.AuthenticationManager;
 import org.springframework.security.authentication.BadCredentialsException;
 import org.springframework.security.authentication.UsernamePasswordAuthenticationToken;
-import org.springframework.security.core.Authentication;
-import org.springframework.security.core.context.SecurityContextHolder;
-import org.springframework.security.core.userdetails.UserDetails;
+import org.springframework.security.core.annotation.AuthenticationPrincipal;
 import org.springframework.security.crypto.password.PasswordEncoder;
 import org.springframework.web.bind.annotation.*;
 
@@ -67,7 +66,7 @@ public class AuthController {
             User savedUser = userRepository.save(user);
 
             // Generate JWT token
-            String token = jwtUtil.generateToken(savedUser.getEmail());
+            String token = jwtUtil.generateToken(savedUser);
 
             // Return response
             AuthResponse response = new AuthResponse(
@@ -109,7 +108,7 @@ public class AuthController {
             userRepository.save(user);
 
             // Generate JWT token
-            String token = jwtUtil.generateToken(user.getEmail());
+            String token = jwtUtil.generateToken(user);
 
             // Return response
             AuthResponse response = new AuthResponse(
@@ -137,14 +136,10 @@ public class AuthController {
      * GET /api/auth/me
      */
     @GetMapping("/me")
-    public ResponseEntity<?> getCurrentUser() {
+    public ResponseEntity<?> getCurrentUser(@AuthenticationPrincipal AuthenticatedUser principal) {
         try {
-            // Get authenticated user from security context
-            Authentication authentication = SecurityContextHolder.getContext().getAuthentication();
-            String email = ((UserDetails) authentication.getPrincipal()).getUsername();
-
             // Find user
-            User user = userRepository.findByEmail(email)
+            User user = userRepository.findById(principal.getId())
                     .orElseThrow(() -> new RuntimeException("User not found"));
 
             // Create response
@@ -173,12 +168,9 @@ public class AuthController {
      * POST /api/auth/logout
      */
     @PostMapping("/logout")
-    public ResponseEntity<?> logoutUser() {
+    public ResponseEntity<?> logoutUser(@AuthenticationPrincipal AuthenticatedUser principal) {
         try {
-            Authentication authentication = SecurityContextHolder.getContext().getAuthentication();
-            String email = ((UserDetails) authentication.getPrincipal()).getUsername();
-
-            User user = userRepository.findByEmail(email)
+            User user = userRepository.findById(principal.getId())
                     .orElseThrow(() -> new RuntimeException("User not found"));
 
             user.setOnline(false);
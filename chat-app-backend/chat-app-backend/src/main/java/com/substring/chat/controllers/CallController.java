@@ -1,19 +1,18 @@
 package com.substring.chat.controllers;
 
+import com.substring.chat.config.AuthenticatedUser;
 import com.substring.chat.entities.CallSession;
 import com.substring.chat.entities.CallStatus;
 import com.substring.chat.entities.CallType;
-import com.substring.chat.entities.User;
-import com.substring.chat.repositories.UserRepository;
 import com.substring.chat.services.CallService;
+import com.substring.chat.services.UserProfileCache;
 import lombok.Data;
 import lombok.RequiredArgsConstructor;
 import org.springframework.http.ResponseEntity;
 import org.springframework.messaging.handler.annotation.MessageMapping;
 import org.springframework.messaging.handler.annotation.Payload;
 import org.springframework.messaging.simp.SimpMessagingTemplate;
-import org.springframework.security.core.Authentication;
-import org.springframework.security.core.context.SecurityContextHolder;
+import org.springframework.security.core.annotation.AuthenticationPrincipal;
 import org.springframework.web.bind.annotation.*;
 
 import java.util.List;
@@ -25,19 +24,17 @@ import java.util.Map;
 public class CallController {
 
     private final CallService callService;
-    private final UserRepository userRepository;
+    private final UserProfileCache userProfileCache;
     private final SimpMessagingTemplate messagingTemplate;
 
     @PostMapping("/start")
-    public ResponseEntity<?> startCall(@RequestBody StartCallRequest request) {
-        Authentication auth = SecurityContextHolder.getContext().getAuthentication();
-        User initiator = userRepository.findByEmail(auth.getName())
-                .orElseThrow(() -> new RuntimeException("User not found"));
-
+    public ResponseEntity<?> startCall(
+            @AuthenticationPrincipal AuthenticatedUser initiator,
+            @RequestBody StartCallRequest request) {
         CallSession session = callService.startCall(
                 initiator.getId(),
                 initiator.getName(),
-                initiator.getAvatarUrl(),
+                userProfileCache.get(initiator.getId()).getAvatarUrl(),
                 request.getParticipantIds(),
                 request.getCallType(),
                 request.isGroupCall(),
@@ -47,41 +44,31 @@ public class CallController {
     }
 
     @PostMapping("/{id}/accept")
-    public ResponseEntity<?> acceptCall(@PathVariable String id) {
-        Authentication auth = SecurityContextHolder.getContext().getAuthentication();
-        User user = userRepository.findByEmail(auth.getName())
-                .orElseThrow(() -> new RuntimeException("User not found"));
-
+    public ResponseEntity<?> acceptCall(
+            @AuthenticationPrincipal AuthenticatedUser user,
+            @PathVariable String id) {
         CallSession session = callService.acceptCall(id, user.getId());
         return ResponseEntity.ok(session);
     }
 
     @PostMapping("/{id}/decline")
-    public ResponseEntity<?> declineCall(@PathVariable String id) {
-        Authentication auth = SecurityContextHolder.getContext().getAuthentication();
-        User user = userRepository.findByEmail(auth.getName())
-                .orElseThrow(() -> new RuntimeException("User not found"));
-
+    public ResponseEntity<?> declineCall(
+            @AuthenticationPrincipal AuthenticatedUser user,
+            @PathVariable String id) {
         callService.declineCall(id, user.getId());
         return ResponseEntity.ok(Map.of("message", "Call declined"));
     }
 
     @PostMapping("/{id}/end")
-    public ResponseEntity<?> endCall(@PathVariable String id) {
-        Authentication auth = SecurityContextHolder.getContext().getAuthentication();
-        User user = userRepository.findByEmail(auth.getName())
-                .orElseThrow(() -> new RuntimeException("User not found"));
-
+    public ResponseEntity<?> endCall(
+            @AuthenticationPrincipal AuthenticatedUser user,
+            @PathVariable String id) {
         callService.endCall(id, user.getId());
         return ResponseEntity.ok(Map.of("message", "Call ended"));
     }
 
     @GetMapping("/history")
-    public ResponseEntity<?> getHistory() {
-        Authentication auth = SecurityContextHolder.getContext().getAuthentication();
-        User user = userRepository.findByEmail(auth.getName())
-                .orElseThrow(() -> new RuntimeException("User not found"));
-
+    public ResponseEntity<?> getHistory(@AuthenticationPrincipal AuthenticatedUser user) {
         return ResponseEntity.ok(callService.getHistory(user.getId()));
     }
 
@@ -1,22 +1,26 @@
 package com.substring.chat.controllers;
 
+import com.substring.chat.config.AuthenticatedUser;
 import com.substring.chat.entities.Channel;
 import com.substring.chat.entities.ChannelMessage;
-import com.substring.chat.entities.User;
+import com.substring.chat.payload.ReactionRequest;
 import com.substring.chat.repositories.ChannelMessageRepository;
-import com.substring.chat.repositories.UserRepository;
 import com.substring.chat.services.ChannelService;
+import com.substring.chat.services.MessageBus;
+import com.substring.chat.services.MessageReactionService;
+import com.substring.chat.services.UserProfileCache;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.data.domain.Page;
 import org.springframework.data.domain.PageRequest;
 import org.springframework.data.domain.Pageable;
+import org.springframework.data.mongodb.core.query.Criteria;
+import org.springframework.data.mongodb.core.query.Query;
 import org.springframework.http.ResponseEntity;
-import org.springframework.messaging.simp.SimpMessagingTemplate;
-import org.springframework.security.core.Authentication;
-import org.springframework.security.core.context.SecurityContextHolder;
+import org.springframework.security.core.annotation.AuthenticationPrincipal;
 import org.springframework.web.bind.annotation.*;
 
 import java.time.LocalDateTime;
+import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
 
@@ -31,21 +35,21 @@ public class ChannelController {
     private ChannelMessageRepository messageRepository;
 
     @Autowired
-    private UserRepository userRepository;
+    private MessageBus messageBus;
 
     @Autowired
-    private SimpMessagingTemplate messagingTemplate;
+    private UserProfileCache userProfileCache;
+
+    @Autowired
+    private MessageReactionService messageReactionService;
 
     /**
      * POST /api/channels - Create new channel
      */
     @PostMapping
-    public ResponseEntity<?> createChannel(@RequestBody CreateChannelRequest request) {
-        Authentication auth = SecurityContextHolder.getContext().getAuthentication();
-        String email = auth.getName();
-        User user = userRepository.findByEmail(email)
-                .orElseThrow(() -> new RuntimeException("User not found"));
-
+    public ResponseEntity<?> createChannel(
+            @AuthenticationPrincipal AuthenticatedUser user,
+            @RequestBody CreateChannelRequest request) {
         Channel channel = channelService.createChannel(
                 user.getId(),
                 user.getName(),
@@ -60,12 +64,7 @@ public class ChannelController {
      * GET /api/channels/my - Get user's subscribed channels
      */
     @GetMapping("/my")
-    public ResponseEntity<?> getMyChannels() {
-        Authentication auth = SecurityContextHolder.getContext().getAuthentication();
-        String email = auth.getName();
-        User user = userRepository.findByEmail(email)
-                .orElseThrow(() -> new RuntimeException("User not found"));
-
+    public ResponseEntity<?> getMyChannels(@AuthenticationPrincipal AuthenticatedUser user) {
         List<Channel> channels = channelService.getUserChannels(user.getId());
 
         return ResponseEntity.ok(channels);
@@ -75,12 +74,9 @@ public class ChannelController {
      * POST /api/channels/{id}/subscribe - Subscribe to channel
      */
     @PostMapping("/{id}/subscribe")
-    public ResponseEntity<?> subscribe(@PathVariable String id) {
-        Authentication auth = SecurityContextHolder.getContext().getAuthentication();
-        String email = auth.getName();
-        User user = userRepository.findByEmail(email)
-                .orElseThrow(() -> new RuntimeException("User not found"));
-
+    public ResponseEntity<?> subscribe(
+            @AuthenticationPrincipal AuthenticatedUser user,
+            @PathVariable String id) {
         channelService.subscribe(id, user.getId());
 
         return ResponseEntity.ok(Map.of("message", "Subscribed successfully"));
@@ -90,12 +86,9 @@ public class ChannelController {
      * POST /api/channels/{id}/unsubscribe - Unsubscribe from channel
      */
     @PostMapping("/{id}/unsubscribe")
-    public ResponseEntity<?> unsubscribe(@PathVariable String id) {
-        Authentication auth = SecurityContextHolder.getContext().getAuthentication();
-        String email = auth.getName();
-        User user = userRepository.findByEmail(email)
-                .orElseThrow(() -> new RuntimeException("User not found"));
-
+    public ResponseEntity<?> unsubscribe(
+            @AuthenticationPrincipal AuthenticatedUser user,
+            @PathVariable String id) {
         channelService.unsubscribe(id, user.getId());
 
         return ResponseEntity.ok(Map.of("message", "Unsubscribed successfully"));
@@ -106,13 +99,9 @@ public class ChannelController {
      */
     @PostMapping("/{id}/messages")
     public ResponseEntity<?> broadcastMessage(
+            @AuthenticationPrincipal AuthenticatedUser user,
             @PathVariable String id,
             @RequestBody BroadcastMessageRequest request) {
-        Authentication auth = SecurityContextHolder.getContext().getAuthentication();
-        String email = auth.getName();
-        User user = userRepository.findByEmail(email)
-                .orElseThrow(() -> new RuntimeException("User not found"));
-
         // Validate admin permission
         if (!channelService.isChannelAdmin(id, user.getId())) {
             return ResponseEntity.status(403).body(Map.of("error", "Only admins can broadcast"));
@@ -122,14 +111,14 @@ public class ChannelController {
         message.setChannelId(id);
         message.setAuthorId(user.getId());
         message.setAuthorName(user.getName());
-        message.setAuthorAvatar(user.getAvatarUrl());
+        message.setAuthorAvatar(userProfileCache.get(user.getId()).getAvatarUrl());
         message.setContent(request.getContent());
         message.setTimestamp(LocalDateTime.now());
 
         ChannelMessage saved = messageRepository.save(message);
 
         // Broadcast to all subscribers
-        messagingTemplate.convertAndSend("/topic/channel/" + id, saved);
+        messageBus.sendToTopic("/topic/channel/" + id, saved);
 
         return ResponseEntity.ok(saved);
     }
@@ -139,14 +128,10 @@ public class ChannelController {
      */
     @GetMapping("/{id}/messages")
     public ResponseEntity<?> getMessages(
+            @AuthenticationPrincipal AuthenticatedUser user,
             @PathVariable String id,
             @RequestParam(defaultValue = "0") int page,
             @RequestParam(defaultValue = "20") int size) {
-        Authentication auth = SecurityContextHolder.getContext().getAuthentication();
-        String email = auth.getName();
-        User user = userRepository.findByEmail(email)
-                .orElseThrow(() -> new RuntimeException("User not found"));
-
         // Validate subscription
         if (!channelService.isSubscribed(id, user.getId())) {
             return ResponseEntity.status(403).body(Map.of("error", "Not subscribed to this channel"));
@@ -159,6 +144,38 @@ public class ChannelController {
         return ResponseEntity.ok(messages);
     }
 
+    /**
+     * PUT /api/channels/{id}/messages/{messageId}/react - Toggle reaction
+     */
+    @PutMapping("/{id}/messages/{messageId}/react")
+    public ResponseEntity<?> reactToMessage(
+            @AuthenticationPrincipal AuthenticatedUser user,
+            @PathVariable String id,
+            @PathVariable String messageId,
+            @RequestBody ReactionRequest request) {
+        if (!channelService.isSubscribed(id, user.getId())) {
+            return ResponseEntity.status(403).body(Map.of("error", "Not subscribed to this channel"));
+        }
+
+        ChannelMessage message = messageReactionService.toggle(
+                new Query(Criteria.where("id").is(messageId).and("channelId").is(id)),
+                user.getId(), request.getEmoji(), ChannelMessage.class);
+        if (message == null) {
+            return ResponseEntity.status(404).body(Map.of("error", "Message not found"));
+        }
+
+        // Broadcast reaction event
+        Map<String, Object> event = new HashMap<>();
+        event.put("type", "MESSAGE_REACTION");
+        event.put("messageId", messageId);
+        event.put("userId", user.getId());
+        event.put("emoji", request.getEmoji());
+        event.put("reactions", message.getReactions());
+        messageBus.sendToTopic("/topic/channel/" + id + "/events", event);
+
+        return ResponseEntity.ok(Map.of("messageId", messageId, "reactions", message.getReactions()));
+    }
+
     // DTOs
     public static class CreateChannelRequest {
         private String name;
@@ -1,9 +1,8 @@
 package com.substring.chat.controllers;
 
 import com.substring.chat.entities.Message;
-import com.substring.chat.entities.Room;
 import com.substring.chat.playload.MessageRequest;
-import com.substring.chat.repositories.RoomRepository;
+import com.substring.chat.services.RoomMessageService;
 import jakarta.annotation.Nonnull;
 import org.springframework.messaging.handler.annotation.DestinationVariable;
 import org.springframework.messaging.handler.annotation.MessageMapping;
@@ -19,10 +18,10 @@ import java.time.LocalDateTime;
 public class ChatController {
 
 
-    private final RoomRepository roomRepository;
+    private final RoomMessageService roomMessageService;
 
-    public ChatController(RoomRepository roomRepository) {
-        this.roomRepository = roomRepository;
+    public ChatController(RoomMessageService roomMessageService) {
+        this.roomMessageService = roomMessageService;
     }
 
 
@@ -37,14 +36,12 @@ public class ChatController {
         System.out.println("👤 Sender: " + request.getSender());
         System.out.println("💬 Content: " + request.getContent());
 
-        Room room = roomRepository.findByRoomId(request.getRoomId());
         Message message = new Message();
         message.setContent(request.getContent());
         message.setSender(request.getSender());
         message.setTimeStamp(LocalDateTime.now());
-        if (room != null) {
-            room.getMessages().add(message);
-            roomRepository.save(room);
+        // Appends to the room's current bucket, the history itself is never loaded
+        if (roomMessageService.append(request.getRoomId(), message) != null) {
             System.out.println("✅ Message saved and broadcasting to /topic/room/" + roomId);
         } else {
             System.err.println("❌ Room not found: " + roomId);
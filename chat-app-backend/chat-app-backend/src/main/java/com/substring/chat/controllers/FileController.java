@@ -1,13 +1,15 @@
 package com.substring.chat.controllers;
 
+import com.substring.chat.config.AuthenticatedUser;
 import com.substring.chat.entities.FileAttachment;
-import com.substring.chat.entities.User;
-import com.substring.chat.repositories.UserRepository;
 import com.substring.chat.services.FileStorageService;
+import com.substring.chat.services.StorageBackend;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.core.io.Resource;
+import org.springframework.http.MediaType;
+import org.springframework.http.MediaTypeFactory;
 import org.springframework.http.ResponseEntity;
-import org.springframework.security.core.Authentication;
-import org.springframework.security.core.context.SecurityContextHolder;
+import org.springframework.security.core.annotation.AuthenticationPrincipal;
 import org.springframework.web.bind.annotation.*;
 import org.springframework.web.multipart.MultipartFile;
 
@@ -23,21 +25,17 @@ public class FileController {
     private FileStorageService fileStorageService;
 
     @Autowired
-    private UserRepository userRepository;
+    private StorageBackend storageBackend;
 
     /**
      * Upload a file
      * POST /api/files/upload
      */
     @PostMapping("/upload")
-    public ResponseEntity<?> uploadFile(@RequestParam("file") MultipartFile file) {
+    public ResponseEntity<?> uploadFile(
+            @AuthenticationPrincipal AuthenticatedUser user,
+            @RequestParam("file") MultipartFile file) {
         try {
-            // Get current user
-            Authentication authentication = SecurityContextHolder.getContext().getAuthentication();
-            String email = authentication.getName();
-            User user = userRepository.findByEmail(email)
-                    .orElseThrow(() -> new RuntimeException("User not found"));
-
             // Upload file
             FileAttachment attachment = fileStorageService.uploadFile(file, user.getId());
 
@@ -67,4 +65,19 @@ public class FileController {
             return ResponseEntity.badRequest().body(error);
         }
     }
+
+    /**
+     * Serve a file kept by the local storage backend
+     * GET /api/files/local/{key}
+     */
+    @GetMapping("/local/{key}")
+    public ResponseEntity<Resource> getLocalFile(@PathVariable String key) {
+        Resource resource = storageBackend.load(key);
+        if (resource == null) {
+            return ResponseEntity.notFound().build();
+        }
+        MediaType mediaType = MediaTypeFactory.getMediaType(resource)
+                .orElse(MediaType.APPLICATION_OCTET_STREAM);
+        return ResponseEntity.ok().contentType(mediaType).body(resource);
+    }
 }
@@ -1,41 +1,45 @@
 package com.substring.chat.controllers;
 
-import org.springframework.core.io.Resource;
-import org.springframework.core.io.UrlResource;
+import com.substring.chat.entities.LocalFile;
+import com.substring.chat.services.LocalFileStore;
+import jakarta.servlet.http.HttpServletRequest;
+import jakarta.servlet.http.HttpServletResponse;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.http.ContentDisposition;
 import org.springframework.http.HttpHeaders;
-import org.springframework.http.MediaType;
+import org.springframework.http.HttpRange;
 import org.springframework.http.ResponseEntity;
 import org.springframework.web.bind.annotation.*;
 import org.springframework.web.multipart.MultipartFile;
 
 import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.channels.WritableByteChannel;
+import java.nio.charset.StandardCharsets;
 import java.nio.file.Files;
 import java.nio.file.Path;
-import java.nio.file.Paths;
-import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
 import java.util.HashMap;
+import java.util.List;
 import java.util.Map;
-import java.util.UUID;
 
 @RestController
 @RequestMapping("/api/v1/files")
 @CrossOrigin(origins = { "http://localhost:*", "http://127.0.0.1:*" })
 public class FileUploadController {
 
-    private final String UPLOAD_DIR = "uploads/";
     private final long MAX_FILE_SIZE = 10 * 1024 * 1024; // 10MB
 
-    public FileUploadController() {
-        // Create upload directory if it doesn't exist
-        try {
-            Files.createDirectories(Paths.get(UPLOAD_DIR));
-            Files.createDirectories(Paths.get(UPLOAD_DIR + "images/"));
-            Files.createDirectories(Paths.get(UPLOAD_DIR + "documents/"));
-            Files.createDirectories(Paths.get(UPLOAD_DIR + "other/"));
-        } catch (IOException e) {
-            System.err.println("Could not create upload directories: " + e.getMessage());
-        }
-    }
+    // Tomcat sendfile: the connector streams the file itself after we return
+    private static final String SENDFILE_SUPPORT = "org.apache.tomcat.sendfile.support";
+    private static final String SENDFILE_FILENAME = "org.apache.tomcat.sendfile.filename";
+    private static final String SENDFILE_START = "org.apache.tomcat.sendfile.start";
+    private static final String SENDFILE_END = "org.apache.tomcat.sendfile.end";
+
+    @Autowired
+    private LocalFileStore localFileStore;
 
     @PostMapping("/upload")
     public ResponseEntity<?> uploadFile(
@@ -56,17 +60,10 @@ public class FileUploadController {
             String originalFilename = file.getOriginalFilename();
             String contentType = file.getContentType();
 
-            // Determine file type and directory
+            // Determine file type and save with its metadata
             String fileType = determineFileType(contentType);
-            String subDir = fileType + "s/";
-
-            // Generate unique filename
-            String fileExtension = getFileExtension(originalFilename);
-            String uniqueFilename = UUID.randomUUID().toString() + fileExtension;
-
-            // Save file
-            Path uploadPath = Paths.get(UPLOAD_DIR + subDir + uniqueFilename);
-            Files.copy(file.getInputStream(), uploadPath, StandardCopyOption.REPLACE_EXISTING);
+            LocalFile stored = localFileStore.save(file, fileType, roomId, sender);
+            String uniqueFilename = stored.getId();
 
             System.out.println("📎 File uploaded: " + originalFilename + " by " + sender);
             System.out.println("💾 Saved as: " + uniqueFilename + " (" + formatFileSize(file.getSize()) + ")");
@@ -88,49 +85,131 @@ public class FileUploadController {
         }
     }
 
+    /**
+     * Download a file. Supports single byte ranges, If-None-Match/If-Range
+     * against the stored SHA-256 ETag, and sends the bytes with sendfile when
+     * the connector offers it, FileChannel.transferTo otherwise.
+     */
     @GetMapping("/download/{filename}")
-    public ResponseEntity<Resource> downloadFile(@PathVariable String filename) {
-        try {
-            // Search in all subdirectories
-            Path filePath = findFile(filename);
+    public void downloadFile(@PathVariable String filename, HttpServletRequest request,
+            HttpServletResponse response) throws IOException {
+        LocalFile file = localFileStore.find(filename);
+        Path path = file != null ? localFileStore.resolve(file) : null;
+        if (path == null || !Files.isRegularFile(path)) {
+            response.setStatus(HttpServletResponse.SC_NOT_FOUND);
+            return;
+        }
+
+        long length = file.getSize();
+        String etag = "\"" + file.getSha256() + "\"";
+        response.setHeader(HttpHeaders.ETAG, etag);
+        response.setHeader(HttpHeaders.ACCEPT_RANGES, "bytes");
+        // Stored files never change, their names are unique
+        response.setHeader(HttpHeaders.CACHE_CONTROL, "private, max-age=31536000, immutable");
+        response.setHeader("X-Content-Type-Options", "nosniff");
+
+        if (matchesEtag(request.getHeader(HttpHeaders.IF_NONE_MATCH), etag)) {
+            localFileStore.recordNotModified();
+            response.setStatus(HttpServletResponse.SC_NOT_MODIFIED);
+            return;
+        }
 
-            if (filePath == null) {
-                return ResponseEntity.notFound().build();
+        long start = 0;
+        long end = length - 1;
+        boolean partial = false;
+        String range = request.getHeader(HttpHeaders.RANGE);
+        String ifRange = request.getHeader(HttpHeaders.IF_RANGE);
+        if (range != null && length > 0 && (ifRange == null || ifRange.equals(etag))) {
+            List<HttpRange> ranges;
+            try {
+                ranges = HttpRange.parseRanges(range);
+            } catch (IllegalArgumentException e) {
+                ranges = List.of();
+            }
+            // Multiple ranges are rare for files; answer them with the whole body
+            if (ranges.size() == 1) {
+                try {
+                    start = ranges.get(0).getRangeStart(length);
+                    end = ranges.get(0).getRangeEnd(length);
+                } catch (IllegalArgumentException e) {
+                    start = length;
+                }
+                if (start >= length || start > end) {
+                    response.setHeader(HttpHeaders.CONTENT_RANGE, "bytes */" + length);
+                    response.setStatus(HttpServletResponse.SC_REQUESTED_RANGE_NOT_SATISFIABLE);
+                    return;
+                }
+                partial = true;
+                response.setStatus(HttpServletResponse.SC_PARTIAL_CONTENT);
+                response.setHeader(HttpHeaders.CONTENT_RANGE, "bytes " + start + "-" + end + "/" + length);
             }
+        }
 
-            Resource resource = new UrlResource(filePath.toUri());
+        long count = length == 0 ? 0 : end - start + 1;
+        response.setContentType(file.getContentType());
+        response.setContentLengthLong(count);
+        // Only types the browser shows without running anything are displayed in place
+        ContentDisposition.Builder disposition = isInlineType(file.getContentType())
+                ? ContentDisposition.inline() : ContentDisposition.attachment();
+        response.setHeader(HttpHeaders.CONTENT_DISPOSITION, disposition
+                .filename(file.getOriginalFileName() != null ? file.getOriginalFileName() : filename,
+                        StandardCharsets.UTF_8)
+                .build().toString());
+        if ("HEAD".equalsIgnoreCase(request.getMethod()) || count == 0) {
+            return;
+        }
 
-            if (resource.exists() && resource.isReadable()) {
-                String contentType = Files.probeContentType(filePath);
-                if (contentType == null) {
-                    contentType = "application/octet-stream";
-                }
+        if (Boolean.TRUE.equals(request.getAttribute(SENDFILE_SUPPORT))) {
+            request.setAttribute(SENDFILE_FILENAME, path.toAbsolutePath().toString());
+            request.setAttribute(SENDFILE_START, start);
+            request.setAttribute(SENDFILE_END, end + 1);
+            localFileStore.recordDownload(count, partial, true);
+            return;
+        }
 
-                return ResponseEntity.ok()
-                        .contentType(MediaType.parseMediaType(contentType))
-                        .header(HttpHeaders.CONTENT_DISPOSITION, "inline; filename=\"" + filename + "\"")
-                        .body(resource);
-            } else {
-                return ResponseEntity.notFound().build();
+        try (FileChannel channel = FileChannel.open(path, StandardOpenOption.READ)) {
+            OutputStream out = response.getOutputStream();
+            WritableByteChannel target = Channels.newChannel(out);
+            long position = start;
+            long remaining = count;
+            while (remaining > 0) {
+                long sent = channel.transferTo(position, remaining, target);
+                if (sent <= 0) {
+                    break;
+                }
+                position += sent;
+                remaining -= sent;
             }
-
-        } catch (Exception e) {
-            System.err.println("❌ File download error: " + e.getMessage());
-            return ResponseEntity.internalServerError().build();
+            out.flush();
         }
+        localFileStore.recordDownload(count, partial, false);
     }
 
-    private Path findFile(String filename) throws IOException {
-        String[] subdirs = { "images/", "documents/", "other/" };
+    private boolean isInlineType(String contentType) {
+        if (contentType == null) {
+            return false;
+        }
+        String type = contentType.toLowerCase();
+        // SVG can carry scripts
+        return (type.startsWith("image/") && !type.startsWith("image/svg"))
+                || type.startsWith("audio/")
+                || type.equals("application/pdf");
+    }
 
-        for (String subdir : subdirs) {
-            Path path = Paths.get(UPLOAD_DIR + subdir + filename);
-            if (Files.exists(path)) {
-                return path;
+    private boolean matchesEtag(String ifNoneMatch, String etag) {
+        if (ifNoneMatch == null) {
+            return false;
+        }
+        for (String candidate : ifNoneMatch.split(",")) {
+            String value = candidate.trim();
+            if (value.startsWith("W/")) {
+                value = value.substring(2);
+            }
+            if (value.equals("*") || value.equals(etag)) {
+                return true;
             }
         }
-
-        return null;
+        return false;
     }
 
     private String determineFileType(String contentType) {
@@ -148,13 +227,6 @@ public class FileUploadController {
         }
     }
 
-    private String getFileExtension(String filename) {
-        if (filename == null)
-            return "";
-        int lastDot = filename.lastIndexOf('.');
-        return (lastDot == -1) ? "" : filename.substring(lastDot);
-    }
-
     private String formatFileSize(long size) {
         if (size < 1024)
             return size + " B";
@@ -1,14 +1,13 @@
 package com.substring.chat.controllers;
 
+import com.substring.chat.config.AuthenticatedUser;
 import com.substring.chat.entities.Group;
-import com.substring.chat.entities.User;
-import com.substring.chat.repositories.UserRepository;
 import com.substring.chat.services.GroupPermissionService;
 import com.substring.chat.services.GroupService;
+import com.substring.chat.services.UserProfileCache;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.http.ResponseEntity;
-import org.springframework.security.core.Authentication;
-import org.springframework.security.core.context.SecurityContextHolder;
+import org.springframework.security.core.annotation.AuthenticationPrincipal;
 import org.springframework.web.bind.annotation.*;
 
 import java.util.List;
@@ -25,18 +24,15 @@ public class GroupController {
     private GroupPermissionService permissionService;
 
     @Autowired
-    private UserRepository userRepository;
+    private UserProfileCache userProfileCache;
 
     /**
      * POST /api/groups - Create new group
      */
     @PostMapping
-    public ResponseEntity<?> createGroup(@RequestBody CreateGroupRequest request) {
-        Authentication auth = SecurityContextHolder.getContext().getAuthentication();
-        String email = auth.getName();
-        User user = userRepository.findByEmail(email)
-                .orElseThrow(() -> new RuntimeException("User not found"));
-
+    public ResponseEntity<?> createGroup(
+            @AuthenticationPrincipal AuthenticatedUser user,
+            @RequestBody CreateGroupRequest request) {
         Group group = groupService.createGroup(
                 user.getId(),
                 user.getName(),
@@ -51,12 +47,7 @@ public class GroupController {
      * GET /api/groups/my - Get user's groups
      */
     @GetMapping("/my")
-    public ResponseEntity<?> getMyGroups() {
-        Authentication auth = SecurityContextHolder.getContext().getAuthentication();
-        String email = auth.getName();
-        User user = userRepository.findByEmail(email)
-                .orElseThrow(() -> new RuntimeException("User not found"));
-
+    public ResponseEntity<?> getMyGroups(@AuthenticationPrincipal AuthenticatedUser user) {
         List<Group> groups = groupService.getUserGroups(user.getId());
 
         return ResponseEntity.ok(groups);
@@ -66,12 +57,9 @@ public class GroupController {
      * GET /api/groups/{id} - Get group details
      */
     @GetMapping("/{id}")
-    public ResponseEntity<?> getGroup(@PathVariable String id) {
-        Authentication auth = SecurityContextHolder.getContext().getAuthentication();
-        String email = auth.getName();
-        User user = userRepository.findByEmail(email)
-                .orElseThrow(() -> new RuntimeException("User not found"));
-
+    public ResponseEntity<?> getGroup(
+            @AuthenticationPrincipal AuthenticatedUser user,
+            @PathVariable String id) {
         // Validate membership
         if (!groupService.validateMembership(id, user.getId())) {
             return ResponseEntity.status(403).body(Map.of("error", "Not a member of this group"));
@@ -90,13 +78,9 @@ public class GroupController {
      */
     @PutMapping("/{id}")
     public ResponseEntity<?> updateGroup(
+            @AuthenticationPrincipal AuthenticatedUser user,
             @PathVariable String id,
             @RequestBody UpdateGroupRequest request) {
-        Authentication auth = SecurityContextHolder.getContext().getAuthentication();
-        String email = auth.getName();
-        User user = userRepository.findByEmail(email)
-                .orElseThrow(() -> new RuntimeException("User not found"));
-
         // Validate permission
         if (!permissionService.validatePermission(id, user.getId(), "EDIT_GROUP")) {
             return ResponseEntity.status(403).body(Map.of("error", "Insufficient permissions"));
@@ -115,12 +99,9 @@ public class GroupController {
      * DELETE /api/groups/{id} - Delete group
      */
     @DeleteMapping("/{id}")
-    public ResponseEntity<?> deleteGroup(@PathVariable String id) {
-        Authentication auth = SecurityContextHolder.getContext().getAuthentication();
-        String email = auth.getName();
-        User user = userRepository.findByEmail(email)
-                .orElseThrow(() -> new RuntimeException("User not found"));
-
+    public ResponseEntity<?> deleteGroup(
+            @AuthenticationPrincipal AuthenticatedUser user,
+            @PathVariable String id) {
         // Validate permission (only owner can delete)
         if (!permissionService.validatePermission(id, user.getId(), "DELETE_GROUP")) {
             return ResponseEntity.status(403).body(Map.of("error", "Only owner can delete group"));
@@ -135,12 +116,9 @@ public class GroupController {
      * POST /api/groups/{id}/exit - Leave the group
      */
     @PostMapping("/{id}/exit")
-    public ResponseEntity<?> exitGroup(@PathVariable String id) {
-        Authentication auth = SecurityContextHolder.getContext().getAuthentication();
-        String email = auth.getName();
-        User user = userRepository.findByEmail(email)
-                .orElseThrow(() -> new RuntimeException("User not found"));
-
+    public ResponseEntity<?> exitGroup(
+            @AuthenticationPrincipal AuthenticatedUser user,
+            @PathVariable String id) {
         // Validate membership
         if (!groupService.validateMembership(id, user.getId())) {
             return ResponseEntity.status(403).body(Map.of("error", "Not a member of this group"));
@@ -155,18 +133,15 @@ public class GroupController {
      * POST /api/groups/join/{inviteLink} - Join group via invite link
      */
     @PostMapping("/join/{inviteLink}")
-    public ResponseEntity<?> joinViaInvite(@PathVariable String inviteLink) {
-        Authentication auth = SecurityContextHolder.getContext().getAuthentication();
-        String email = auth.getName();
-        User user = userRepository.findByEmail(email)
-                .orElseThrow(() -> new RuntimeException("User not found"));
-
+    public ResponseEntity<?> joinViaInvite(
+            @AuthenticationPrincipal AuthenticatedUser user,
+            @PathVariable String inviteLink) {
         try {
             Group group = groupService.joinViaInvite(
                     inviteLink,
                     user.getId(),
                     user.getName(),
-                    user.getAvatarUrl());
+                    userProfileCache.get(user.getId()).getAvatarUrl());
 
             return ResponseEntity.ok(group);
         } catch (Exception e) {
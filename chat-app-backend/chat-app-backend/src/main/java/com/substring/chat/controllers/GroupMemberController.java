@@ -1,5 +1,6 @@
 package com.substring.chat.controllers;
 
+import com.substring.chat.config.AuthenticatedUser;
 import com.substring.chat.entities.GroupMember;
 import com.substring.chat.entities.GroupRole;
 import com.substring.chat.entities.User;
@@ -8,8 +9,7 @@ import com.substring.chat.services.GroupPermissionService;
 import com.substring.chat.services.GroupService;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.http.ResponseEntity;
-import org.springframework.security.core.Authentication;
-import org.springframework.security.core.context.SecurityContextHolder;
+import org.springframework.security.core.annotation.AuthenticationPrincipal;
 import org.springframework.web.bind.annotation.*;
 
 import java.util.List;
@@ -32,12 +32,9 @@ public class GroupMemberController {
      * GET /api/groups/{groupId}/members - Get all group members
      */
     @GetMapping
-    public ResponseEntity<?> getMembers(@PathVariable String groupId) {
-        Authentication auth = SecurityContextHolder.getContext().getAuthentication();
-        String email = auth.getName();
-        User user = userRepository.findByEmail(email)
-                .orElseThrow(() -> new RuntimeException("User not found"));
-
+    public ResponseEntity<?> getMembers(
+            @AuthenticationPrincipal AuthenticatedUser user,
+            @PathVariable String groupId) {
         // Validate membership
         if (!groupService.validateMembership(groupId, user.getId())) {
             return ResponseEntity.status(403).body(Map.of("error", "Not a member of this group"));
@@ -53,13 +50,9 @@ public class GroupMemberController {
      */
     @PostMapping
     public ResponseEntity<?> addMember(
+            @AuthenticationPrincipal AuthenticatedUser user,
             @PathVariable String groupId,
             @RequestBody AddMemberRequest request) {
-        Authentication auth = SecurityContextHolder.getContext().getAuthentication();
-        String email = auth.getName();
-        User user = userRepository.findByEmail(email)
-                .orElseThrow(() -> new RuntimeException("User not found"));
-
         // Validate permission
         if (!permissionService.validatePermission(groupId, user.getId(), "ADD_MEMBER")) {
             return ResponseEntity.status(403).body(Map.of("error", "Insufficient permissions"));
@@ -88,13 +81,9 @@ public class GroupMemberController {
      */
     @DeleteMapping("/{userId}")
     public ResponseEntity<?> removeMember(
+            @AuthenticationPrincipal AuthenticatedUser user,
             @PathVariable String groupId,
             @PathVariable String userId) {
-        Authentication auth = SecurityContextHolder.getContext().getAuthentication();
-        String email = auth.getName();
-        User user = userRepository.findByEmail(email)
-                .orElseThrow(() -> new RuntimeException("User not found"));
-
         // Validate permission
         if (!permissionService.validatePermission(groupId, user.getId(), "REMOVE_MEMBER")) {
             return ResponseEntity.status(403).body(Map.of("error", "Insufficient permissions"));
@@ -110,14 +99,10 @@ public class GroupMemberController {
      */
     @PutMapping("/{userId}/role")
     public ResponseEntity<?> updateRole(
+            @AuthenticationPrincipal AuthenticatedUser user,
             @PathVariable String groupId,
             @PathVariable String userId,
             @RequestBody UpdateRoleRequest request) {
-        Authentication auth = SecurityContextHolder.getContext().getAuthentication();
-        String email = auth.getName();
-        User user = userRepository.findByEmail(email)
-                .orElseThrow(() -> new RuntimeException("User not found"));
-
         // Validate permission (only owner can assign roles)
         if (!permissionService.validatePermission(groupId, user.getId(), "ASSIGN_ROLE")) {
             return ResponseEntity.status(403).body(Map.of("error", "Only owner can assign roles"));
@@ -1,25 +1,29 @@
 package com.substring.chat.controllers;
 
+import com.substring.chat.config.AuthenticatedUser;
 import com.substring.chat.entities.GroupMessage;
-import com.substring.chat.entities.User;
+import com.substring.chat.payload.ReactionRequest;
 import com.substring.chat.repositories.GroupMessageRepository;
-import com.substring.chat.repositories.UserRepository;
 import com.substring.chat.services.GroupPermissionService;
 import com.substring.chat.services.GroupService;
+import com.substring.chat.services.MessageBus;
+import com.substring.chat.services.MessageReactionService;
+import com.substring.chat.services.UserProfileCache;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.data.domain.Page;
 import org.springframework.data.domain.PageRequest;
 import org.springframework.data.domain.Pageable;
+import org.springframework.data.mongodb.core.query.Criteria;
+import org.springframework.data.mongodb.core.query.Query;
 import org.springframework.http.ResponseEntity;
 import org.springframework.messaging.handler.annotation.DestinationVariable;
 import org.springframework.messaging.handler.annotation.MessageMapping;
 import org.springframework.messaging.handler.annotation.Payload;
-import org.springframework.messaging.simp.SimpMessagingTemplate;
-import org.springframework.security.core.Authentication;
-import org.springframework.security.core.context.SecurityContextHolder;
+import org.springframework.security.core.annotation.AuthenticationPrincipal;
 import org.springframework.web.bind.annotation.*;
 
 import java.time.LocalDateTime;
+import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
 
@@ -37,24 +41,23 @@ public class GroupMessageController {
     private GroupPermissionService permissionService;
 
     @Autowired
-    private UserRepository userRepository;
+    private MessageBus messageBus;
 
     @Autowired
-    private SimpMessagingTemplate messagingTemplate;
+    private UserProfileCache userProfileCache;
+
+    @Autowired
+    private MessageReactionService messageReactionService;
 
     /**
      * GET /api/groups/{groupId}/messages - Get group messages with pagination
      */
     @GetMapping
     public ResponseEntity<?> getMessages(
+            @AuthenticationPrincipal AuthenticatedUser user,
             @PathVariable String groupId,
             @RequestParam(defaultValue = "0") int page,
             @RequestParam(defaultValue = "50") int size) {
-        Authentication auth = SecurityContextHolder.getContext().getAuthentication();
-        String email = auth.getName();
-        User user = userRepository.findByEmail(email)
-                .orElseThrow(() -> new RuntimeException("User not found"));
-
         // Validate membership
         if (!groupService.validateMembership(groupId, user.getId())) {
             return ResponseEntity.status(403).body(Map.of("error", "Not a member of this group"));
@@ -72,13 +75,9 @@ public class GroupMessageController {
      */
     @PostMapping
     public ResponseEntity<?> sendMessage(
+            @AuthenticationPrincipal AuthenticatedUser user,
             @PathVariable String groupId,
             @RequestBody SendMessageRequest request) {
-        Authentication auth = SecurityContextHolder.getContext().getAuthentication();
-        String email = auth.getName();
-        User user = userRepository.findByEmail(email)
-                .orElseThrow(() -> new RuntimeException("User not found"));
-
         // Validate permission
         if (!permissionService.validatePermission(groupId, user.getId(), "SEND_MESSAGE")) {
             return ResponseEntity.status(403).body(Map.of("error", "Insufficient permissions"));
@@ -88,7 +87,7 @@ public class GroupMessageController {
         message.setGroupId(groupId);
         message.setSenderId(user.getId());
         message.setSenderName(user.getName());
-        message.setSenderAvatar(user.getAvatarUrl());
+        message.setSenderAvatar(userProfileCache.get(user.getId()).getAvatarUrl());
         message.setContent(request.getContent());
         message.setMentionedUserIds(request.getMentionedUserIds());
         message.setTimestamp(LocalDateTime.now());
@@ -107,7 +106,7 @@ public class GroupMessageController {
         GroupMessage saved = messageRepository.save(message);
 
         // Broadcast to group
-        messagingTemplate.convertAndSend("/topic/group/" + groupId, saved);
+        messageBus.sendToTopic("/topic/group/" + groupId, saved);
 
         return ResponseEntity.ok(saved);
     }
@@ -117,13 +116,9 @@ public class GroupMessageController {
      */
     @PostMapping("/polls")
     public ResponseEntity<?> createPoll(
+            @AuthenticationPrincipal AuthenticatedUser user,
             @PathVariable String groupId,
             @RequestBody CreatePollRequest request) {
-        Authentication auth = SecurityContextHolder.getContext().getAuthentication();
-        String email = auth.getName();
-        User user = userRepository.findByEmail(email)
-                .orElseThrow(() -> new RuntimeException("User not found"));
-
         // Validate permission
         if (!permissionService.validatePermission(groupId, user.getId(), "CREATE_POLL")) {
             return ResponseEntity.status(403).body(Map.of("error", "Insufficient permissions"));
@@ -133,7 +128,7 @@ public class GroupMessageController {
         message.setGroupId(groupId);
         message.setSenderId(user.getId());
         message.setSenderName(user.getName());
-        message.setSenderAvatar(user.getAvatarUrl());
+        message.setSenderAvatar(userProfileCache.get(user.getId()).getAvatarUrl());
         message.setContent("📊 " + request.getQuestion());
         message.setTimestamp(LocalDateTime.now());
 
@@ -148,7 +143,7 @@ public class GroupMessageController {
         GroupMessage saved = messageRepository.save(message);
 
         // Broadcast to group
-        messagingTemplate.convertAndSend("/topic/group/" + groupId, saved);
+        messageBus.sendToTopic("/topic/group/" + groupId, saved);
 
         return ResponseEntity.ok(saved);
     }
@@ -157,12 +152,9 @@ public class GroupMessageController {
      * DELETE /api/groups/{groupId}/messages/clear - Clear chat for current user
      */
     @DeleteMapping("/clear")
-    public ResponseEntity<?> clearChat(@PathVariable String groupId) {
-        Authentication auth = SecurityContextHolder.getContext().getAuthentication();
-        String email = auth.getName();
-        User user = userRepository.findByEmail(email)
-                .orElseThrow(() -> new RuntimeException("User not found"));
-
+    public ResponseEntity<?> clearChat(
+            @AuthenticationPrincipal AuthenticatedUser user,
+            @PathVariable String groupId) {
         // Validate membership
         if (!groupService.validateMembership(groupId, user.getId())) {
             return ResponseEntity.status(403).body(Map.of("error", "Not a member of this group"));
@@ -189,13 +181,9 @@ public class GroupMessageController {
      */
     @PutMapping("/pin/{messageId}")
     public ResponseEntity<?> togglePin(
+            @AuthenticationPrincipal AuthenticatedUser user,
             @PathVariable String groupId,
             @PathVariable String messageId) {
-        Authentication auth = SecurityContextHolder.getContext().getAuthentication();
-        String email = auth.getName();
-        User user = userRepository.findByEmail(email)
-                .orElseThrow(() -> new RuntimeException("User not found"));
-
         // Validate permission
         if (!permissionService.validatePermission(groupId, user.getId(), "PIN_MESSAGE")) {
             return ResponseEntity.status(403).body(Map.of("error", "Insufficient permissions"));
@@ -212,11 +200,43 @@ public class GroupMessageController {
                 "type", "MESSAGE_PINNED",
                 "messageId", messageId,
                 "isPinned", updated.isPinned());
-        messagingTemplate.convertAndSend("/topic/group/" + groupId + "/events", event);
+        messageBus.sendToTopic("/topic/group/" + groupId + "/events", event);
 
         return ResponseEntity.ok(updated);
     }
 
+    /**
+     * PUT /api/groups/{groupId}/messages/{messageId}/react - Toggle reaction
+     */
+    @PutMapping("/{messageId}/react")
+    public ResponseEntity<?> reactToMessage(
+            @AuthenticationPrincipal AuthenticatedUser user,
+            @PathVariable String groupId,
+            @PathVariable String messageId,
+            @RequestBody ReactionRequest request) {
+        if (!groupService.validateMembership(groupId, user.getId())) {
+            return ResponseEntity.status(403).body(Map.of("error", "Not a member of this group"));
+        }
+
+        GroupMessage message = messageReactionService.toggle(
+                new Query(Criteria.where("id").is(messageId).and("groupId").is(groupId)),
+                user.getId(), request.getEmoji(), GroupMessage.class);
+        if (message == null) {
+            return ResponseEntity.status(404).body(Map.of("error", "Message not found"));
+        }
+
+        // Broadcast reaction event
+        Map<String, Object> event = new HashMap<>();
+        event.put("type", "MESSAGE_REACTION");
+        event.put("messageId", messageId);
+        event.put("userId", user.getId());
+        event.put("emoji", request.getEmoji());
+        event.put("reactions", message.getReactions());
+        messageBus.sendToTopic("/topic/group/" + groupId + "/events", event);
+
+        return ResponseEntity.ok(Map.of("messageId", messageId, "reactions", message.getReactions()));
+    }
+
     /**
      * WebSocket handler for sending messages
      */
@@ -228,7 +248,7 @@ public class GroupMessageController {
         GroupMessage saved = messageRepository.save(message);
 
         // Broadcast to group
-        messagingTemplate.convertAndSend("/topic/group/" + groupId, saved);
+        messageBus.sendToTopic("/topic/group/" + groupId, saved);
     }
 
     // DTOs
@@ -0,0 +1,31 @@
+package com.substring.chat.controllers;
+
+import com.substring.chat.config.StompPayloadCodec;
+import org.springframework.http.ResponseEntity;
+import org.springframework.web.bind.annotation.GetMapping;
+import org.springframework.web.bind.annotation.RequestMapping;
+import org.springframework.web.bind.annotation.RestController;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+@RestController
+@RequestMapping("/api/payload-format")
+public class PayloadFormatController {
+
+    /**
+     * GET /api/payload-format - CONNECT content types and the short key table
+     * clients need to expand compact frames
+     */
+    @GetMapping
+    public ResponseEntity<Map<String, Object>> getPayloadFormat() {
+        Map<String, Object> response = new LinkedHashMap<>();
+        response.put("header", StompPayloadCodec.FORMAT_HEADER);
+        response.put("contentTypes", Map.of(
+                "compact", StompPayloadCodec.COMPACT_JSON.toString(),
+                "cbor", StompPayloadCodec.CBOR.toString(),
+                "smile", StompPayloadCodec.SMILE.toString()));
+        response.put("keys", StompPayloadCodec.SHORT_KEYS);
+        return ResponseEntity.ok(response);
+    }
+}
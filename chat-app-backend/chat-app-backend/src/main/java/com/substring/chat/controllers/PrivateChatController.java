@@ -1,5 +1,6 @@
 package com.substring.chat.controllers;
 
+import com.substring.chat.config.AuthenticatedUser;
 import com.substring.chat.entities.PrivateMessage;
 import com.substring.chat.entities.User;
 import com.substring.chat.payload.DeleteMessageRequest;
@@ -9,16 +10,18 @@ import com.substring.chat.payload.ReactionRequest;
 import com.substring.chat.payload.TypingRequest;
 import com.substring.chat.repositories.PrivateMessageRepository;
 import com.substring.chat.repositories.UserRepository;
+import org.bson.types.ObjectId;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.data.domain.PageRequest;
 import org.springframework.data.domain.Pageable;
 import org.springframework.data.domain.Sort;
+import org.springframework.data.mongodb.core.query.Criteria;
+import org.springframework.data.mongodb.core.query.Query;
+import org.springframework.format.annotation.DateTimeFormat;
 import org.springframework.http.ResponseEntity;
 import org.springframework.messaging.handler.annotation.MessageMapping;
 import org.springframework.messaging.handler.annotation.Payload;
-import org.springframework.messaging.simp.SimpMessagingTemplate;
-import org.springframework.security.core.Authentication;
-import org.springframework.security.core.context.SecurityContextHolder;
+import org.springframework.security.core.annotation.AuthenticationPrincipal;
 import org.springframework.web.bind.annotation.*;
 
 import java.time.LocalDateTime;
@@ -36,23 +39,50 @@ public class PrivateChatController {
         private UserRepository userRepository;
 
         @Autowired
-        private SimpMessagingTemplate messagingTemplate;
+        private com.substring.chat.services.MessageBus messageBus;
 
         @Autowired
         private com.substring.chat.services.FileStorageService fileStorageService;
 
+        @Autowired
+        private com.substring.chat.services.AsyncUploadService asyncUploadService;
+
+        @Autowired
+        private com.substring.chat.services.ImagePreviewService imagePreviewService;
+
+        @org.springframework.beans.factory.annotation.Value("${chat.uploads.async:false}")
+        private boolean asyncUploadsByDefault;
+
         @Autowired
         private com.substring.chat.services.NotificationService notificationService;
 
+        @Autowired
+        private com.substring.chat.services.PrivateMessageIngestService messageIngestService;
+
+        @Autowired
+        private com.substring.chat.services.ConversationService conversationService;
+
+        @Autowired
+        private com.substring.chat.services.TypingRelayService typingRelayService;
+
+        @Autowired
+        private com.substring.chat.services.MessageReactionService messageReactionService;
+
         /**
          * Integrated API for sending files in private chat
          * POST /api/private/send-file
+         *
+         * With {@code async=true} the message is saved and delivered at once with
+         * {@code uploadStatus = UPLOADING}; the final URL follows on
+         * {@code /queue/message-updated}.
          */
         @PostMapping("/send-file")
         public ResponseEntity<?> sendFile(
+                        @AuthenticationPrincipal AuthenticatedUser currentUser,
                         @RequestParam(value = "file", required = false) org.springframework.web.multipart.MultipartFile file,
                         @RequestParam(value = "receiverId", required = false) String receiverId,
-                        @RequestParam(value = "content", required = false) String content) {
+                        @RequestParam(value = "content", required = false) String content,
+                        @RequestParam(value = "async", required = false) Boolean async) {
                 System.out.println("📂 [DEBUG] send-file endpoint hit");
                 System.out.println("   - file present: " + (file != null && !file.isEmpty()));
                 System.out.println("   - file type: " + (file != null ? file.getContentType() : "NULL"));
@@ -66,13 +96,9 @@ public class PrivateChatController {
                         return ResponseEntity.badRequest()
                                         .body(Map.of("message", "Required part 'receiverId' is missing"));
                 }
+                PrivateMessage message = null;
+                com.substring.chat.services.FileStorageService.StagedUpload staged = null;
                 try {
-                        // Get current user
-                        Authentication authentication = SecurityContextHolder.getContext().getAuthentication();
-                        String currentUserEmail = authentication.getName();
-                        User currentUser = userRepository.findByEmail(currentUserEmail)
-                                        .orElseThrow(() -> new RuntimeException("User not found"));
-
                         User receiver = userRepository.findById(receiverId)
                                         .orElseThrow(() -> new RuntimeException("Receiver not found"));
 
@@ -93,12 +119,7 @@ public class PrivateChatController {
                                 return ResponseEntity.badRequest().body(error);
                         }
 
-                        // 1. Upload to Cloudinary
-                        com.substring.chat.entities.FileAttachment attachment = fileStorageService.uploadFile(file,
-                                        currentUser.getId());
-
-                        // 2. Create and Save PrivateMessage
-                        PrivateMessage message = new PrivateMessage(
+                        message = new PrivateMessage(
                                         currentUser.getId(),
                                         currentUser.getName(),
                                         receiverId,
@@ -106,31 +127,67 @@ public class PrivateChatController {
                                         (content == null || content.isEmpty())
                                                         ? "Shared a file: " + file.getOriginalFilename()
                                                         : content);
-
-                        message.setFileUrl(attachment.getFileUrl());
-                        message.setFileType(attachment.getFileType());
                         message.setFileName(file.getOriginalFilename());
 
-                        PrivateMessage savedMessage = privateMessageRepository.save(message);
+                        PrivateMessage savedMessage;
+                        if (async != null ? async : asyncUploadsByDefault) {
+                                if (!asyncUploadService.hasCapacity()) {
+                                        return ResponseEntity.status(503)
+                                                        .body(Map.of("message", "Too many uploads in progress, try again shortly"));
+                                }
+
+                                // 1. Stage the upload so it outlives this request
+                                staged = fileStorageService.stage(file);
+
+                                // 2. Save the placeholder, the upload finishes in the background
+                                message.setFileType(contentType);
+                                message.setUploadStatus(com.substring.chat.services.AsyncUploadService.UPLOADING);
+                                message.setUploadRef(staged.path().getFileName().toString());
+                                savedMessage = privateMessageRepository.save(message);
+                                conversationService.recordMessage(savedMessage);
+                        } else {
+                                // 1. Upload to storage
+                                com.substring.chat.entities.FileAttachment attachment = fileStorageService.uploadFile(file,
+                                                currentUser.getId());
+
+                                // 2. Save PrivateMessage
+                                message.setFileUrl(attachment.getFileUrl());
+                                message.setFileType(attachment.getFileType());
+                                message.setThumbnailUrl(attachment.getThumbnailUrl());
+                                message.setPlaceholder(attachment.getPlaceholder());
+                                savedMessage = privateMessageRepository.save(message);
+                                conversationService.recordMessage(savedMessage);
+                        }
 
                         // 3. Notify via WebSocket
                         // To Receiver
-                        messagingTemplate.convertAndSendToUser(
+                        messageBus.sendToUser(
                                         receiverId,
                                         "/queue/messages",
                                         savedMessage);
 
                         // To Sender (for confirmation/sync)
-                        messagingTemplate.convertAndSendToUser(
+                        messageBus.sendToUser(
                                         currentUser.getId(),
                                         "/queue/messages",
                                         savedMessage);
 
+                        // 4. Start the upload only now, so its update follows the placeholder
+                        if (staged != null) {
+                                asyncUploadService.submit(savedMessage, staged, file.getOriginalFilename(),
+                                                contentType);
+                                staged = null; // Owned by the upload service now
+                        }
+
                         return ResponseEntity.ok(savedMessage);
 
                 } catch (Exception e) {
                         System.out.println("❌ File upload error: " + e.getMessage());
                         e.printStackTrace();
+                        if (staged != null) {
+                                // Never queued: drop the staged file and fail the placeholder if saved
+                                asyncUploadService.abandon(message, staged);
+                        }
                         Map<String, String> error = new HashMap<>();
                         error.put("message", "Failed to send file: " + e.getMessage());
                         return ResponseEntity.internalServerError().body(error);
@@ -158,48 +215,67 @@ public class PrivateChatController {
                         message.setFileUrl(request.getFileUrl());
                         message.setFileType(request.getFileType());
                         message.setFileName(request.getFileName());
-                }
 
-                PrivateMessage savedMessage = privateMessageRepository.save(message);
-
-                // Send to receiver's personal queue
-                messagingTemplate.convertAndSendToUser(
-                                request.getReceiverId(),
-                                "/queue/messages",
-                                savedMessage);
+                        // Already previewed when the file was shared before
+                        com.substring.chat.services.ImagePreviewService.Preview preview = imagePreviewService
+                                        .find(request.getFileUrl());
+                        if (preview != null) {
+                                message.setThumbnailUrl(preview.thumbnailUrl());
+                                message.setPlaceholder(preview.placeholder());
+                        }
+                }
 
-                // Send back to sender for confirmation
-                messagingTemplate.convertAndSendToUser(
-                                request.getSenderId(),
-                                "/queue/messages",
-                                savedMessage);
+                // Deliver right away; persistence is batched by the ingest pipeline
+                messageIngestService.ingest(message);
 
-                System.out.println("✅ Private message sent and saved");
+                System.out.println("✅ Private message sent and queued for persistence");
         }
 
         /**
          * Get message history between two users
          * GET /api/private/{userId}/messages
+         *
+         * Pass {@code before} (older page) or {@code after} (newer page) with a
+         * message ID to page by (timestamp, _id) keyset instead of page offset.
          */
         @GetMapping("/{userId}/messages")
         public ResponseEntity<?> getMessageHistory(
+                        @AuthenticationPrincipal AuthenticatedUser currentUser,
                         @PathVariable String userId,
                         @RequestParam(defaultValue = "0") int page,
-                        @RequestParam(defaultValue = "50") int size) {
+                        @RequestParam(defaultValue = "50") int size,
+                        @RequestParam(required = false) String before,
+                        @RequestParam(required = false) String after) {
                 try {
-                        // Get current authenticated user
-                        Authentication authentication = SecurityContextHolder.getContext().getAuthentication();
-                        String currentUserEmail = authentication.getName();
-
-                        User currentUser = userRepository.findByEmail(currentUserEmail)
-                                        .orElseThrow(() -> new RuntimeException("User not found"));
-
-                        // Create pageable with sorting by timestamp descending
-                        Pageable pageable = PageRequest.of(page, size, Sort.by(Sort.Direction.DESC, "timestamp"));
+                        String conversationId = PrivateMessage.conversationIdOf(currentUser.getId(), userId);
+                        List<PrivateMessage> messages;
+
+                        if (after != null) {
+                                // Newer than cursor, already in chronological order
+                                messageIngestService.awaitPersisted(after);
+                                PrivateMessage cursor = privateMessageRepository.findCursorById(after)
+                                                .orElseThrow(() -> new RuntimeException("Cursor message not found"));
+                                Pageable pageable = PageRequest.of(0, size,
+                                                Sort.by(Sort.Direction.ASC, "timestamp", "id"));
+                                messages = privateMessageRepository.findConversationPageAfter(conversationId,
+                                                cursor.getTimestamp(), new ObjectId(cursor.getId()), pageable);
+                                return ResponseEntity.ok(messages);
+                        }
 
-                        // Get messages between current user and target user
-                        List<PrivateMessage> messages = privateMessageRepository
-                                        .findMessagesBetweenUsers(currentUser.getId(), userId, pageable);
+                        if (before != null) {
+                                messageIngestService.awaitPersisted(before);
+                                PrivateMessage cursor = privateMessageRepository.findCursorById(before)
+                                                .orElseThrow(() -> new RuntimeException("Cursor message not found"));
+                                Pageable pageable = PageRequest.of(0, size,
+                                                Sort.by(Sort.Direction.DESC, "timestamp", "id"));
+                                messages = privateMessageRepository.findConversationPageBefore(conversationId,
+                                                cursor.getTimestamp(), new ObjectId(cursor.getId()), pageable);
+                        } else {
+                                // Create pageable with sorting by timestamp descending
+                                Pageable pageable = PageRequest.of(page, size,
+                                                Sort.by(Sort.Direction.DESC, "timestamp", "id"));
+                                messages = privateMessageRepository.findByConversationId(conversationId, pageable);
+                        }
 
                         // Reverse to get chronological order
                         Collections.reverse(messages);
@@ -214,45 +290,39 @@ public class PrivateChatController {
         }
 
         /**
-         * Mark messages as read
+         * Mark messages as read up to a watermark (defaults to now)
          * PUT /api/private/mark-read/{senderId}
          */
         @PutMapping("/mark-read/{senderId}")
-        public ResponseEntity<?> markMessagesAsRead(@PathVariable String senderId) {
+        public ResponseEntity<?> markMessagesAsRead(
+                        @AuthenticationPrincipal AuthenticatedUser currentUser,
+                        @PathVariable String senderId,
+                        @RequestParam(required = false) @DateTimeFormat(iso = DateTimeFormat.ISO.DATE_TIME) LocalDateTime readUpTo) {
                 try {
-                        // Get current authenticated user
-                        Authentication authentication = SecurityContextHolder.getContext().getAuthentication();
-                        String currentUserEmail = authentication.getName();
-
-                        User currentUser = userRepository.findByEmail(currentUserEmail)
-                                        .orElseThrow(() -> new RuntimeException("User not found"));
-
-                        // Find unread messages from sender to current user
-                        List<PrivateMessage> unreadMessages = privateMessageRepository
-                                        .findByReceiverIdAndSenderIdAndIsReadFalse(currentUser.getId(), senderId);
-
-                        // Mark all as read
+                        // A watermark in the future would mark messages read before they are sent
                         LocalDateTime now = LocalDateTime.now();
-                        unreadMessages.forEach(message -> {
-                                message.setRead(true);
-                                message.setReadAt(now);
-                        });
-
-                        privateMessageRepository.saveAll(unreadMessages);
-
-                        // Notify sender that messages were read
-                        if (!unreadMessages.isEmpty()) {
-                                messagingTemplate.convertAndSendToUser(
+                        LocalDateTime watermark = readUpTo != null && readUpTo.isBefore(now) ? readUpTo : now;
+
+                        // Single range update instead of loading every unread message
+                        long count = conversationService.markRead(currentUser.getId(), senderId, watermark);
+
+                        // Notify sender with the watermark only
+                        if (count > 0) {
+                                Map<String, Object> readReceipt = new HashMap<>();
+                                readReceipt.put("conversationId",
+                                                PrivateMessage.conversationIdOf(currentUser.getId(), senderId));
+                                readReceipt.put("readerId", currentUser.getId());
+                                readReceipt.put("readUpTo", watermark);
+                                messageBus.sendToUser(
                                                 senderId,
                                                 "/queue/read-receipt",
-                                                unreadMessages.stream()
-                                                                .map(PrivateMessage::getId)
-                                                                .collect(Collectors.toList()));
+                                                readReceipt);
                         }
 
                         Map<String, Object> response = new HashMap<>();
                         response.put("message", "Messages marked as read");
-                        response.put("count", unreadMessages.size());
+                        response.put("count", count);
+                        response.put("readUpTo", watermark);
                         return ResponseEntity.ok(response);
 
                 } catch (Exception e) {
@@ -267,23 +337,15 @@ public class PrivateChatController {
          * GET /api/private/conversations
          */
         @GetMapping("/conversations")
-        public ResponseEntity<?> getConversations() {
+        public ResponseEntity<?> getConversations(@AuthenticationPrincipal AuthenticatedUser currentUser) {
                 try {
-                        // Get current authenticated user
-                        Authentication authentication = SecurityContextHolder.getContext().getAuthentication();
-                        String currentUserEmail = authentication.getName();
-
-                        User currentUser = userRepository.findByEmail(currentUserEmail)
-                                        .orElseThrow(() -> new RuntimeException("User not found"));
-
-                        // Get latest message for each conversation using Aggregation
-                        List<PrivateMessage> latestMessages = privateMessageRepository
-                                        .findConversationsAggregation(currentUser.getId());
+                        // Read materialized summaries, already sorted by last activity
+                        List<com.substring.chat.entities.Conversation> summaries = conversationService
+                                        .getConversations(currentUser.getId());
 
                         // Collect partner IDs
-                        Set<String> partnerIds = latestMessages.stream()
-                                        .map(msg -> msg.getSenderId().equals(currentUser.getId()) ? msg.getReceiverId()
-                                                        : msg.getSenderId())
+                        Set<String> partnerIds = summaries.stream()
+                                        .map(summary -> summary.partnerOf(currentUser.getId()))
                                         .collect(Collectors.toSet());
 
                         // Fetch all partners efficiently
@@ -292,25 +354,23 @@ public class PrivateChatController {
                                         .collect(Collectors.toMap(User::getId, user -> user));
 
                         // Map to response
-                        List<Map<String, Object>> conversations = latestMessages.stream()
-                                        .map(msg -> {
-                                                String partnerId = msg.getSenderId().equals(currentUser.getId())
-                                                                ? msg.getReceiverId()
-                                                                : msg.getSenderId();
+                        List<Map<String, Object>> conversations = summaries.stream()
+                                        .map(summary -> {
+                                                String partnerId = summary.partnerOf(currentUser.getId());
                                                 User partner = partnerMap.get(partnerId);
+                                                long unread = summary.getUnreadCounts()
+                                                                .getOrDefault(currentUser.getId(), 0L);
 
                                                 Map<String, Object> conversation = new HashMap<>();
                                                 conversation.put("userId", partnerId);
                                                 conversation.put("userName",
-                                                                msg.getSenderId().equals(currentUser.getId())
-                                                                                ? msg.getReceiverName()
-                                                                                : msg.getSenderName());
-                                                conversation.put("lastMessage", msg.getContent());
-                                                conversation.put("timestamp", msg.getTimestamp());
-                                                conversation.put("isRead",
-                                                                msg.getReceiverId().equals(currentUser.getId())
-                                                                                ? msg.isRead()
-                                                                                : true);
+                                                                summary.getParticipantNames().get(partnerId));
+                                                conversation.put("lastMessage", summary.getLastMessagePreview());
+                                                conversation.put("timestamp", summary.getLastMessageAt());
+                                                conversation.put("unreadCount", unread);
+                                                conversation.put("isRead", unread == 0);
+                                                conversation.put("partnerLastReadAt",
+                                                                summary.getLastReadAt().get(partnerId));
 
                                                 if (partner != null) {
                                                         conversation.put("online", partner.isOnline());
@@ -320,8 +380,6 @@ public class PrivateChatController {
 
                                                 return conversation;
                                         })
-                                        .sorted((a, b) -> ((LocalDateTime) b.get("timestamp"))
-                                                        .compareTo((LocalDateTime) a.get("timestamp")))
                                         .collect(Collectors.toList());
 
                         return ResponseEntity.ok(conversations);
@@ -338,18 +396,10 @@ public class PrivateChatController {
          * GET /api/private/unread-count
          */
         @GetMapping("/unread-count")
-        public ResponseEntity<?> getUnreadCount() {
+        public ResponseEntity<?> getUnreadCount(@AuthenticationPrincipal AuthenticatedUser currentUser) {
                 try {
-                        Authentication authentication = SecurityContextHolder.getContext().getAuthentication();
-                        String currentUserEmail = authentication.getName();
-                        User currentUser = userRepository.findByEmail(currentUserEmail)
-                                        .orElseThrow(() -> new RuntimeException("User not found"));
-
-                        List<PrivateMessage> unreadMessages = privateMessageRepository
-                                        .findByReceiverIdAndIsReadFalse(currentUser.getId());
-                        Map<String, Long> unreadCountMap = unreadMessages.stream()
-                                        .collect(Collectors.groupingBy(PrivateMessage::getSenderId,
-                                                        Collectors.counting()));
+                        // Served from conversation counters, no message documents are loaded
+                        Map<String, Long> unreadCountMap = conversationService.getUnreadCounts(currentUser.getId());
 
                         return ResponseEntity.ok(unreadCountMap);
                 } catch (Exception e) {
@@ -360,15 +410,35 @@ public class PrivateChatController {
         }
 
         /**
-         * Real-time typing status
+         * Recompute unread counters from message history
+         * POST /api/private/unread-count/rebuild
+         */
+        @PostMapping("/unread-count/rebuild")
+        public ResponseEntity<?> rebuildUnreadCount(@AuthenticationPrincipal AuthenticatedUser currentUser) {
+                try {
+                        return ResponseEntity.ok(conversationService.rebuildUnreadCounts(currentUser.getId()));
+                } catch (Exception e) {
+                        Map<String, String> error = new HashMap<>();
+                        error.put("message", "Failed to rebuild unread count: " + e.getMessage());
+                        return ResponseEntity.badRequest().body(error);
+                }
+        }
+
+        /**
+         * Real-time typing status, coalesced and rate-limited by the relay
          * Endpoint: /app/typing
          */
         @MessageMapping("/typing")
         public void handleTyping(@Payload TypingRequest request) {
-                messagingTemplate.convertAndSendToUser(
-                                request.getReceiverId(),
-                                "/queue/typing",
-                                request);
+                String senderId = request.getSenderId();
+                String receiverId = request.getReceiverId();
+                typingRelayService.onTyping("private:" + senderId + ":" + receiverId, request.isTyping(),
+                                typing -> {
+                                        if (messageBus.isUserReachable(receiverId)) {
+                                                messageBus.sendToUser(receiverId, "/queue/typing",
+                                                                new TypingRequest(senderId, receiverId, typing));
+                                        }
+                                });
         }
 
         /**
@@ -376,29 +446,24 @@ public class PrivateChatController {
          * PUT /api/private/react
          */
         @PutMapping("/react")
-        public ResponseEntity<?> reactToMessage(@RequestBody ReactionRequest request) {
+        public ResponseEntity<?> reactToMessage(
+                        @AuthenticationPrincipal AuthenticatedUser user,
+                        @RequestBody ReactionRequest request) {
                 try {
-                        Authentication authentication = SecurityContextHolder.getContext().getAuthentication();
-                        String email = authentication.getName();
-                        User user = userRepository.findByEmail(email)
-                                        .orElseThrow(() -> new RuntimeException("User not found"));
-
-                        PrivateMessage message = privateMessageRepository.findById(request.getMessageId())
-                                        .orElseThrow(() -> new RuntimeException("Message not found"));
-
-                        if (message.getReactions() == null) {
-                                message.setReactions(new HashMap<>());
+                        // A message just sent may still be waiting in the ingest queue
+                        messageIngestService.awaitPersisted(request.getMessageId());
+                        // Only participants may react; one atomic update, no read-modify-save
+                        Query query = new Query(Criteria.where("id").is(request.getMessageId())
+                                        .orOperator(Criteria.where("senderId").is(user.getId()),
+                                                        Criteria.where("receiverId").is(user.getId())));
+                        query.fields().include("senderId").include("receiverId");
+
+                        PrivateMessage message = messageReactionService.toggle(query, user.getId(),
+                                        request.getEmoji(), PrivateMessage.class);
+                        if (message == null) {
+                                throw new RuntimeException("Message not found");
                         }
 
-                        // Add or remove reaction (toggle behavior)
-                        if (request.getEmoji().equals(message.getReactions().get(user.getId()))) {
-                                message.getReactions().remove(user.getId());
-                        } else {
-                                message.getReactions().put(user.getId(), request.getEmoji());
-                        }
-
-                        privateMessageRepository.save(message);
-
                         // Notify the other participant via WebSocket
                         String otherUserId = message.getSenderId().equals(user.getId()) ? message.getReceiverId()
                                         : message.getSenderId();
@@ -409,12 +474,15 @@ public class PrivateChatController {
                         reactionNotification.put("emoji", request.getEmoji());
                         reactionNotification.put("reactions", message.getReactions());
 
-                        messagingTemplate.convertAndSendToUser(
+                        messageBus.sendToUser(
                                         otherUserId,
                                         "/queue/reactions",
                                         reactionNotification);
 
-                        return ResponseEntity.ok(message);
+                        Map<String, Object> response = new HashMap<>();
+                        response.put("messageId", message.getId());
+                        response.put("reactions", message.getReactions());
+                        return ResponseEntity.ok(response);
                 } catch (Exception e) {
                         return ResponseEntity.badRequest().body(Map.of("message", e.getMessage()));
                 }
@@ -425,14 +493,12 @@ public class PrivateChatController {
          * POST /api/private/forward
          */
         @PostMapping("/forward")
-        public ResponseEntity<?> forwardMessage(@RequestBody ForwardMessageRequest request) {
+        public ResponseEntity<?> forwardMessage(
+                        @AuthenticationPrincipal AuthenticatedUser currentUser,
+                        @RequestBody ForwardMessageRequest request) {
                 try {
-                        Authentication authentication = SecurityContextHolder.getContext().getAuthentication();
-                        String email = authentication.getName();
-                        User currentUser = userRepository.findByEmail(email)
-                                        .orElseThrow(() -> new RuntimeException("User not found"));
-
                         // Get original message
+                        messageIngestService.awaitPersisted(request.getMessageId());
                         PrivateMessage originalMessage = privateMessageRepository.findById(request.getMessageId())
                                         .orElseThrow(() -> new RuntimeException("Message not found"));
 
@@ -463,6 +529,8 @@ public class PrivateChatController {
                                         forwardedMessage.setFileUrl(originalMessage.getFileUrl());
                                         forwardedMessage.setFileType(originalMessage.getFileType());
                                         forwardedMessage.setFileName(originalMessage.getFileName());
+                                        forwardedMessage.setThumbnailUrl(originalMessage.getThumbnailUrl());
+                                        forwardedMessage.setPlaceholder(originalMessage.getPlaceholder());
                                 }
 
                                 // Set forwarding metadata
@@ -470,16 +538,17 @@ public class PrivateChatController {
                                 forwardedMessage.setForwardedFromName(originalMessage.getSenderName());
 
                                 PrivateMessage savedMessage = privateMessageRepository.save(forwardedMessage);
+                                conversationService.recordMessage(savedMessage);
                                 forwardedMessages.add(savedMessage);
 
                                 // Notify receiver via WebSocket
-                                messagingTemplate.convertAndSendToUser(
+                                messageBus.sendToUser(
                                                 receiverId,
                                                 "/queue/messages",
                                                 savedMessage);
 
                                 // Notify sender for confirmation
-                                messagingTemplate.convertAndSendToUser(
+                                messageBus.sendToUser(
                                                 currentUser.getId(),
                                                 "/queue/messages",
                                                 savedMessage);
@@ -503,14 +572,11 @@ public class PrivateChatController {
          */
         @DeleteMapping("/messages/{messageId}")
         public ResponseEntity<?> deleteMessage(
+                        @AuthenticationPrincipal AuthenticatedUser currentUser,
                         @PathVariable String messageId,
                         @RequestParam String deleteType) {
                 try {
-                        Authentication authentication = SecurityContextHolder.getContext().getAuthentication();
-                        String email = authentication.getName();
-                        User currentUser = userRepository.findByEmail(email)
-                                        .orElseThrow(() -> new RuntimeException("User not found"));
-
+                        messageIngestService.awaitPersisted(messageId);
                         PrivateMessage message = privateMessageRepository.findById(messageId)
                                         .orElseThrow(() -> new RuntimeException("Message not found"));
 
@@ -545,6 +611,7 @@ public class PrivateChatController {
                                 message.setDeletedForEveryone(true);
                                 message.setDeletedAt(LocalDateTime.now());
                                 privateMessageRepository.save(message);
+                                conversationService.onMessageDeleted(message);
 
                                 // Notify other participant via WebSocket
                                 String otherUserId = message.getReceiverId().equals(currentUser.getId())
@@ -556,7 +623,7 @@ public class PrivateChatController {
                                 deleteNotification.put("deleteType", "FOR_EVERYONE");
                                 deleteNotification.put("deletedBy", currentUser.getId());
 
-                                messagingTemplate.convertAndSendToUser(
+                                messageBus.sendToUser(
                                                 otherUserId,
                                                 "/queue/delete-message",
                                                 deleteNotification);
@@ -582,16 +649,12 @@ public class PrivateChatController {
          */
         @GetMapping("/{userId}/search")
         public ResponseEntity<?> searchMessages(
+                        @AuthenticationPrincipal AuthenticatedUser currentUser,
                         @PathVariable String userId,
                         @RequestParam String query,
                         @RequestParam(defaultValue = "0") int page,
                         @RequestParam(defaultValue = "50") int size) {
                 try {
-                        Authentication authentication = SecurityContextHolder.getContext().getAuthentication();
-                        String currentUserEmail = authentication.getName();
-                        User currentUser = userRepository.findByEmail(currentUserEmail)
-                                        .orElseThrow(() -> new RuntimeException("User not found"));
-
                         // Create pageable with sorting by timestamp descending
                         Pageable pageable = PageRequest.of(page, size, Sort.by(Sort.Direction.DESC, "timestamp"));
 
@@ -1,8 +1,11 @@
 package com.substring.chat.controllers;
 
 import com.substring.chat.entities.Message;
+import com.substring.chat.entities.MessageReactionSummary;
 import com.substring.chat.entities.Room;
 import com.substring.chat.repositories.RoomRepository;
+import com.substring.chat.services.RoomMessageService;
+import com.substring.chat.services.RoomReactionService;
 import lombok.Getter;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
@@ -20,10 +23,15 @@ import java.util.Map;
 public class RoomController {
 
     private final RoomRepository roomRepository;
+    private final RoomMessageService roomMessageService;
+    private final RoomReactionService roomReactionService;
 
 
-    public RoomController(RoomRepository roomRepository) {
+    public RoomController(RoomRepository roomRepository, RoomMessageService roomMessageService,
+                          RoomReactionService roomReactionService) {
         this.roomRepository = roomRepository;
+        this.roomMessageService = roomMessageService;
+        this.roomReactionService = roomReactionService;
     }
 
     //create room
@@ -40,6 +48,7 @@ public class RoomController {
         //create new room
         Room room = new Room();
         room.setRoomId(roomId);
+        room.setRecentFromIndex(0L);
         Room savedRoom = roomRepository.save(room);
         return ResponseEntity.status(HttpStatus.CREATED).body(room);
 
@@ -70,20 +79,26 @@ public class RoomController {
             @RequestParam(value = "page", defaultValue = "0", required = false) int page,
             @RequestParam(value = "size", defaultValue = "20", required = false) int size
     ) {
-        Room room = roomRepository.findByRoomId(roomId);
-        if (room == null) {
+        //get messages :
+        //pagination, only the buckets covering the page are read
+        List<Message> paginatedMessages = roomMessageService.getMessages(roomId, page, size);
+        if (paginatedMessages == null) {
             return ResponseEntity.badRequest().build()
                     ;
         }
-        //get messages :
-        //pagination
-        List<Message> messages = room.getMessages();
-        int start = Math.max(0, messages.size() - (page + 1) * size);
-        int end = Math.min(messages.size(), start + size);
-        List<Message> paginatedMessages = messages.subList(start, end);
         return ResponseEntity.ok(paginatedMessages);
 
     }
 
+    //get reactions of messages, keyed by messageId
+
+    @GetMapping("/{roomId}/reactions")
+    public ResponseEntity<Map<String, MessageReactionSummary>> getReactions(
+            @PathVariable String roomId,
+            @RequestParam("messageIds") List<String> messageIds
+    ) {
+        return ResponseEntity.ok(roomReactionService.getReactions(messageIds));
+    }
+
 
 }
\ No newline at end of file
@@ -0,0 +1,109 @@
+package com.substring.chat.controllers;
+
+import com.substring.chat.config.JwtUtil;
+import com.substring.chat.config.SlowConsumerInterceptor;
+import com.substring.chat.config.StompChannelExecutors;
+import com.substring.chat.config.StompPayloadCodec;
+import com.substring.chat.services.AsyncUploadService;
+import com.substring.chat.services.FileStorageService;
+import com.substring.chat.services.GroupMembershipCache;
+import com.substring.chat.services.ImagePreviewService;
+import com.substring.chat.services.LocalFileCollector;
+import com.substring.chat.services.LocalFileStore;
+import com.substring.chat.services.MessageBus;
+import com.substring.chat.services.PrivateMessageIngestService;
+import com.substring.chat.services.RoomReactionService;
+import com.substring.chat.services.TypingRelayService;
+import com.substring.chat.services.UserProfileCache;
+import com.substring.chat.services.UserStatusService;
+import com.substring.chat.services.WebSocketSessionRegistry;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.http.ResponseEntity;
+import org.springframework.web.bind.annotation.GetMapping;
+import org.springframework.web.bind.annotation.RequestMapping;
+import org.springframework.web.bind.annotation.RestController;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+@RestController
+@RequestMapping("/api/stats")
+public class StatsController {
+
+    @Autowired
+    private StompChannelExecutors channelExecutors;
+
+    @Autowired
+    private SlowConsumerInterceptor slowConsumerInterceptor;
+
+    @Autowired
+    private StompPayloadCodec payloadCodec;
+
+    @Autowired
+    private MessageBus messageBus;
+
+    @Autowired
+    private WebSocketSessionRegistry sessionRegistry;
+
+    @Autowired
+    private UserStatusService userStatusService;
+
+    @Autowired
+    private PrivateMessageIngestService messageIngestService;
+
+    @Autowired
+    private TypingRelayService typingRelayService;
+
+    @Autowired
+    private RoomReactionService roomReactionService;
+
+    @Autowired
+    private AsyncUploadService asyncUploadService;
+
+    @Autowired
+    private FileStorageService fileStorageService;
+
+    @Autowired
+    private LocalFileStore localFileStore;
+
+    @Autowired
+    private LocalFileCollector localFileCollector;
+
+    @Autowired
+    private ImagePreviewService imagePreviewService;
+
+    @Autowired
+    private GroupMembershipCache groupMembershipCache;
+
+    @Autowired
+    private UserProfileCache userProfileCache;
+
+    @Autowired
+    private JwtUtil jwtUtil;
+
+    /**
+     * GET /api/stats - Runtime counters (executors, delivery, caches)
+     */
+    @GetMapping
+    public ResponseEntity<Map<String, Object>> getStats() {
+        Map<String, Object> stats = new LinkedHashMap<>();
+        stats.put("stompExecutors", channelExecutors.getStats());
+        stats.put("slowConsumers", slowConsumerInterceptor.getStats());
+        stats.put("payloadFormats", payloadCodec.getStats());
+        stats.put("bus", messageBus.getStats());
+        stats.put("sessions", sessionRegistry.getStats());
+        stats.put("presence", userStatusService.getStats());
+        stats.put("ingest", messageIngestService.getStats());
+        stats.put("typing", typingRelayService.getStats());
+        stats.put("roomReactions", roomReactionService.getStats());
+        stats.put("uploads", asyncUploadService.getStats());
+        stats.put("files", fileStorageService.getStats());
+        stats.put("localFiles", localFileStore.getStats());
+        stats.put("localFileGc", localFileCollector.getStats());
+        stats.put("previews", imagePreviewService.getStats());
+        stats.put("groupCache", groupMembershipCache.getStats());
+        stats.put("userCache", userProfileCache.getStats());
+        stats.put("jwtCache", jwtUtil.getCacheStats());
+        return ResponseEntity.ok(stats);
+    }
+}
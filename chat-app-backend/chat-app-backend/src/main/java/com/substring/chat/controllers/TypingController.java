@@ -1,28 +1,34 @@
 package com.substring.chat.controllers;
 
 import com.substring.chat.entities.TypingNotification;
+import com.substring.chat.services.TypingRelayService;
 import org.springframework.messaging.handler.annotation.DestinationVariable;
 import org.springframework.messaging.handler.annotation.MessageMapping;
-import org.springframework.messaging.handler.annotation.SendTo;
+import org.springframework.messaging.simp.SimpMessagingTemplate;
 import org.springframework.stereotype.Controller;
 
-import java.time.LocalDateTime;
-
 @Controller
 public class TypingController {
 
+    private final TypingRelayService typingRelayService;
+    private final SimpMessagingTemplate messagingTemplate;
+
+    public TypingController(TypingRelayService typingRelayService, SimpMessagingTemplate messagingTemplate) {
+        this.typingRelayService = typingRelayService;
+        this.messagingTemplate = messagingTemplate;
+    }
+
+    /**
+     * Room typing status, coalesced and rate-limited by the relay before it
+     * reaches /topic/typing/{roomId}
+     */
     @MessageMapping("/typing/{roomId}")
-    @SendTo("/topic/typing/{roomId}")
-    public TypingNotification handleTyping(
+    public void handleTyping(
             @DestinationVariable String roomId,
             TypingNotification notification) {
-        System.out.println("⌨️ Typing event: " + notification.getUserName() +
-                " is " + (notification.isTyping() ? "typing" : "stopped typing") +
-                " in room " + roomId);
-
-        notification.setTimestamp(LocalDateTime.now());
-        notification.setRoomId(roomId);
-
-        return notification;
+        String userName = notification.getUserName();
+        typingRelayService.onTyping("room:" + roomId + ":" + userName, notification.isTyping(),
+                typing -> messagingTemplate.convertAndSend("/topic/typing/" + roomId,
+                        new TypingNotification(roomId, userName, typing)));
     }
 }
@@ -1,11 +1,15 @@
 package com.substring.chat.controllers;
 
+import com.substring.chat.config.AuthenticatedUser;
 import com.substring.chat.entities.User;
 import com.substring.chat.payload.UserResponse;
 import com.substring.chat.repositories.UserRepository;
+import com.substring.chat.services.UserProfileCache;
+import com.substring.chat.services.UserStatusService;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.http.ResponseEntity;
 import org.springframework.security.core.Authentication;
+import org.springframework.security.core.annotation.AuthenticationPrincipal;
 import org.springframework.security.core.context.SecurityContextHolder;
 import org.springframework.web.bind.annotation.*;
 
@@ -24,6 +28,12 @@ public class UserController {
     @Autowired
     private com.substring.chat.services.FileStorageService fileStorageService;
 
+    @Autowired
+    private UserProfileCache userProfileCache;
+
+    @Autowired
+    private UserStatusService userStatusService;
+
     /**
      * Get all users (excluding current user)
      * GET /api/users
@@ -46,7 +56,7 @@ public class UserController {
                             user.getEmail(),
                             user.getCreatedAt(),
                             user.getLastSeen(),
-                            user.isOnline(),
+                            userStatusService.isOnline(user.getId()),
                             user.getAvatarUrl(),
                             user.getAbout(),
                             user.getPhone()))
@@ -77,7 +87,7 @@ public class UserController {
                     user.getEmail(),
                     user.getCreatedAt(),
                     user.getLastSeen(),
-                    user.isOnline(),
+                    userStatusService.isOnline(user.getId()),
                     user.getAvatarUrl(),
                     user.getAbout(),
                     user.getPhone());
@@ -115,7 +125,7 @@ public class UserController {
                             user.getEmail(),
                             user.getCreatedAt(),
                             user.getLastSeen(),
-                            user.isOnline(),
+                            userStatusService.isOnline(user.getId()),
                             user.getAvatarUrl(),
                             user.getAbout(),
                             user.getPhone()))
@@ -135,12 +145,11 @@ public class UserController {
      * PUT /api/users/profile
      */
     @PutMapping("/profile")
-    public ResponseEntity<?> updateProfile(@RequestBody com.substring.chat.payload.UserUpdateRequest request) {
+    public ResponseEntity<?> updateProfile(
+            @AuthenticationPrincipal AuthenticatedUser principal,
+            @RequestBody com.substring.chat.payload.UserUpdateRequest request) {
         try {
-            Authentication authentication = SecurityContextHolder.getContext().getAuthentication();
-            String email = authentication.getName();
-
-            User user = userRepository.findByEmail(email)
+            User user = userRepository.findById(principal.getId())
                     .orElseThrow(() -> new RuntimeException("User not found"));
 
             if (request.getName() != null)
@@ -153,6 +162,7 @@ public class UserController {
                 user.setAvatarUrl(request.getAvatarUrl());
 
             User savedUser = userRepository.save(user);
+            userProfileCache.invalidate(savedUser.getId());
 
             UserResponse response = new UserResponse(
                     savedUser.getId(),
@@ -180,12 +190,10 @@ public class UserController {
      */
     @PostMapping("/upload-avatar")
     public ResponseEntity<?> uploadAvatar(
+            @AuthenticationPrincipal AuthenticatedUser principal,
             @RequestParam("file") org.springframework.web.multipart.MultipartFile file) {
         try {
-            Authentication authentication = SecurityContextHolder.getContext().getAuthentication();
-            String email = authentication.getName();
-
-            User user = userRepository.findByEmail(email)
+            User user = userRepository.findById(principal.getId())
                     .orElseThrow(() -> new RuntimeException("User not found"));
 
             // Upload to Cloudinary using FileStorageService
@@ -194,6 +202,7 @@ public class UserController {
             // Save avatar URL
             user.setAvatarUrl(attachment.getFileUrl());
             User savedUser = userRepository.save(user);
+            userProfileCache.invalidate(savedUser.getId());
 
             UserResponse response = new UserResponse(
                     savedUser.getId(),
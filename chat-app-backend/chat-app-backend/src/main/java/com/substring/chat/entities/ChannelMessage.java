@@ -39,9 +39,12 @@ public class ChannelMessage {
     private String content;
 
     // File attachments
+    @Indexed(sparse = true)
     private String fileUrl;
     private String fileType;
     private String fileName;
+    private String thumbnailUrl; // Images only, filled in when the preview is ready
+    private String placeholder; // Tiny blurred image as a data URI
 
     // Reactions
     private Map<String, String> reactions = new HashMap<>(); // userId -> emoji
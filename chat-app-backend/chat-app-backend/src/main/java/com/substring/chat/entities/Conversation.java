@@ -0,0 +1,60 @@
+package com.substring.chat.entities;
+
+import lombok.AllArgsConstructor;
+import lombok.Getter;
+import lombok.NoArgsConstructor;
+import lombok.Setter;
+import org.springframework.data.annotation.Id;
+import org.springframework.data.mongodb.core.index.CompoundIndex;
+import org.springframework.data.mongodb.core.index.CompoundIndexes;
+import org.springframework.data.mongodb.core.mapping.Document;
+
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Materialized summary of a private conversation, maintained incrementally as
+ * messages are sent, read and deleted. The inbox is served from here instead of
+ * aggregating private_messages.
+ */
+@Document(collection = "conversations")
+@CompoundIndexes({
+        @CompoundIndex(name = "participant_inbox", def = "{'participantIds': 1, 'lastMessageAt': -1}")
+})
+@Getter
+@Setter
+@NoArgsConstructor
+@AllArgsConstructor
+public class Conversation {
+
+    @Id
+    private String id; // Same as PrivateMessage.conversationId
+
+    private List<String> participantIds = new ArrayList<>();
+    private Map<String, String> participantNames = new HashMap<>(); // userId -> name
+
+    // Last message preview
+    private String lastMessageId;
+    private String lastMessageSenderId;
+    private String lastMessagePreview;
+    private String lastMessageFileType;
+    private LocalDateTime lastMessageAt;
+
+    private Map<String, Long> unreadCounts = new HashMap<>(); // userId -> unread messages
+    private Map<String, LocalDateTime> lastReadAt = new HashMap<>(); // userId -> read watermark
+
+    private LocalDateTime updatedAt;
+
+    /**
+     * The other participant from the given user's point of view
+     */
+    public String partnerOf(String userId) {
+        return participantIds.stream()
+                .filter(id -> !id.equals(userId))
+                .findFirst()
+                .orElse(userId);
+    }
+}
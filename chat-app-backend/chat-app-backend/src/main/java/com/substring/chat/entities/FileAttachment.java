@@ -6,6 +6,7 @@ import lombok.NoArgsConstructor;
 import lombok.Setter;
 
 import org.springframework.data.annotation.Id;
+import org.springframework.data.mongodb.core.index.Indexed;
 import org.springframework.data.mongodb.core.mapping.Document;
 
 import java.time.LocalDateTime;
@@ -26,6 +27,12 @@ public class FileAttachment {
     private String publicId; // Cloudinary public ID
     private String uploadedBy; // userId
     private LocalDateTime uploadedAt;
+    @Indexed
+    private String sha256; // FileContent this attachment references, null for uploads before dedup
+    private String thumbnailUrl; // Images only, filled in when the preview is ready
+    private String placeholder; // Tiny blurred image as a data URI
+    private int width;
+    private int height;
 
     public FileAttachment(String fileName, String originalFileName, String fileUrl, String fileType, long fileSize,
             String publicId, String uploadedBy) {
@@ -0,0 +1,43 @@
+package com.substring.chat.entities;
+
+import lombok.AllArgsConstructor;
+import lombok.Getter;
+import lombok.NoArgsConstructor;
+import lombok.Setter;
+import org.springframework.data.annotation.Id;
+import org.springframework.data.mongodb.core.index.Indexed;
+import org.springframework.data.mongodb.core.mapping.Document;
+
+import java.time.LocalDateTime;
+
+/**
+ * One stored object, shared by every {@link FileAttachment} with the same
+ * content. Keyed by the SHA-256 of the bytes; {@code refCount} is the number
+ * of attachments pointing at it, and the object is destroyed when it drops to
+ * zero.
+ */
+@Document(collection = "file_contents")
+@Getter
+@Setter
+@NoArgsConstructor
+@AllArgsConstructor
+public class FileContent {
+
+    @Id
+    private String id; // SHA-256, hex
+
+    private String storageKey; // Backend key (Cloudinary public ID or local key)
+    @Indexed
+    private String url;
+    private String resourceType;
+    private long size;
+    private long refCount;
+    private LocalDateTime createdAt;
+
+    // Image previews, shared by every attachment of this content
+    private String thumbnailKey;
+    private String thumbnailUrl;
+    private String placeholder;
+    private int width;
+    private int height;
+}
@@ -36,9 +36,12 @@ public class GroupMessage {
     private String content;
 
     // File attachments
+    @Indexed(sparse = true)
     private String fileUrl;
     private String fileType;
     private String fileName;
+    private String thumbnailUrl; // Images only, filled in when the preview is ready
+    private String placeholder; // Tiny blurred image as a data URI
 
     // Mentions (@username)
     private List<String> mentionedUserIds = new ArrayList<>();
@@ -0,0 +1,38 @@
+package com.substring.chat.entities;
+
+import lombok.AllArgsConstructor;
+import lombok.Getter;
+import lombok.NoArgsConstructor;
+import lombok.Setter;
+import org.springframework.data.annotation.Id;
+import org.springframework.data.mongodb.core.index.Indexed;
+import org.springframework.data.mongodb.core.mapping.Document;
+
+import java.time.LocalDateTime;
+
+/**
+ * Metadata of a file uploaded through {@code /api/v1/files}, recorded at
+ * upload time so downloads need no directory probing or content sniffing
+ */
+@Document(collection = "local_files")
+@Getter
+@Setter
+@NoArgsConstructor
+@AllArgsConstructor
+public class LocalFile {
+
+    @Id
+    private String id; // Stored file name, as used in download URLs
+
+    private String originalFileName;
+    private String contentType;
+    private String fileType; // image, document, other
+    private String path; // Relative to the upload root
+    private long size;
+    private String sha256; // Strong ETag
+    private String roomId;
+    private String uploadedBy;
+    @Indexed
+    private LocalDateTime uploadedAt; // Garbage collection only considers files older than its grace period
+    private boolean imported; // Recorded from a file stored before records existed, never collected
+}
@@ -24,6 +24,7 @@ public class Message {
     private List<String> deliveredTo;
     private List<String> seenBy;
     private FileAttachment attachment; // NEW - for file/image sharing
+    private Long index; // Position in the room history, null for messages stored before it was recorded
 
     public Message(String sender, String content) {
         this.messageId = UUID.randomUUID().toString();
@@ -0,0 +1,43 @@
+package com.substring.chat.entities;
+
+import com.fasterxml.jackson.annotation.JsonIgnore;
+import lombok.AllArgsConstructor;
+import lombok.Getter;
+import lombok.NoArgsConstructor;
+import lombok.Setter;
+import org.springframework.data.annotation.Id;
+import org.springframework.data.mongodb.core.index.Indexed;
+import org.springframework.data.mongodb.core.mapping.Document;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Reactions on one room message, kept as counters instead of a list of
+ * reaction objects. {@code voters} holds one {@link #voteKey} per
+ * (emoji, user) so toggles can be matched and applied in a single update.
+ */
+@Document(collection = "message_reactions")
+@Getter
+@Setter
+@NoArgsConstructor
+@AllArgsConstructor
+public class MessageReactionSummary {
+
+    @Id
+    private String id; // messageId
+
+    @Indexed
+    private String roomId;
+
+    private Map<String, Long> counts = new HashMap<>(); // emoji -> count
+    private Map<String, List<String>> users = new HashMap<>(); // emoji -> latest few user names
+    @JsonIgnore
+    private List<String> voters = new ArrayList<>();
+
+    public static String voteKey(String emoji, String userId) {
+        return emoji + "|" + userId;
+    }
+}
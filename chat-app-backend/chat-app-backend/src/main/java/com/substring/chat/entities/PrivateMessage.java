@@ -19,7 +19,8 @@ import java.util.Set;
 
 @Document(collection = "private_messages")
 @CompoundIndexes({
-        @CompoundIndex(name = "chat_history", def = "{'senderId': 1, 'receiverId': 1, 'timestamp': -1}")
+        @CompoundIndex(name = "chat_history", def = "{'senderId': 1, 'receiverId': 1, 'timestamp': -1}"),
+        @CompoundIndex(name = "conversation_history", def = "{'conversationId': 1, 'timestamp': -1, '_id': -1}")
 })
 @Getter
 @Setter
@@ -30,6 +31,9 @@ public class PrivateMessage {
     @Id
     private String id;
 
+    // Canonical pair key (smaller userId first) so both directions share one index range
+    private String conversationId;
+
     @Indexed
     private String senderId;
     private String senderName;
@@ -50,9 +54,14 @@ public class PrivateMessage {
     private LocalDateTime deliveredAt;
 
     // For file attachments
+    @Indexed(sparse = true)
     private String fileUrl;
     private String fileType;
     private String fileName;
+    private String thumbnailUrl; // Images only, filled in when the preview is ready
+    private String placeholder; // Tiny blurred image as a data URI
+    private String uploadStatus; // UPLOADING while an async upload runs, FAILED if it gave up
+    private String uploadRef; // Temp reference of the staged upload, until it is stored
 
     private Map<String, String> reactions = new HashMap<>(); // userId -> emoji
 
@@ -72,12 +81,20 @@ public class PrivateMessage {
         this.senderName = senderName;
         this.receiverId = receiverId;
         this.receiverName = receiverName;
+        this.conversationId = conversationIdOf(senderId, receiverId);
         this.content = content;
         this.timestamp = LocalDateTime.now();
         this.isRead = false;
         this.isDelivered = true;
     }
 
+    /**
+     * Build the canonical conversation key for a user pair
+     */
+    public static String conversationIdOf(String userId1, String userId2) {
+        return userId1.compareTo(userId2) <= 0 ? userId1 + "_" + userId2 : userId2 + "_" + userId1;
+    }
+
     @Getter
     @Setter
     @NoArgsConstructor
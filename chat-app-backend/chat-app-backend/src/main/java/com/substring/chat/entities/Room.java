@@ -19,7 +19,18 @@ public class Room {
     @Id
     private String id;//Mongo db : unique identifier
     private String roomId;
-    private List<Message> messages = new ArrayList<>();
+    private List<Message> messages = new ArrayList<>(); // Legacy embedded history, migrated to room_message_buckets
 
+    // Message indexes in room_message_buckets run from firstMessageIndex (inclusive)
+    // to messageCount (exclusive); migrated history gets negative indexes
+    private long messageCount;
+    private long firstMessageIndex;
 
-}
\ No newline at end of file
+    // Capped copy of the newest messages, appended with $push/$slice together with
+    // the messageCount $inc. It holds every index from recentFromIndex on (at most
+    // the configured window); null until the window has been initialised.
+    private List<Message> recentMessages = new ArrayList<>();
+    private Long recentFromIndex;
+
+
+}
@@ -0,0 +1,52 @@
+package com.substring.chat.entities;
+
+import lombok.AllArgsConstructor;
+import lombok.Getter;
+import lombok.NoArgsConstructor;
+import lombok.Setter;
+import org.springframework.data.annotation.Id;
+import org.springframework.data.mongodb.core.index.CompoundIndex;
+import org.springframework.data.mongodb.core.index.CompoundIndexes;
+import org.springframework.data.mongodb.core.mapping.Document;
+
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Fixed-size slice of a room's message history. Every message in a room has a
+ * sequential index; bucket {@code seq} holds the messages whose index falls in
+ * {@code [seq * SIZE, (seq + 1) * SIZE)}, so a page read touches one or two
+ * small documents instead of the whole history.
+ */
+@Document(collection = "room_message_buckets")
+@CompoundIndexes({
+        @CompoundIndex(name = "room_bucket", def = "{'roomId': 1, 'seq': 1}", unique = true)
+})
+@Getter
+@Setter
+@NoArgsConstructor
+@AllArgsConstructor
+public class RoomMessageBucket {
+
+    public static final int SIZE = 100;
+
+    @Id
+    private String id; // roomId + "#" + seq
+
+    private String roomId;
+    private long seq;
+    private long firstIndex; // Index of messages[0] within the room
+    private int count;
+    private List<Message> messages = new ArrayList<>();
+    private LocalDateTime firstTimeStamp;
+    private LocalDateTime lastTimeStamp;
+
+    public static String idOf(String roomId, long seq) {
+        return roomId + "#" + seq;
+    }
+
+    public static long seqOf(long index) {
+        return Math.floorDiv(index, SIZE);
+    }
+}
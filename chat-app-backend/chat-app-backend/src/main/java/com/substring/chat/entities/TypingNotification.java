@@ -1,5 +1,7 @@
 package com.substring.chat.entities;
 
+import com.fasterxml.jackson.annotation.JsonProperty;
+
 import java.time.LocalDateTime;
 
 public class TypingNotification {
@@ -35,10 +37,12 @@ public class TypingNotification {
         this.userName = userName;
     }
 
+    @JsonProperty("isTyping")
     public boolean isTyping() {
         return isTyping;
     }
 
+    @JsonProperty("isTyping")
     public void setTyping(boolean typing) {
         isTyping = typing;
     }
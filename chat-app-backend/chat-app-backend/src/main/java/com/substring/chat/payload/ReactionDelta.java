@@ -0,0 +1,22 @@
+package com.substring.chat.payload;
+
+import lombok.AllArgsConstructor;
+import lombok.Getter;
+import lombok.NoArgsConstructor;
+import lombok.Setter;
+
+/**
+ * One reaction toggle, broadcast instead of the full reaction list
+ */
+@Getter
+@Setter
+@NoArgsConstructor
+@AllArgsConstructor
+public class ReactionDelta {
+    private String messageId;
+    private String userId;
+    private String userName;
+    private String emoji;
+    private boolean added;
+    private long count; // Count for this emoji after the change
+}
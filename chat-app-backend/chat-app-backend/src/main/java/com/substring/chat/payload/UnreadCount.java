@@ -0,0 +1,20 @@
+package com.substring.chat.payload;
+
+import lombok.AllArgsConstructor;
+import lombok.Getter;
+import lombok.NoArgsConstructor;
+import lombok.Setter;
+
+/**
+ * Unread message count for one (receiver, sender) pair, as produced by
+ * the private message aggregations
+ */
+@Getter
+@Setter
+@NoArgsConstructor
+@AllArgsConstructor
+public class UnreadCount {
+    private String receiverId;
+    private String senderId;
+    private long count;
+}
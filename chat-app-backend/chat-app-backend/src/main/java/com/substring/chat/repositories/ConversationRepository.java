@@ -0,0 +1,16 @@
+package com.substring.chat.repositories;
+
+import com.substring.chat.entities.Conversation;
+import org.springframework.data.mongodb.repository.MongoRepository;
+import org.springframework.stereotype.Repository;
+
+import java.util.List;
+
+@Repository
+public interface ConversationRepository extends MongoRepository<Conversation, String> {
+
+    /**
+     * Inbox for a user, most recent conversation first
+     */
+    List<Conversation> findByParticipantIdsOrderByLastMessageAtDesc(String userId);
+}
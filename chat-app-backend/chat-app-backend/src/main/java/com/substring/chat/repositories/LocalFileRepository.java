@@ -0,0 +1,14 @@
+package com.substring.chat.repositories;
+
+import com.substring.chat.entities.LocalFile;
+import org.springframework.data.domain.Pageable;
+import org.springframework.data.mongodb.repository.MongoRepository;
+import org.springframework.stereotype.Repository;
+
+import java.util.List;
+
+@Repository
+public interface LocalFileRepository extends MongoRepository<LocalFile, String> {
+
+    List<LocalFile> findByPathStartingWith(String prefix, Pageable pageable);
+}
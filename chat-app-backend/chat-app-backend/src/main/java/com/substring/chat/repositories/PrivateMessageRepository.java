@@ -1,12 +1,18 @@
 package com.substring.chat.repositories;
 
 import com.substring.chat.entities.PrivateMessage;
+import com.substring.chat.payload.UnreadCount;
+import org.bson.types.ObjectId;
 import org.springframework.data.domain.Pageable;
 import org.springframework.data.mongodb.repository.Aggregation;
+import org.springframework.data.mongodb.repository.Meta;
 import org.springframework.data.mongodb.repository.MongoRepository;
 import org.springframework.data.mongodb.repository.Query;
 
+import java.time.LocalDateTime;
 import java.util.List;
+import java.util.Optional;
+import java.util.stream.Stream;
 
 public interface PrivateMessageRepository extends MongoRepository<PrivateMessage, String> {
 
@@ -17,24 +23,57 @@ public interface PrivateMessageRepository extends MongoRepository<PrivateMessage
                         "] }")
         List<PrivateMessage> findMessagesBetweenUsers(String userId1, String userId2, Pageable pageable);
 
-        // Find unread messages for a user from a specific sender
-        List<PrivateMessage> findByReceiverIdAndSenderIdAndIsReadFalse(String receiverId, String senderId);
+        // Offset page of a single conversation (uses conversation_history index)
+        List<PrivateMessage> findByConversationId(String conversationId, Pageable pageable);
 
-        // Find all unread messages for a user
-        List<PrivateMessage> findByReceiverIdAndIsReadFalse(String receiverId);
+        // Keyset page of a conversation older than the (timestamp, _id) cursor
+        @Query("{ 'conversationId': ?0, $or: [ " +
+                        "{ 'timestamp': { $lt: ?1 } }, " +
+                        "{ 'timestamp': ?1, '_id': { $lt: ?2 } } " +
+                        "] }")
+        List<PrivateMessage> findConversationPageBefore(String conversationId, LocalDateTime timestamp,
+                        ObjectId id, Pageable pageable);
+
+        // Keyset page of a conversation newer than the (timestamp, _id) cursor
+        @Query("{ 'conversationId': ?0, $or: [ " +
+                        "{ 'timestamp': { $gt: ?1 } }, " +
+                        "{ 'timestamp': ?1, '_id': { $gt: ?2 } } " +
+                        "] }")
+        List<PrivateMessage> findConversationPageAfter(String conversationId, LocalDateTime timestamp,
+                        ObjectId id, Pageable pageable);
+
+        // Resolve a cursor message to its (timestamp, _id) key without loading the document
+        @Query(value = "{ '_id': ?0 }", fields = "{ 'timestamp': 1 }")
+        Optional<PrivateMessage> findCursorById(String id);
 
         // Count unread messages for a user
         long countByReceiverIdAndIsReadFalse(String receiverId);
 
-        // Optimized aggregation to finding latest message for each conversation
+        // Latest message of every conversation (used to rebuild conversation summaries)
+        @Aggregation(pipeline = {
+                        "{ $sort: { conversationId: 1, timestamp: -1 } }",
+                        "{ $group: { _id: '$conversationId', lastMessage: { $first: '$$ROOT' } } }",
+                        "{ $replaceRoot: { newRoot: '$lastMessage' } }"
+        })
+        @Meta(allowDiskUse = true)
+        Stream<PrivateMessage> streamLatestMessagePerConversation();
+
+        // Unread counts for every (receiver, sender) pair
+        @Aggregation(pipeline = {
+                        "{ $match: { 'isRead': false, 'deletedForEveryone': { $ne: true } } }",
+                        "{ $group: { _id: { receiverId: '$receiverId', senderId: '$senderId' }, count: { $sum: 1 } } }",
+                        "{ $project: { _id: 0, receiverId: '$_id.receiverId', senderId: '$_id.senderId', count: 1 } }"
+        })
+        @Meta(allowDiskUse = true)
+        List<UnreadCount> countAllUnread();
+
+        // Unread counts for one receiver, grouped by sender (fallback for counter rebuilds)
         @Aggregation(pipeline = {
-                        "{ $match: { $or: [ { 'senderId': ?0 }, { 'receiverId': ?0 } ] } }",
-                        "{ $sort: { timestamp: -1 } }",
-                        "{ $group: { _id: { $cond: [ { $eq: ['$senderId', ?0] }, '$receiverId', '$senderId' ] }, lastMessage: { $first: '$$ROOT' } } }",
-                        "{ $replaceRoot: { newRoot: '$lastMessage' } }",
-                        "{ $sort: { timestamp: -1 } }"
+                        "{ $match: { 'receiverId': ?0, 'isRead': false, 'deletedForEveryone': { $ne: true } } }",
+                        "{ $group: { _id: '$senderId', count: { $sum: 1 } } }",
+                        "{ $project: { _id: 0, receiverId: ?0, senderId: '$_id', count: 1 } }"
         })
-        List<PrivateMessage> findConversationsAggregation(String userId);
+        List<UnreadCount> countUnreadBySender(String receiverId);
 
         // Search messages between two users by content
         @Query("{ $or: [ " +
@@ -0,0 +1,329 @@
+package com.substring.chat.services;
+
+import com.substring.chat.entities.FileAttachment;
+import com.substring.chat.entities.PrivateMessage;
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.data.mongodb.core.FindAndModifyOptions;
+import org.springframework.data.mongodb.core.MongoTemplate;
+import org.springframework.data.mongodb.core.query.Criteria;
+import org.springframework.data.mongodb.core.query.Query;
+import org.springframework.data.mongodb.core.query.Update;
+import org.springframework.stereotype.Service;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.time.LocalDateTime;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Finishes private-chat file uploads in the background.
+ *
+ * The message is saved and delivered first with {@code uploadStatus =
+ * UPLOADING}; the staged file then goes to storage on a bounded pool. Failed
+ * attempts are retried with exponential backoff (plus jitter) from a separate
+ * scheduler, so waiting retries do not hold pool threads. The outcome reaches
+ * both users as the updated message on {@code /queue/message-updated}: with the
+ * file URL, or with {@code uploadStatus = FAILED} once retries run out.
+ *
+ * The queue itself is in memory. On startup, messages still marked UPLOADING
+ * whose staged file (named by {@code uploadRef}) survived are queued again; a
+ * periodic sweep fails those older than {@code stale-ms} that no worker on
+ * this node is handling, e.g. because the staged file was lost.
+ */
+@Service
+public class AsyncUploadService {
+
+    public static final String UPLOADING = "UPLOADING";
+    public static final String FAILED = "FAILED";
+
+    @Autowired
+    private FileStorageService fileStorageService;
+
+    @Autowired
+    private MongoTemplate mongoTemplate;
+
+    @Autowired
+    private MessageBus messageBus;
+
+    @Value("${chat.uploads.pool-size:4}")
+    private int poolSize;
+
+    @Value("${chat.uploads.queue-capacity:100}")
+    private int queueCapacity;
+
+    @Value("${chat.uploads.max-attempts:4}")
+    private int maxAttempts;
+
+    @Value("${chat.uploads.backoff-ms:1000}")
+    private long backoffMs;
+
+    @Value("${chat.uploads.max-backoff-ms:30000}")
+    private long maxBackoffMs;
+
+    // Far beyond any retry schedule; older placeholders no worker owns are failed
+    @Value("${chat.uploads.stale-ms:3600000}")
+    private long staleMs;
+
+    private ThreadPoolExecutor executor;
+    private ScheduledExecutorService retryScheduler;
+
+    private final AtomicLong submitted = new AtomicLong();
+    private final AtomicLong completed = new AtomicLong();
+    private final AtomicLong failed = new AtomicLong();
+    private final AtomicLong retries = new AtomicLong();
+    private final AtomicLong rejected = new AtomicLong();
+    private final AtomicLong maxQueueDepth = new AtomicLong();
+    private final AtomicInteger waitingRetry = new AtomicInteger();
+    private final AtomicLong recovered = new AtomicLong();
+    private final AtomicLong expired = new AtomicLong();
+    // Messages this node is uploading, queued or waiting for a retry
+    private final Set<String> inFlight = ConcurrentHashMap.newKeySet();
+
+    private record Upload(String messageId, String senderId, FileStorageService.StagedUpload staged,
+            String originalFileName, String contentType, int attempt) {
+
+        Upload next() {
+            return new Upload(messageId, senderId, staged, originalFileName, contentType, attempt + 1);
+        }
+    }
+
+    @PostConstruct
+    public void init() {
+        AtomicInteger threadCount = new AtomicInteger();
+        executor = new ThreadPoolExecutor(poolSize, poolSize, 60, TimeUnit.SECONDS,
+                new ArrayBlockingQueue<>(queueCapacity), r -> {
+                    Thread thread = new Thread(r, "file-upload-" + threadCount.incrementAndGet());
+                    thread.setDaemon(true);
+                    return thread;
+                });
+        executor.allowCoreThreadTimeOut(true);
+
+        retryScheduler = Executors.newSingleThreadScheduledExecutor(r -> {
+            Thread thread = new Thread(r, "file-upload-retry");
+            thread.setDaemon(true);
+            return thread;
+        });
+        retryScheduler.scheduleWithFixedDelay(() -> {
+            try {
+                expireStale();
+            } catch (Exception e) {
+                System.err.println("❌ Stale upload sweep failed: " + e.getMessage());
+            }
+        }, staleMs, Math.max(60000, staleMs / 4), TimeUnit.MILLISECONDS);
+    }
+
+    /**
+     * Queue again the uploads a previous run left unfinished, if their staged
+     * file is still there
+     */
+    @EventListener(ApplicationReadyEvent.class)
+    public void recoverPending() {
+        Query query = new Query(Criteria.where("uploadStatus").is(UPLOADING));
+        for (PrivateMessage message : mongoTemplate.find(query, PrivateMessage.class)) {
+            Path staged = fileStorageService.stagedPath(message.getUploadRef());
+            if (staged == null || !Files.isRegularFile(staged) || inFlight.contains(message.getId())) {
+                // Lost, or staged on another node; the stale sweep settles it
+                continue;
+            }
+            try {
+                submit(message, fileStorageService.restage(staged), message.getFileName(), message.getFileType());
+                recovered.incrementAndGet();
+            } catch (IOException e) {
+                System.err.println("⚠️ Could not resume upload for message " + message.getId() + ": "
+                        + e.getMessage());
+            }
+        }
+        if (recovered.get() > 0) {
+            System.out.println("🔁 Resumed " + recovered.get() + " unfinished uploads");
+        }
+    }
+
+    /**
+     * Fail placeholders stuck in UPLOADING that no worker here is handling
+     */
+    private void expireStale() {
+        LocalDateTime cutoff = LocalDateTime.now().minus(Duration.ofMillis(staleMs));
+        Query query = new Query(Criteria.where("uploadStatus").is(UPLOADING).and("timestamp").lt(cutoff));
+        for (PrivateMessage message : mongoTemplate.find(query, PrivateMessage.class)) {
+            if (inFlight.contains(message.getId())) {
+                continue;
+            }
+            Path staged = fileStorageService.stagedPath(message.getUploadRef());
+            if (staged != null) {
+                try {
+                    Files.deleteIfExists(staged);
+                } catch (IOException e) {
+                    // Temp dir cleanup will get it
+                }
+            }
+            expired.incrementAndGet();
+            markFailed(message.getId());
+        }
+    }
+
+    /**
+     * Give up on an upload before it was queued, e.g. when saving its
+     * placeholder failed: deletes the staged file and fails the placeholder
+     * if it was saved
+     */
+    public void abandon(PrivateMessage message, FileStorageService.StagedUpload staged) {
+        try {
+            Files.deleteIfExists(staged.path());
+        } catch (IOException e) {
+            System.out.println("⚠️ Could not delete staged upload " + staged.path() + ": " + e.getMessage());
+        }
+        if (message != null && message.getId() != null) {
+            markFailed(message.getId());
+        }
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        retryScheduler.shutdownNow();
+        executor.shutdown();
+    }
+
+    /**
+     * Whether a new upload can be queued right now. Checked before the
+     * placeholder message is created, so a full queue is a plain error.
+     */
+    public boolean hasCapacity() {
+        return executor.getQueue().remainingCapacity() > 0;
+    }
+
+    /**
+     * Queue the upload for a saved placeholder message. Takes ownership of
+     * {@code staged} and deletes it when done.
+     */
+    public void submit(PrivateMessage message, FileStorageService.StagedUpload staged, String originalFileName,
+            String contentType) {
+        submitted.incrementAndGet();
+        inFlight.add(message.getId());
+        dispatch(new Upload(message.getId(), message.getSenderId(), staged, originalFileName, contentType, 1));
+    }
+
+    private void dispatch(Upload upload) {
+        try {
+            executor.execute(() -> run(upload));
+            maxQueueDepth.accumulateAndGet(executor.getQueue().size(), Math::max);
+        } catch (RejectedExecutionException e) {
+            rejected.incrementAndGet();
+            retryOrFail(upload, e);
+        }
+    }
+
+    private void run(Upload upload) {
+        FileAttachment attachment;
+        try {
+            attachment = fileStorageService.store(upload.staged(), upload.originalFileName(),
+                    upload.contentType(), upload.senderId());
+        } catch (Exception e) {
+            retryOrFail(upload, e);
+            return;
+        }
+
+        deleteStaged(upload);
+        inFlight.remove(upload.messageId());
+        completed.incrementAndGet();
+
+        Query query = new Query(Criteria.where("id").is(upload.messageId()));
+        Update update = new Update()
+                .set("fileUrl", attachment.getFileUrl())
+                .set("fileType", attachment.getFileType())
+                .unset("uploadStatus")
+                .unset("uploadRef");
+        if (attachment.getPlaceholder() != null) {
+            update.set("thumbnailUrl", attachment.getThumbnailUrl()).set("placeholder", attachment.getPlaceholder());
+        }
+        publish(mongoTemplate.findAndModify(query, update,
+                FindAndModifyOptions.options().returnNew(true), PrivateMessage.class));
+    }
+
+    private void retryOrFail(Upload upload, Exception cause) {
+        if (upload.attempt() < maxAttempts && !retryScheduler.isShutdown()) {
+            long delay = Math.min(maxBackoffMs, backoffMs << (upload.attempt() - 1));
+            delay += ThreadLocalRandom.current().nextLong(delay / 4 + 1);
+            System.out.println("⚠️ Upload for message " + upload.messageId() + " failed (attempt "
+                    + upload.attempt() + "), retrying in " + delay + "ms: " + cause.getMessage());
+            retries.incrementAndGet();
+            waitingRetry.incrementAndGet();
+            try {
+                retryScheduler.schedule(() -> {
+                    waitingRetry.decrementAndGet();
+                    dispatch(upload.next());
+                }, delay, TimeUnit.MILLISECONDS);
+                return;
+            } catch (RejectedExecutionException e) {
+                waitingRetry.decrementAndGet();
+            }
+        }
+
+        System.out.println("❌ Upload for message " + upload.messageId() + " failed: " + cause.getMessage());
+        deleteStaged(upload);
+        inFlight.remove(upload.messageId());
+        failed.incrementAndGet();
+        markFailed(upload.messageId());
+    }
+
+    private void markFailed(String messageId) {
+        Query query = new Query(Criteria.where("id").is(messageId).and("uploadStatus").is(UPLOADING));
+        Update update = new Update().set("uploadStatus", FAILED).unset("uploadRef");
+        publish(mongoTemplate.findAndModify(query, update,
+                FindAndModifyOptions.options().returnNew(true), PrivateMessage.class));
+    }
+
+    // Null when the message was deleted while uploading
+    private void publish(PrivateMessage updated) {
+        if (updated == null) {
+            return;
+        }
+        messageBus.sendToUser(updated.getReceiverId(), "/queue/message-updated", updated);
+        messageBus.sendToUser(updated.getSenderId(), "/queue/message-updated", updated);
+    }
+
+    private void deleteStaged(Upload upload) {
+        try {
+            Files.deleteIfExists(upload.staged().path());
+        } catch (IOException e) {
+            System.out.println("⚠️ Could not delete staged upload " + upload.staged().path() + ": " + e.getMessage());
+        }
+    }
+
+    /**
+     * Upload queue counters
+     */
+    public Map<String, Object> getStats() {
+        Map<String, Object> stats = new HashMap<>();
+        stats.put("queueDepth", executor.getQueue().size());
+        stats.put("maxQueueDepth", maxQueueDepth.get());
+        stats.put("active", executor.getActiveCount());
+        stats.put("waitingRetry", waitingRetry.get());
+        stats.put("submitted", submitted.get());
+        stats.put("completed", completed.get());
+        stats.put("failed", failed.get());
+        stats.put("retries", retries.get());
+        stats.put("rejected", rejected.get());
+        stats.put("recovered", recovered.get());
+        stats.put("expired", expired.get());
+        return stats;
+    }
+}
@@ -5,7 +5,6 @@ import com.substring.chat.entities.CallStatus;
 import com.substring.chat.entities.CallType;
 import com.substring.chat.repositories.CallHistoryRepository;
 import lombok.RequiredArgsConstructor;
-import org.springframework.messaging.simp.SimpMessagingTemplate;
 import org.springframework.stereotype.Service;
 
 import java.time.LocalDateTime;
@@ -18,7 +17,7 @@ import java.util.Map;
 public class CallService {
 
     private final CallHistoryRepository callHistoryRepository;
-    private final SimpMessagingTemplate messagingTemplate;
+    private final MessageBus messageBus;
 
     public CallSession startCall(String initiatorId, String initiatorName, String initiatorAvatarUrl,
             List<String> participantIds, CallType type, boolean isGroup,
@@ -48,7 +47,7 @@ public class CallService {
         ringPayload.put("groupId", groupId);
 
         for (String participantId : participantIds) {
-            messagingTemplate.convertAndSendToUser(participantId, "/queue/calls", ringPayload);
+            messageBus.sendToUser(participantId, "/queue/calls", ringPayload);
         }
 
         return savedSession;
@@ -67,7 +66,7 @@ public class CallService {
         acceptPayload.put("sessionId", sessionId);
         acceptPayload.put("userId", userId);
 
-        messagingTemplate.convertAndSendToUser(session.getInitiatorId(), "/queue/calls", acceptPayload);
+        messageBus.sendToUser(session.getInitiatorId(), "/queue/calls", acceptPayload);
 
         return updated;
     }
@@ -86,7 +85,7 @@ public class CallService {
         declinePayload.put("sessionId", sessionId);
         declinePayload.put("userId", userId);
 
-        messagingTemplate.convertAndSendToUser(session.getInitiatorId(), "/queue/calls", declinePayload);
+        messageBus.sendToUser(session.getInitiatorId(), "/queue/calls", declinePayload);
     }
 
     public void endCall(String sessionId, String userId) {
@@ -104,9 +103,9 @@ public class CallService {
             endPayload.put("sessionId", sessionId);
             endPayload.put("endedBy", userId);
 
-            messagingTemplate.convertAndSendToUser(session.getInitiatorId(), "/queue/calls", endPayload);
+            messageBus.sendToUser(session.getInitiatorId(), "/queue/calls", endPayload);
             for (String pid : session.getParticipantIds()) {
-                messagingTemplate.convertAndSendToUser(pid, "/queue/calls", endPayload);
+                messageBus.sendToUser(pid, "/queue/calls", endPayload);
             }
         }
     }
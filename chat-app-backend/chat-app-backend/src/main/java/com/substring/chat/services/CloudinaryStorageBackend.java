@@ -0,0 +1,39 @@
+package com.substring.chat.services;
+
+import com.cloudinary.Cloudinary;
+import com.cloudinary.utils.ObjectUtils;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.stereotype.Service;
+
+import java.io.IOException;
+import java.nio.file.Path;
+import java.util.Map;
+
+/**
+ * Cloudinary storage. Uploads pass the staged file itself, which the HTTP
+ * client streams from disk in small buffers instead of a byte array.
+ */
+@Service
+@ConditionalOnProperty(name = "chat.storage.backend", havingValue = "cloudinary", matchIfMissing = true)
+public class CloudinaryStorageBackend implements StorageBackend {
+
+    @Autowired
+    private Cloudinary cloudinary;
+
+    @Override
+    public StoredObject store(Path source, String originalFileName, String contentType) throws IOException {
+        Map<?, ?> uploadResult = cloudinary.uploader().upload(source.toFile(),
+                ObjectUtils.asMap("resource_type", "auto"));
+
+        return new StoredObject(
+                (String) uploadResult.get("public_id"),
+                (String) uploadResult.get("secure_url"),
+                (String) uploadResult.get("resource_type"));
+    }
+
+    @Override
+    public void delete(String key) throws IOException {
+        cloudinary.uploader().destroy(key, ObjectUtils.emptyMap());
+    }
+}
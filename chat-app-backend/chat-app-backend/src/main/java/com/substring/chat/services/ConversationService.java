@@ -0,0 +1,319 @@
+package com.substring.chat.services;
+
+import com.substring.chat.entities.Conversation;
+import com.substring.chat.entities.PrivateMessage;
+import com.substring.chat.payload.UnreadCount;
+import com.substring.chat.repositories.ConversationRepository;
+import com.substring.chat.repositories.PrivateMessageRepository;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.data.mongodb.core.BulkOperations;
+import org.springframework.data.mongodb.core.MongoTemplate;
+import org.springframework.data.mongodb.core.query.Criteria;
+import org.springframework.data.mongodb.core.query.Query;
+import org.springframework.data.mongodb.core.query.Update;
+import org.springframework.stereotype.Service;
+
+import java.time.LocalDateTime;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Keeps the conversations collection in step with private_messages using
+ * atomic field updates, so inbox reads never touch message history.
+ */
+@Service
+public class ConversationService {
+
+    private static final int PREVIEW_LENGTH = 100;
+    private static final String DELETED_PREVIEW = "This message was deleted";
+
+    @Autowired
+    private ConversationRepository conversationRepository;
+
+    @Autowired
+    private PrivateMessageRepository privateMessageRepository;
+
+    @Autowired
+    private MongoTemplate mongoTemplate;
+
+    /**
+     * Get inbox for user, most recent first
+     */
+    public List<Conversation> getConversations(String userId) {
+        return conversationRepository.findByParticipantIdsOrderByLastMessageAtDesc(userId);
+    }
+
+    /**
+     * Unread counts per partner, read from the counters. Only the participant
+     * list and the caller's own counter are fetched.
+     */
+    public Map<String, Long> getUnreadCounts(String userId) {
+        String counterField = "unreadCounts." + userId;
+        Query query = new Query(Criteria.where("participantIds").is(userId).and(counterField).gt(0));
+        query.fields().include("participantIds").include(counterField);
+
+        Map<String, Long> counts = new HashMap<>();
+        for (Conversation summary : mongoTemplate.find(query, Conversation.class)) {
+            counts.put(summary.partnerOf(userId), summary.getUnreadCounts().getOrDefault(userId, 0L));
+        }
+        return counts;
+    }
+
+    /**
+     * Recompute a user's unread counters from private_messages. Used to repair
+     * counters that drifted, e.g. after a failed summary update.
+     *
+     * The counts are computed first, then only counters that differ are set,
+     * in one bulk write. Each set only applies if the counter still holds the
+     * value read here, so a live update in between is kept (and a later
+     * rebuild catches up).
+     */
+    public Map<String, Long> rebuildUnreadCounts(String userId) {
+        String counterField = "unreadCounts." + userId;
+        Map<String, Long> counts = new HashMap<>();
+        for (UnreadCount count : privateMessageRepository.countUnreadBySender(userId)) {
+            counts.put(count.getSenderId(), count.getCount());
+        }
+
+        Query query = new Query(Criteria.where("participantIds").is(userId));
+        query.fields().include("participantIds").include(counterField);
+
+        BulkOperations bulk = mongoTemplate.bulkOps(BulkOperations.BulkMode.UNORDERED, Conversation.class);
+        int changed = 0;
+        for (Conversation summary : mongoTemplate.find(query, Conversation.class)) {
+            Long current = summary.getUnreadCounts() != null ? summary.getUnreadCounts().get(userId) : null;
+            long expected = counts.getOrDefault(summary.partnerOf(userId), 0L);
+            if (current != null && current == expected) {
+                continue;
+            }
+            bulk.updateOne(
+                    new Query(Criteria.where("id").is(summary.getId()).and(counterField).is(current)),
+                    new Update().set(counterField, expected));
+            changed++;
+        }
+        if (changed > 0) {
+            bulk.execute();
+        }
+        return counts;
+    }
+
+    /**
+     * Record a single sent message
+     */
+    public void recordMessage(PrivateMessage message) {
+        recordMessages(List.of(message));
+    }
+
+    /**
+     * Record sent messages with one ordered bulk write. The preview only moves
+     * forward in time: a message older than the current preview (e.g. a late
+     * ingest flush behind a synchronous send-file) counts as unread but leaves
+     * the preview alone. Messages stored already read do not count as unread.
+     */
+    public void recordMessages(List<PrivateMessage> messages) {
+        if (messages.isEmpty()) {
+            return;
+        }
+
+        BulkOperations bulk = mongoTemplate.bulkOps(BulkOperations.BulkMode.ORDERED, Conversation.class);
+        for (PrivateMessage message : messages) {
+            String conversationId = PrivateMessage.conversationIdOf(message.getSenderId(), message.getReceiverId());
+            Update update = participantsUpdate(message);
+            if (!message.isRead()) {
+                update.inc("unreadCounts." + message.getReceiverId(), 1L);
+            }
+            bulk.upsert(byId(conversationId), update);
+            bulk.updateOne(previewNotNewerThan(conversationId, message), withPreview(new Update(), message));
+        }
+        bulk.execute();
+    }
+
+    /**
+     * Mark everything the partner sent up to {@code readUpTo} as read with a
+     * single updateMany, then move the reader's watermark forward and take the
+     * number of flipped messages off their unread counter. A watermark in the
+     * future is clamped to now, it could never move back down.
+     *
+     * @return number of messages that changed to read
+     */
+    public long markRead(String readerId, String partnerId, LocalDateTime readUpTo) {
+        LocalDateTime now = LocalDateTime.now();
+        if (readUpTo.isAfter(now)) {
+            readUpTo = now;
+        }
+        long modified = mongoTemplate.updateMulti(
+                new Query(Criteria.where("receiverId").is(readerId)
+                        .and("senderId").is(partnerId)
+                        .and("isRead").is(false)
+                        // Unread deletes were already taken off the counter by onMessageDeleted
+                        .and("deletedForEveryone").ne(true)
+                        .and("timestamp").lte(readUpTo)),
+                new Update().set("isRead", true).set("readAt", now),
+                PrivateMessage.class).getModifiedCount();
+
+        String conversationId = PrivateMessage.conversationIdOf(readerId, partnerId);
+        String counterField = "unreadCounts." + readerId;
+        mongoTemplate.updateFirst(byId(conversationId),
+                new Update()
+                        .inc(counterField, -modified)
+                        .max("lastReadAt." + readerId, readUpTo)
+                        .set("updatedAt", now),
+                Conversation.class);
+
+        // Counters can only drift low if an earlier update was lost; clamp at zero
+        mongoTemplate.updateFirst(
+                new Query(Criteria.where("id").is(conversationId).and(counterField).lt(0)),
+                new Update().set(counterField, 0L),
+                Conversation.class);
+
+        return modified;
+    }
+
+    /**
+     * Mark messages whose receiver has already read past them (watermark at or
+     * after the message) as read, before they are stored. Delivery runs ahead
+     * of persistence, so a receiver with the chat open usually marks a message
+     * read before it exists in private_messages.
+     */
+    public void applyReadWatermarks(List<PrivateMessage> messages) {
+        Map<String, Map<String, LocalDateTime>> watermarks = loadWatermarks(messages);
+        LocalDateTime now = LocalDateTime.now();
+        for (PrivateMessage message : messages) {
+            if (!message.isRead() && watermarkOf(message, watermarks) != null) {
+                message.setRead(true);
+                message.setReadAt(now);
+            }
+        }
+    }
+
+    /**
+     * After storing messages, catch reads that moved a watermark between
+     * {@link #applyReadWatermarks} and the insert. {@link #markRead} only
+     * flips what is still unread, so rerunning it up to the watermark is safe.
+     */
+    public void reconcileReads(List<PrivateMessage> messages) {
+        List<PrivateMessage> unread = messages.stream().filter(message -> !message.isRead()).toList();
+        if (unread.isEmpty()) {
+            return;
+        }
+        Map<String, Map<String, LocalDateTime>> watermarks = loadWatermarks(unread);
+        Set<String> reconciled = new HashSet<>();
+        for (PrivateMessage message : unread) {
+            LocalDateTime watermark = watermarkOf(message, watermarks);
+            if (watermark != null && reconciled.add(message.getReceiverId() + "|" + message.getSenderId())) {
+                markRead(message.getReceiverId(), message.getSenderId(), watermark);
+            }
+        }
+    }
+
+    // Conversation ID -> reader -> read watermark, for the conversations of these messages
+    private Map<String, Map<String, LocalDateTime>> loadWatermarks(List<PrivateMessage> messages) {
+        Set<String> conversationIds = new HashSet<>();
+        for (PrivateMessage message : messages) {
+            conversationIds.add(PrivateMessage.conversationIdOf(message.getSenderId(), message.getReceiverId()));
+        }
+        Query query = new Query(Criteria.where("id").in(conversationIds));
+        query.fields().include("lastReadAt");
+
+        Map<String, Map<String, LocalDateTime>> watermarks = new HashMap<>();
+        for (Conversation conversation : mongoTemplate.find(query, Conversation.class)) {
+            if (conversation.getLastReadAt() != null) {
+                watermarks.put(conversation.getId(), conversation.getLastReadAt());
+            }
+        }
+        return watermarks;
+    }
+
+    // The receiver's watermark if it covers the message, else null
+    private LocalDateTime watermarkOf(PrivateMessage message, Map<String, Map<String, LocalDateTime>> watermarks) {
+        Map<String, LocalDateTime> readers = watermarks.get(
+                PrivateMessage.conversationIdOf(message.getSenderId(), message.getReceiverId()));
+        LocalDateTime watermark = readers != null ? readers.get(message.getReceiverId()) : null;
+        return watermark != null && message.getTimestamp() != null && !message.getTimestamp().isAfter(watermark)
+                ? watermark
+                : null;
+    }
+
+    /**
+     * Adjust summary after a message was deleted for everyone
+     */
+    public void onMessageDeleted(PrivateMessage message) {
+        String conversationId = PrivateMessage.conversationIdOf(message.getSenderId(), message.getReceiverId());
+
+        // Replace preview only if the deleted message is still the latest one
+        mongoTemplate.updateFirst(
+                new Query(Criteria.where("id").is(conversationId).and("lastMessageId").is(message.getId())),
+                new Update()
+                        .set("lastMessagePreview", DELETED_PREVIEW)
+                        .unset("lastMessageFileType")
+                        .set("updatedAt", LocalDateTime.now()),
+                Conversation.class);
+
+        if (!message.isRead()) {
+            mongoTemplate.updateFirst(
+                    new Query(Criteria.where("id").is(conversationId)
+                            .and("unreadCounts." + message.getReceiverId()).gt(0)),
+                    new Update().inc("unreadCounts." + message.getReceiverId(), -1L),
+                    Conversation.class);
+        }
+    }
+
+    /**
+     * Rebuild a summary from scratch, used by the backfill job. Counters are
+     * only set on a summary that does not exist yet, and the preview only
+     * moves forward in time, so live updates are never overwritten.
+     */
+    public void replaceSummary(PrivateMessage lastMessage, long unreadForReceiver, long unreadForSender) {
+        String conversationId = PrivateMessage.conversationIdOf(lastMessage.getSenderId(),
+                lastMessage.getReceiverId());
+
+        Update update = participantsUpdate(lastMessage)
+                .setOnInsert("unreadCounts." + lastMessage.getReceiverId(), unreadForReceiver)
+                .setOnInsert("unreadCounts." + lastMessage.getSenderId(), unreadForSender);
+        mongoTemplate.upsert(byId(conversationId), update, Conversation.class);
+
+        Update preview = withPreview(new Update(), lastMessage);
+        if (lastMessage.isDeletedForEveryone()) {
+            preview.set("lastMessagePreview", DELETED_PREVIEW).set("lastMessageFileType", null);
+        }
+        mongoTemplate.updateFirst(previewNotNewerThan(conversationId, lastMessage), preview, Conversation.class);
+    }
+
+    // The summary, if its preview is not newer than the message
+    private Query previewNotNewerThan(String conversationId, PrivateMessage message) {
+        return new Query(Criteria.where("id").is(conversationId).orOperator(
+                Criteria.where("lastMessageAt").is(null),
+                Criteria.where("lastMessageAt").lte(message.getTimestamp())));
+    }
+
+    private Update participantsUpdate(PrivateMessage message) {
+        return new Update()
+                .setOnInsert("participantIds", List.of(message.getSenderId(), message.getReceiverId()))
+                .set("participantNames." + message.getSenderId(), message.getSenderName())
+                .set("participantNames." + message.getReceiverId(), message.getReceiverName())
+                .set("updatedAt", LocalDateTime.now());
+    }
+
+    private Update withPreview(Update update, PrivateMessage message) {
+        return update
+                .set("lastMessageId", message.getId())
+                .set("lastMessageSenderId", message.getSenderId())
+                .set("lastMessagePreview", preview(message.getContent()))
+                .set("lastMessageFileType", message.getFileType())
+                .set("lastMessageAt", message.getTimestamp());
+    }
+
+    private Query byId(String conversationId) {
+        return new Query(Criteria.where("id").is(conversationId));
+    }
+
+    private String preview(String content) {
+        if (content == null || content.length() <= PREVIEW_LENGTH) {
+            return content;
+        }
+        return content.substring(0, PREVIEW_LENGTH) + "…";
+    }
+}
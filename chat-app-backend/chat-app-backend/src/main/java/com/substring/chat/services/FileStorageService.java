@@ -1,64 +1,320 @@
 package com.substring.chat.services;
 
-import com.cloudinary.Cloudinary;
-import com.cloudinary.utils.ObjectUtils;
+import com.mongodb.client.result.DeleteResult;
 import com.substring.chat.entities.FileAttachment;
+import com.substring.chat.entities.FileContent;
 import com.substring.chat.repositories.FileAttachmentRepository;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.dao.DuplicateKeyException;
+import org.springframework.data.mongodb.core.FindAndModifyOptions;
+import org.springframework.data.mongodb.core.MongoTemplate;
+import org.springframework.data.mongodb.core.query.Criteria;
+import org.springframework.data.mongodb.core.query.Query;
+import org.springframework.data.mongodb.core.query.Update;
 import org.springframework.stereotype.Service;
 import org.springframework.web.multipart.MultipartFile;
 
 import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.time.LocalDateTime;
+import java.util.HashMap;
+import java.util.HexFormat;
 import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.regex.Pattern;
 
+/**
+ * Uploads and deletes file attachments.
+ *
+ * Storage is content-addressed: each upload is hashed (SHA-256) while it is
+ * staged, and attachments with the same hash share one stored object, tracked
+ * by a reference-counted {@link FileContent}. Re-sharing a file only adds a
+ * reference; the object is destroyed when its last attachment is deleted.
+ */
 @Service
 public class FileStorageService {
 
+    private static final int CHUNK_SIZE = 64 * 1024;
+    private static final int MAX_ATTEMPTS = 3;
+    private static final String STAGED_PREFIX = "chat-upload-";
+    private static final String STAGED_SUFFIX = ".part";
+    private static final Pattern STAGED_NAME = Pattern.compile(Pattern.quote(STAGED_PREFIX) + "[0-9]+"
+            + Pattern.quote(STAGED_SUFFIX));
+
     @Autowired
-    private Cloudinary cloudinary;
+    private StorageBackend storageBackend;
 
     @Autowired
     private FileAttachmentRepository fileAttachmentRepository;
 
+    @Autowired
+    private MongoTemplate mongoTemplate;
+
+    @Autowired
+    private ImagePreviewService imagePreviewService;
+
+    private final AtomicLong stored = new AtomicLong();
+    private final AtomicLong deduplicated = new AtomicLong();
+    private final AtomicLong released = new AtomicLong();
+    private final AtomicLong destroyed = new AtomicLong();
+    private final AtomicLong takenOver = new AtomicLong();
+
     /**
-     * Upload file to Cloudinary
+     * A staged upload: the temp file, the SHA-256 of its bytes and its size
+     */
+    public record StagedUpload(Path path, String sha256, long size) {
+    }
+
+    /**
+     * Upload file to the configured storage backend, or reference the stored
+     * copy if the same content was uploaded before.
      */
     public FileAttachment uploadFile(MultipartFile file, String userId) throws IOException {
-        // Upload to Cloudinary
-        Map<?, ?> uploadResult = cloudinary.uploader().upload(file.getBytes(),
-                ObjectUtils.asMap("resource_type", "auto"));
+        StagedUpload staged = stage(file);
+        try {
+            return store(staged, file.getOriginalFilename(), file.getContentType(), userId);
+        } finally {
+            Files.deleteIfExists(staged.path());
+        }
+    }
+
+    /**
+     * Copy the upload to a temp file that outlives the request, hashing it in
+     * the same pass. The upload is read in fixed-size chunks, so it is never
+     * held in memory as a whole. The caller deletes the file once stored.
+     */
+    public StagedUpload stage(MultipartFile file) throws IOException {
+        Path staged = Files.createTempFile(STAGED_PREFIX, STAGED_SUFFIX);
+        MessageDigest digest = sha256();
+        long size = 0;
+        try (InputStream in = file.getInputStream();
+                OutputStream out = Files.newOutputStream(staged)) {
+            byte[] buffer = new byte[CHUNK_SIZE];
+            int read;
+            while ((read = in.read(buffer)) != -1) {
+                digest.update(buffer, 0, read);
+                out.write(buffer, 0, read);
+                size += read;
+            }
+        } catch (IOException | RuntimeException e) {
+            Files.deleteIfExists(staged);
+            throw e;
+        }
+        return new StagedUpload(staged, HexFormat.of().formatHex(digest.digest()), size);
+    }
+
+    /**
+     * The staged file a persisted {@code uploadRef} (its file name) points to,
+     * or null if the reference is not a staged upload name
+     */
+    public Path stagedPath(String uploadRef) {
+        if (uploadRef == null || !STAGED_NAME.matcher(uploadRef).matches()) {
+            return null;
+        }
+        return Paths.get(System.getProperty("java.io.tmpdir")).resolve(uploadRef);
+    }
+
+    /**
+     * Hash a staged file again, for uploads resumed after a restart
+     */
+    public StagedUpload restage(Path staged) throws IOException {
+        MessageDigest digest = sha256();
+        long size = 0;
+        try (InputStream in = Files.newInputStream(staged)) {
+            byte[] buffer = new byte[CHUNK_SIZE];
+            int read;
+            while ((read = in.read(buffer)) != -1) {
+                digest.update(buffer, 0, read);
+                size += read;
+            }
+        }
+        return new StagedUpload(staged, HexFormat.of().formatHex(digest.digest()), size);
+    }
 
-        String fileUrl = (String) uploadResult.get("secure_url");
-        String publicId = (String) uploadResult.get("public_id");
-        String fileType = (String) uploadResult.get("resource_type");
-        long fileSize = file.getSize();
-        String originalFileName = file.getOriginalFilename();
+    /**
+     * Record an attachment for a staged upload, storing its content only if no
+     * stored copy exists yet
+     */
+    public FileAttachment store(StagedUpload staged, String originalFileName, String contentType, String userId)
+            throws IOException {
+        FileContent content = acquire(staged, originalFileName, contentType);
 
         // Create metadata
         FileAttachment attachment = new FileAttachment(
                 originalFileName,
                 originalFileName,
-                fileUrl,
-                fileType,
-                fileSize,
-                publicId,
+                content.getUrl(),
+                content.getResourceType(),
+                staged.size(),
+                content.getStorageKey(),
                 userId);
+        attachment.setSha256(content.getId());
+        // Set when this content was previewed before, otherwise filled in once the preview is ready
+        attachment.setThumbnailUrl(content.getThumbnailUrl());
+        attachment.setPlaceholder(content.getPlaceholder());
+        attachment.setWidth(content.getWidth());
+        attachment.setHeight(content.getHeight());
 
         // Save to database
         return fileAttachmentRepository.save(attachment);
     }
 
     /**
-     * Delete file from Cloudinary and DB
+     * Take a reference on the stored content for this hash, uploading it first
+     * if there is none
+     */
+    private FileContent acquire(StagedUpload staged, String originalFileName, String contentType)
+            throws IOException {
+        StorageBackend.StoredObject uploaded = null;
+        Path previewSource = null;
+        try {
+            for (int attempt = 0; attempt < MAX_ATTEMPTS; attempt++) {
+                // Only live contents (refCount > 0) can be shared, one at zero is being destroyed
+                FileContent existing = mongoTemplate.findAndModify(
+                        new Query(Criteria.where("id").is(staged.sha256()).and("refCount").gt(0)),
+                        new Update().inc("refCount", 1L),
+                        FindAndModifyOptions.options().returnNew(true),
+                        FileContent.class);
+                if (existing != null) {
+                    deduplicated.incrementAndGet();
+                    if (uploaded != null) {
+                        // Lost the race to a concurrent upload of the same bytes
+                        storageBackend.delete(uploaded.key());
+                    }
+                    return existing;
+                }
+
+                if (uploaded == null) {
+                    // The backend may move the staged file, keep the bytes for the preview first
+                    previewSource = imagePreviewService.prepare(staged.path(), contentType);
+                    uploaded = storageBackend.store(staged.path(), originalFileName, contentType);
+                }
+                FileContent content = new FileContent();
+                content.setId(staged.sha256());
+                content.setStorageKey(uploaded.key());
+                content.setUrl(uploaded.url());
+                content.setResourceType(uploaded.resourceType());
+                content.setSize(staged.size());
+                content.setRefCount(1L);
+                content.setCreatedAt(LocalDateTime.now());
+                try {
+                    mongoTemplate.insert(content);
+                    stored.incrementAndGet();
+                    imagePreviewService.submit(content, previewSource);
+                    previewSource = null;
+                    return content;
+                } catch (DuplicateKeyException e) {
+                    // Inserted concurrently (retry against it), or a released one not removed yet
+                }
+
+                // A record at refCount <= 0 is being destroyed, or was left behind when its
+                // release died between the decrement and the remove. Take it over for the new
+                // upload; the release's remove then no longer matches, so its object is ours to destroy.
+                FileContent zombie = mongoTemplate.findAndModify(
+                        new Query(Criteria.where("id").is(staged.sha256()).and("refCount").lte(0)),
+                        new Update()
+                                .set("storageKey", content.getStorageKey())
+                                .set("url", content.getUrl())
+                                .set("resourceType", content.getResourceType())
+                                .set("size", content.getSize())
+                                .set("refCount", 1L)
+                                .set("createdAt", content.getCreatedAt())
+                                .unset("thumbnailKey")
+                                .unset("thumbnailUrl")
+                                .unset("placeholder")
+                                .unset("width")
+                                .unset("height"),
+                        FileContent.class);
+                if (zombie != null) {
+                    takenOver.incrementAndGet();
+                    destroy(zombie.getStorageKey());
+                    if (zombie.getThumbnailKey() != null) {
+                        storageBackend.delete(zombie.getThumbnailKey());
+                    }
+                    imagePreviewService.submit(content, previewSource);
+                    previewSource = null;
+                    return content;
+                }
+            }
+            storageBackend.delete(uploaded.key());
+            throw new RuntimeException("File upload conflicted, please retry");
+        } finally {
+            // Not handed to the preview pipeline
+            imagePreviewService.discard(previewSource);
+        }
+    }
+
+    /**
+     * Delete the attachment, and its stored object once no other attachment
+     * references it
      */
     public void deleteFile(String attachmentId) throws IOException {
         FileAttachment attachment = fileAttachmentRepository.findById(attachmentId)
                 .orElseThrow(() -> new RuntimeException("File not found"));
 
-        // Delete from Cloudinary
-        cloudinary.uploader().destroy(attachment.getPublicId(), ObjectUtils.emptyMap());
-
         // Delete from DB
         fileAttachmentRepository.deleteById(attachmentId);
+        released.incrementAndGet();
+
+        if (attachment.getSha256() == null) {
+            // Uploaded before deduplication, it owns its object
+            destroy(attachment.getPublicId());
+            return;
+        }
+
+        FileContent content = mongoTemplate.findAndModify(
+                new Query(Criteria.where("id").is(attachment.getSha256())),
+                new Update().inc("refCount", -1L),
+                FindAndModifyOptions.options().returnNew(true),
+                FileContent.class);
+        if (content == null) {
+            destroy(attachment.getPublicId());
+            return;
+        }
+        if (content.getRefCount() <= 0) {
+            // Only whoever removes the record destroys the object
+            DeleteResult removed = mongoTemplate.remove(
+                    new Query(Criteria.where("id").is(content.getId()).and("refCount").lte(0)),
+                    FileContent.class);
+            if (removed.getDeletedCount() > 0) {
+                destroy(content.getStorageKey());
+                if (content.getThumbnailKey() != null) {
+                    storageBackend.delete(content.getThumbnailKey());
+                }
+            }
+        }
+    }
+
+    private void destroy(String storageKey) throws IOException {
+        // Delete from storage
+        storageBackend.delete(storageKey);
+        destroyed.incrementAndGet();
+    }
+
+    private MessageDigest sha256() {
+        try {
+            return MessageDigest.getInstance("SHA-256");
+        } catch (NoSuchAlgorithmException e) {
+            throw new RuntimeException(e);
+        }
+    }
+
+    /**
+     * Upload and deduplication counters
+     */
+    public Map<String, Object> getStats() {
+        Map<String, Object> stats = new HashMap<>();
+        stats.put("stored", stored.get());
+        stats.put("deduplicated", deduplicated.get());
+        stats.put("released", released.get());
+        stats.put("destroyed", destroyed.get());
+        stats.put("takenOver", takenOver.get());
+        return stats;
     }
 }
@@ -0,0 +1,119 @@
+package com.substring.chat.services;
+
+import com.substring.chat.entities.GroupMember;
+import com.substring.chat.entities.GroupRole;
+import com.substring.chat.repositories.GroupMemberRepository;
+import jakarta.annotation.PostConstruct;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Bounded LRU cache of group memberships (groupId -> userId -> role).
+ *
+ * A miss loads the whole member list of the group with one query, so every
+ * later permission check for that group is answered from memory. GroupService
+ * invalidates a group whenever its membership or roles change.
+ */
+@Service
+public class GroupMembershipCache {
+
+    @Autowired
+    private GroupMemberRepository memberRepository;
+
+    @Value("${chat.group-cache.max-groups:10000}")
+    private int maxGroups;
+
+    private Map<String, Map<String, GroupRole>> groups;
+
+    // Bumped on every invalidation so a load racing with a change is not cached
+    private final AtomicLong generation = new AtomicLong();
+
+    private final AtomicLong hits = new AtomicLong();
+    private final AtomicLong misses = new AtomicLong();
+    private final AtomicLong evictions = new AtomicLong();
+
+    @PostConstruct
+    public void init() {
+        groups = new LinkedHashMap<>(256, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<String, Map<String, GroupRole>> eldest) {
+                if (size() > maxGroups) {
+                    evictions.incrementAndGet();
+                    return true;
+                }
+                return false;
+            }
+        };
+    }
+
+    /**
+     * Role of user in group, or null if not a member
+     */
+    public GroupRole getRole(String groupId, String userId) {
+        return getMembers(groupId).get(userId);
+    }
+
+    /**
+     * Check membership
+     */
+    public boolean isMember(String groupId, String userId) {
+        return getMembers(groupId).containsKey(userId);
+    }
+
+    /**
+     * Drop cached membership of a group
+     */
+    public void invalidate(String groupId) {
+        generation.incrementAndGet();
+        synchronized (groups) {
+            groups.remove(groupId);
+        }
+    }
+
+    private Map<String, GroupRole> getMembers(String groupId) {
+        synchronized (groups) {
+            Map<String, GroupRole> members = groups.get(groupId);
+            if (members != null) {
+                hits.incrementAndGet();
+                return members;
+            }
+        }
+
+        misses.incrementAndGet();
+        long loadGeneration = generation.get();
+
+        Map<String, GroupRole> loaded = new HashMap<>();
+        for (GroupMember member : memberRepository.findByGroupIdOrderByJoinedAtAsc(groupId)) {
+            loaded.put(member.getUserId(), member.getRole());
+        }
+        Map<String, GroupRole> members = Collections.unmodifiableMap(loaded);
+
+        synchronized (groups) {
+            if (generation.get() == loadGeneration) {
+                groups.put(groupId, members);
+            }
+        }
+        return members;
+    }
+
+    /**
+     * Cache counters
+     */
+    public Map<String, Object> getStats() {
+        Map<String, Object> stats = new HashMap<>();
+        synchronized (groups) {
+            stats.put("groups", groups.size());
+        }
+        stats.put("hits", hits.get());
+        stats.put("misses", misses.get());
+        stats.put("evictions", evictions.get());
+        return stats;
+    }
+}
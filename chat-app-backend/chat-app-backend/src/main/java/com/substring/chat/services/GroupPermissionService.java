@@ -1,7 +1,6 @@
 package com.substring.chat.services;
 
 import com.substring.chat.entities.GroupRole;
-import com.substring.chat.repositories.GroupMemberRepository;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.stereotype.Service;
 
@@ -9,15 +8,13 @@ import org.springframework.stereotype.Service;
 public class GroupPermissionService {
 
     @Autowired
-    private GroupMemberRepository memberRepository;
+    private GroupMembershipCache membershipCache;
 
     /**
      * Validate if user has permission to perform action
      */
     public boolean validatePermission(String groupId, String userId, String action) {
-        GroupRole role = memberRepository.findByGroupIdAndUserId(groupId, userId)
-                .map(member -> member.getRole())
-                .orElse(null);
+        GroupRole role = membershipCache.getRole(groupId, userId);
 
         if (role == null) {
             return false; // Not a member
@@ -77,9 +74,7 @@ public class GroupPermissionService {
      * Check if user is at least a moderator
      */
     public boolean isModerator(String groupId, String userId) {
-        GroupRole role = memberRepository.findByGroupIdAndUserId(groupId, userId)
-                .map(member -> member.getRole())
-                .orElse(null);
+        GroupRole role = membershipCache.getRole(groupId, userId);
 
         return role == GroupRole.OWNER || role == GroupRole.ADMIN || role == GroupRole.MODERATOR;
     }
@@ -88,9 +83,7 @@ public class GroupPermissionService {
      * Check if user is admin or owner
      */
     public boolean isAdmin(String groupId, String userId) {
-        GroupRole role = memberRepository.findByGroupIdAndUserId(groupId, userId)
-                .map(member -> member.getRole())
-                .orElse(null);
+        GroupRole role = membershipCache.getRole(groupId, userId);
 
         return role == GroupRole.OWNER || role == GroupRole.ADMIN;
     }
@@ -99,9 +92,7 @@ public class GroupPermissionService {
      * Check if user is owner
      */
     public boolean isOwner(String groupId, String userId) {
-        GroupRole role = memberRepository.findByGroupIdAndUserId(groupId, userId)
-                .map(member -> member.getRole())
-                .orElse(null);
+        GroupRole role = membershipCache.getRole(groupId, userId);
 
         return role == GroupRole.OWNER;
     }
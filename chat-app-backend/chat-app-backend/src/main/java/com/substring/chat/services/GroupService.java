@@ -29,6 +29,9 @@ public class GroupService {
     @Autowired
     private SimpMessagingTemplate messagingTemplate;
 
+    @Autowired
+    private GroupMembershipCache membershipCache;
+
     /**
      * Create new group
      */
@@ -56,6 +59,7 @@ public class GroupService {
         owner.setJoinedAt(LocalDateTime.now());
         owner.setLastReadAt(LocalDateTime.now());
         memberRepository.save(owner);
+        membershipCache.invalidate(saved.getId());
 
         return saved;
     }
@@ -87,6 +91,7 @@ public class GroupService {
         // Delete all members
         List<GroupMember> members = memberRepository.findByGroupIdOrderByJoinedAtAsc(groupId);
         memberRepository.deleteAll(members);
+        membershipCache.invalidate(groupId);
     }
 
     /**
@@ -118,6 +123,7 @@ public class GroupService {
         member.setLastReadAt(LocalDateTime.now());
 
         GroupMember saved = memberRepository.save(member);
+        membershipCache.invalidate(groupId);
 
         // Update member count
         group.setMemberCount(group.getMemberCount() + 1);
@@ -138,6 +144,7 @@ public class GroupService {
     @Transactional
     public void removeMember(String groupId, String userId) {
         memberRepository.deleteByGroupIdAndUserId(groupId, userId);
+        membershipCache.invalidate(groupId);
 
         // Update member count
         Group group = groupRepository.findById(groupId)
@@ -161,6 +168,7 @@ public class GroupService {
 
         member.setRole(newRole);
         GroupMember updated = memberRepository.save(member);
+        membershipCache.invalidate(groupId);
 
         // Broadcast role update
         Map<String, Object> event = new HashMap<>();
@@ -223,15 +231,13 @@ public class GroupService {
      * Validate membership
      */
     public boolean validateMembership(String groupId, String userId) {
-        return memberRepository.existsByGroupIdAndUserId(groupId, userId);
+        return membershipCache.isMember(groupId, userId);
     }
 
     /**
      * Get member role
      */
     public GroupRole getMemberRole(String groupId, String userId) {
-        return memberRepository.findByGroupIdAndUserId(groupId, userId)
-                .map(GroupMember::getRole)
-                .orElse(null);
+        return membershipCache.getRole(groupId, userId);
     }
 }
@@ -0,0 +1,352 @@
+package com.substring.chat.services;
+
+import com.substring.chat.entities.ChannelMessage;
+import com.substring.chat.entities.FileAttachment;
+import com.substring.chat.entities.FileContent;
+import com.substring.chat.entities.GroupMessage;
+import com.substring.chat.entities.PrivateMessage;
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.data.mongodb.core.MongoTemplate;
+import org.springframework.data.mongodb.core.query.Criteria;
+import org.springframework.data.mongodb.core.query.Query;
+import org.springframework.data.mongodb.core.query.Update;
+import org.springframework.stereotype.Service;
+
+import javax.imageio.IIOImage;
+import javax.imageio.ImageIO;
+import javax.imageio.ImageReadParam;
+import javax.imageio.ImageReader;
+import javax.imageio.ImageWriteParam;
+import javax.imageio.ImageWriter;
+import javax.imageio.stream.ImageInputStream;
+import javax.imageio.stream.ImageOutputStream;
+import java.awt.Color;
+import java.awt.Graphics2D;
+import java.awt.RenderingHints;
+import java.awt.image.BufferedImage;
+import java.awt.image.ConvolveOp;
+import java.awt.image.Kernel;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Arrays;
+import java.util.Base64;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Thumbnails and blurred placeholders for image uploads, made with plain
+ * ImageIO/Java2D on a bounded worker pool.
+ *
+ * {@link FileStorageService} hands over each new image content; the worker
+ * decodes it (subsampled, so large photos stay cheap), stores a JPEG thumbnail
+ * through the {@link StorageBackend} and builds a placeholder of a few hundred
+ * bytes as a data URI. Both land on the {@link FileContent}, its
+ * {@link FileAttachment}s and every message already linking the file, and
+ * updated private messages are pushed to both users on
+ * {@code /queue/message-updated}. Private messages created later copy them
+ * with {@link #find(String)}. When the pool is full the preview is skipped
+ * and clients show the full image as before.
+ */
+@Service
+public class ImagePreviewService {
+
+    private static final int PLACEHOLDER_SIZE = 16;
+
+    @Autowired
+    private StorageBackend storageBackend;
+
+    @Autowired
+    private MongoTemplate mongoTemplate;
+
+    @Autowired
+    private MessageBus messageBus;
+
+    @Value("${chat.previews.enabled:true}")
+    private boolean enabled;
+
+    @Value("${chat.previews.pool-size:2}")
+    private int poolSize;
+
+    @Value("${chat.previews.queue-capacity:200}")
+    private int queueCapacity;
+
+    @Value("${chat.previews.thumbnail-size:320}")
+    private int thumbnailSize;
+
+    // Larger images (decompression bombs included) get no preview
+    @Value("${chat.previews.max-pixels:40000000}")
+    private long maxPixels;
+
+    private ThreadPoolExecutor executor;
+
+    private final AtomicLong generated = new AtomicLong();
+    private final AtomicLong skipped = new AtomicLong();
+    private final AtomicLong rejected = new AtomicLong();
+    private final AtomicLong failed = new AtomicLong();
+    private final AtomicLong totalMillis = new AtomicLong();
+
+    /**
+     * Preview fields to copy onto a message
+     */
+    public record Preview(String thumbnailUrl, String placeholder) {
+    }
+
+    @PostConstruct
+    public void init() {
+        AtomicInteger threadCount = new AtomicInteger();
+        executor = new ThreadPoolExecutor(poolSize, poolSize, 60, TimeUnit.SECONDS,
+                new ArrayBlockingQueue<>(queueCapacity), r -> {
+                    Thread thread = new Thread(r, "image-preview-" + threadCount.incrementAndGet());
+                    thread.setDaemon(true);
+                    // Keep previews behind request handling
+                    thread.setPriority(Thread.NORM_PRIORITY - 1);
+                    return thread;
+                });
+        executor.allowCoreThreadTimeOut(true);
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        executor.shutdownNow();
+    }
+
+    /**
+     * Keep a reference to the staged bytes for a later {@link #submit}, before
+     * the storage backend moves or deletes the staged file. A hard link when
+     * possible, a copy otherwise; null when no preview will be made.
+     */
+    public Path prepare(Path staged, String contentType) {
+        if (!enabled || contentType == null || !contentType.startsWith("image/")) {
+            return null;
+        }
+        try {
+            Path source = Files.createTempFile("chat-preview-", ".src");
+            Files.delete(source);
+            try {
+                Files.createLink(source, staged);
+            } catch (IOException | UnsupportedOperationException e) {
+                Files.copy(staged, source);
+            }
+            return source;
+        } catch (IOException e) {
+            skipped.incrementAndGet();
+            return null;
+        }
+    }
+
+    /**
+     * Queue preview generation for a newly stored content. Takes ownership of
+     * {@code source} and deletes it when done.
+     */
+    public void submit(FileContent content, Path source) {
+        if (source == null) {
+            return;
+        }
+        try {
+            executor.execute(() -> generate(content, source));
+        } catch (RejectedExecutionException e) {
+            rejected.incrementAndGet();
+            discard(source);
+        }
+    }
+
+    public void discard(Path source) {
+        if (source != null) {
+            try {
+                Files.deleteIfExists(source);
+            } catch (IOException e) {
+                // Temp dir cleanup will get it
+            }
+        }
+    }
+
+    /**
+     * Preview of the file at {@code fileUrl}, if one has been made
+     */
+    public Preview find(String fileUrl) {
+        if (!enabled || fileUrl == null) {
+            return null;
+        }
+        Query query = new Query(Criteria.where("url").is(fileUrl).and("placeholder").ne(null));
+        query.fields().include("thumbnailUrl").include("placeholder");
+        FileContent content = mongoTemplate.findOne(query, FileContent.class);
+        return content != null ? new Preview(content.getThumbnailUrl(), content.getPlaceholder()) : null;
+    }
+
+    private void generate(FileContent content, Path source) {
+        long start = System.currentTimeMillis();
+        Path thumbnailFile = null;
+        try {
+            Decoded decoded = decode(source, thumbnailSize);
+            if (decoded == null) {
+                skipped.incrementAndGet();
+                return;
+            }
+            BufferedImage image = decoded.image();
+
+            thumbnailFile = Files.createTempFile("chat-thumb-", ".jpg");
+            Files.write(thumbnailFile, encodeJpeg(scale(image, thumbnailSize), 0.75f));
+            StorageBackend.StoredObject thumbnail = storageBackend.store(thumbnailFile, "thumbnail.jpg", "image/jpeg");
+
+            BufferedImage tiny = blur(scale(image, PLACEHOLDER_SIZE));
+            String placeholder = "data:image/jpeg;base64,"
+                    + Base64.getEncoder().encodeToString(encodeJpeg(tiny, 0.5f));
+
+            apply(content, thumbnail, placeholder, decoded.width(), decoded.height());
+            generated.incrementAndGet();
+            totalMillis.addAndGet(System.currentTimeMillis() - start);
+        } catch (Exception e) {
+            failed.incrementAndGet();
+            System.out.println("⚠️ Preview failed for " + content.getId() + ": " + e.getMessage());
+        } finally {
+            discard(source);
+            discard(thumbnailFile);
+        }
+    }
+
+    // Subsampled image plus the original dimensions
+    private record Decoded(BufferedImage image, int width, int height) {
+    }
+
+    /**
+     * Decode with source subsampling so the result is only about twice the
+     * target size; null if the format is unknown or the image too large
+     */
+    private Decoded decode(Path source, int targetSize) throws IOException {
+        try (ImageInputStream input = ImageIO.createImageInputStream(source.toFile())) {
+            if (input == null) {
+                return null;
+            }
+            Iterator<ImageReader> readers = ImageIO.getImageReaders(input);
+            if (!readers.hasNext()) {
+                return null;
+            }
+            ImageReader reader = readers.next();
+            try {
+                reader.setInput(input, true, true);
+                int width = reader.getWidth(0);
+                int height = reader.getHeight(0);
+                if ((long) width * height > maxPixels) {
+                    return null;
+                }
+
+                ImageReadParam param = reader.getDefaultReadParam();
+                int step = Math.max(1, Math.max(width, height) / (targetSize * 2));
+                param.setSourceSubsampling(step, step, 0, 0);
+                return new Decoded(reader.read(0, param), width, height);
+            } finally {
+                reader.dispose();
+            }
+        }
+    }
+
+    /**
+     * Fit within {@code maxSize} x {@code maxSize}, flattened onto white so
+     * transparent images encode as JPEG
+     */
+    private BufferedImage scale(BufferedImage image, int maxSize) {
+        double factor = Math.min(1.0, (double) maxSize / Math.max(image.getWidth(), image.getHeight()));
+        int width = Math.max(1, (int) Math.round(image.getWidth() * factor));
+        int height = Math.max(1, (int) Math.round(image.getHeight() * factor));
+
+        BufferedImage scaled = new BufferedImage(width, height, BufferedImage.TYPE_INT_RGB);
+        Graphics2D g = scaled.createGraphics();
+        try {
+            g.setRenderingHint(RenderingHints.KEY_INTERPOLATION, RenderingHints.VALUE_INTERPOLATION_BILINEAR);
+            g.setRenderingHint(RenderingHints.KEY_RENDERING, RenderingHints.VALUE_RENDER_QUALITY);
+            g.setColor(Color.WHITE);
+            g.fillRect(0, 0, width, height);
+            g.drawImage(image, 0, 0, width, height, null);
+        } finally {
+            g.dispose();
+        }
+        return scaled;
+    }
+
+    private BufferedImage blur(BufferedImage image) {
+        float[] weights = new float[9];
+        Arrays.fill(weights, 1f / 9f);
+        return new ConvolveOp(new Kernel(3, 3, weights), ConvolveOp.EDGE_NO_OP, null).filter(image, null);
+    }
+
+    private byte[] encodeJpeg(BufferedImage image, float quality) throws IOException {
+        ImageWriter writer = ImageIO.getImageWritersByFormatName("jpeg").next();
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        try (ImageOutputStream output = ImageIO.createImageOutputStream(bytes)) {
+            writer.setOutput(output);
+            ImageWriteParam param = writer.getDefaultWriteParam();
+            param.setCompressionMode(ImageWriteParam.MODE_EXPLICIT);
+            param.setCompressionQuality(quality);
+            writer.write(null, new IIOImage(image, null, null), param);
+        } finally {
+            writer.dispose();
+        }
+        return bytes.toByteArray();
+    }
+
+    private void apply(FileContent content, StorageBackend.StoredObject thumbnail, String placeholder,
+            int width, int height) throws IOException {
+        Update contentUpdate = new Update()
+                .set("thumbnailKey", thumbnail.key())
+                .set("thumbnailUrl", thumbnail.url())
+                .set("placeholder", placeholder)
+                .set("width", width)
+                .set("height", height);
+        if (mongoTemplate.updateFirst(new Query(Criteria.where("id").is(content.getId())),
+                contentUpdate, FileContent.class).getMatchedCount() == 0) {
+            // Content was deleted meanwhile
+            storageBackend.delete(thumbnail.key());
+            return;
+        }
+
+        mongoTemplate.updateMulti(new Query(Criteria.where("sha256").is(content.getId())),
+                new Update()
+                        .set("thumbnailUrl", thumbnail.url())
+                        .set("placeholder", placeholder)
+                        .set("width", width)
+                        .set("height", height),
+                FileAttachment.class);
+
+        Query messages = new Query(Criteria.where("fileUrl").is(content.getUrl()));
+        Update messageUpdate = new Update()
+                .set("thumbnailUrl", thumbnail.url())
+                .set("placeholder", placeholder);
+        mongoTemplate.updateMulti(messages, messageUpdate, PrivateMessage.class);
+        // Open chats only see the preview if it is pushed like any other message edit
+        for (PrivateMessage updated : mongoTemplate.find(messages, PrivateMessage.class)) {
+            messageBus.sendToUser(updated.getReceiverId(), "/queue/message-updated", updated);
+            messageBus.sendToUser(updated.getSenderId(), "/queue/message-updated", updated);
+        }
+        mongoTemplate.updateMulti(messages, messageUpdate, GroupMessage.class);
+        mongoTemplate.updateMulti(messages, messageUpdate, ChannelMessage.class);
+    }
+
+    /**
+     * Preview pipeline counters
+     */
+    public Map<String, Object> getStats() {
+        Map<String, Object> stats = new HashMap<>();
+        long count = generated.get();
+        stats.put("enabled", enabled);
+        stats.put("queueDepth", executor.getQueue().size());
+        stats.put("active", executor.getActiveCount());
+        stats.put("generated", count);
+        stats.put("skipped", skipped.get());
+        stats.put("rejected", rejected.get());
+        stats.put("failed", failed.get());
+        stats.put("avgMillis", count > 0 ? totalMillis.get() / count : 0);
+        return stats;
+    }
+}
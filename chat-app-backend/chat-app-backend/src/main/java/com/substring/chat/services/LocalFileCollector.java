@@ -0,0 +1,304 @@
+package com.substring.chat.services;
+
+import com.substring.chat.entities.LocalFile;
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import org.bson.Document;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.data.mongodb.core.MongoTemplate;
+import org.springframework.data.mongodb.core.query.Criteria;
+import org.springframework.data.mongodb.core.query.Query;
+import org.springframework.stereotype.Service;
+
+import java.io.IOException;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.time.Instant;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+import java.util.stream.Stream;
+
+/**
+ * Background compactor and garbage collector for {@link LocalFileStore}.
+ *
+ * Each run:
+ * <ol>
+ * <li>moves up to {@code migrate-batch} files from the legacy flat
+ * directories and the old {@code store} shards into {@code v1}</li>
+ * <li>marks every stored file named by a {@code /api/v1/files/download/} URL
+ * in the text or attachment of private, group, channel or room messages</li>
+ * <li>deletes unmarked files (and their records) older than the grace
+ * period, then files in the shards that have no record at all</li>
+ * </ol>
+ * The grace period covers the gap between an upload and the message that
+ * links to it. Files imported from before records existed are never
+ * collected. Off by default; with {@code dry-run} (the default once enabled)
+ * a run only counts and logs what it would delete.
+ */
+@Service
+public class LocalFileCollector {
+
+    private static final String DOWNLOAD_PATH = "/api/v1/files/download/";
+    private static final Pattern DOWNLOAD_URL = Pattern.compile(Pattern.quote(DOWNLOAD_PATH));
+    // The UUID of a generated ID right after the prefix; the extension is left out, so a URL
+    // running straight into text (".../<uuid>.png.thanks") still marks its file
+    private static final Pattern DOWNLOAD_REFERENCE = Pattern.compile(
+            Pattern.quote(DOWNLOAD_PATH) + "(" + LocalFileStore.UUID_PATTERN + ")", Pattern.CASE_INSENSITIVE);
+
+    // Collection -> fields that can hold a file URL
+    // URLs are usually pasted into the text, so content is scanned as well
+    private static final Map<String, List<String>> REFERENCES = Map.of(
+            "private_messages", List.of("fileUrl", "content"),
+            "group_messages", List.of("fileUrl", "content"),
+            "channel_messages", List.of("fileUrl", "content"),
+            "room_message_buckets", List.of("messages.attachment.fileUrl", "messages.content"),
+            "rooms", List.of("messages.attachment.fileUrl", "messages.content",
+                    "recentMessages.attachment.fileUrl", "recentMessages.content"));
+
+    @Autowired
+    private LocalFileStore localFileStore;
+
+    @Autowired
+    private MongoTemplate mongoTemplate;
+
+    @Value("${chat.files.gc.enabled:false}")
+    private boolean enabled;
+
+    @Value("${chat.files.gc.dry-run:true}")
+    private boolean dryRun;
+
+    @Value("${chat.files.gc.interval-ms:3600000}")
+    private long intervalMs;
+
+    @Value("${chat.files.gc.grace-ms:86400000}")
+    private long graceMs;
+
+    @Value("${chat.files.gc.migrate-batch:1000}")
+    private int migrateBatch;
+
+    private ScheduledExecutorService scheduler;
+
+    private final AtomicLong runs = new AtomicLong();
+    private final AtomicLong migrated = new AtomicLong();
+    private final AtomicLong orphansDeleted = new AtomicLong();
+    private final AtomicLong strayFilesDeleted = new AtomicLong();
+    private final AtomicLong bytesReclaimed = new AtomicLong();
+    private volatile long lastOrphans;
+    private volatile long lastStrays;
+    private volatile long lastRunMs;
+    private volatile LocalDateTime lastRunAt;
+
+    @PostConstruct
+    public void init() {
+        if (!enabled) {
+            return;
+        }
+        scheduler = Executors.newSingleThreadScheduledExecutor(r -> {
+            Thread thread = new Thread(r, "local-file-gc");
+            thread.setDaemon(true);
+            return thread;
+        });
+        scheduler.scheduleWithFixedDelay(() -> {
+            try {
+                collect();
+            } catch (Exception e) {
+                System.err.println("❌ Local file GC failed: " + e.getMessage());
+            }
+        }, Math.min(intervalMs, 60000), intervalMs, TimeUnit.MILLISECONDS);
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        if (scheduler != null) {
+            scheduler.shutdownNow();
+        }
+    }
+
+    /**
+     * One full compaction and collection pass
+     */
+    public void collect() throws IOException {
+        long start = System.currentTimeMillis();
+        migrateLegacy();
+
+        // Candidates first: anything linked while marking is then still seen
+        LocalDateTime cutoff = LocalDateTime.now().minus(Duration.ofMillis(graceMs));
+        Query candidatesQuery = new Query(Criteria.where("uploadedAt").lt(cutoff).and("imported").ne(true));
+        candidatesQuery.fields().include("path");
+        List<LocalFile> candidates = mongoTemplate.find(candidatesQuery, LocalFile.class);
+
+        Set<String> referenced = markReferenced();
+
+        long orphans = 0;
+        for (LocalFile candidate : candidates) {
+            // Only generated IDs are ever collected, they are matched on their UUID
+            if (!localFileStore.isGeneratedId(candidate.getId())
+                    || referenced.contains(candidate.getId().substring(0, LocalFileStore.UUID_LENGTH))) {
+                continue;
+            }
+            if (dryRun) {
+                System.out.println("🧹 Local file GC (dry run) would delete " + candidate.getId());
+            } else {
+                bytesReclaimed.addAndGet(localFileStore.delete(candidate));
+            }
+            orphans++;
+        }
+        lastOrphans = orphans;
+        if (!dryRun) {
+            orphansDeleted.addAndGet(orphans);
+        }
+
+        long strays = sweepStrayFiles();
+        lastStrays = strays;
+
+        runs.incrementAndGet();
+        lastRunAt = LocalDateTime.now();
+        lastRunMs = System.currentTimeMillis() - start;
+        if (orphans > 0 || strays > 0) {
+            System.out.println("🧹 Local file GC" + (dryRun ? " (dry run)" : "") + ": " + orphans + " orphaned, "
+                    + strays + " stray files " + (dryRun ? "found" : "removed") + " in " + lastRunMs + "ms");
+        }
+    }
+
+    private void migrateLegacy() throws IOException {
+        int moved = localFileStore.migrateOldShards(migrateBatch);
+        for (String legacyDir : LocalFileStore.LEGACY_DIRS) {
+            Path dir = localFileStore.root().resolve(legacyDir);
+            if (!Files.isDirectory(dir)) {
+                continue;
+            }
+            // Collect a batch first, moving while iterating the directory is undefined
+            List<String> batch = new ArrayList<>();
+            try (DirectoryStream<Path> files = Files.newDirectoryStream(dir)) {
+                for (Path file : files) {
+                    if (moved + batch.size() >= migrateBatch) {
+                        break;
+                    }
+                    if (Files.isRegularFile(file)) {
+                        batch.add(file.getFileName().toString());
+                    }
+                }
+            }
+            for (String id : batch) {
+                try {
+                    localFileStore.migrate(legacyDir, id);
+                    moved++;
+                } catch (IOException e) {
+                    System.err.println("⚠️ Could not migrate " + legacyDir + "/" + id + ": " + e.getMessage());
+                }
+            }
+        }
+        migrated.addAndGet(moved);
+    }
+
+    /**
+     * UUIDs of stored files that some message links to
+     */
+    private Set<String> markReferenced() {
+        Set<String> referenced = new HashSet<>();
+        REFERENCES.forEach((collection, fields) -> {
+            List<Criteria> anyField = new ArrayList<>();
+            Query query = new Query();
+            for (String field : fields) {
+                anyField.add(Criteria.where(field).regex(DOWNLOAD_URL));
+                query.fields().include(field);
+            }
+            query.addCriteria(new Criteria().orOperator(anyField));
+            try (Stream<Document> documents = mongoTemplate.stream(query, Document.class, collection)) {
+                documents.forEach(document -> collectIds(document, referenced));
+            }
+        });
+        return referenced;
+    }
+
+    /**
+     * Walks a projected document; every download URL in any string, including
+     * several inside one message text, names a file
+     */
+    static void collectIds(Object value, Set<String> referenced) {
+        if (value instanceof Document document) {
+            document.values().forEach(v -> collectIds(v, referenced));
+        } else if (value instanceof List<?> list) {
+            list.forEach(v -> collectIds(v, referenced));
+        } else if (value instanceof String text) {
+            Matcher matcher = DOWNLOAD_REFERENCE.matcher(text);
+            while (matcher.find()) {
+                referenced.add(matcher.group(1).toLowerCase());
+            }
+        }
+    }
+
+    /**
+     * Files in the shards with no record, e.g. from an upload that failed
+     * between writing and recording. Only {@code v1/xx/yy/<generated id>} is
+     * considered; anything else under the root belongs to someone else.
+     */
+    private long sweepStrayFiles() throws IOException {
+        Set<String> known = new HashSet<>();
+        Query idsQuery = new Query();
+        idsQuery.fields().include("id");
+        try (Stream<LocalFile> records = mongoTemplate.stream(idsQuery, LocalFile.class)) {
+            records.forEach(record -> known.add(record.getId()));
+        }
+
+        Path storeDir = localFileStore.storeDir();
+        Instant cutoff = Instant.now().minusMillis(graceMs);
+        long strays = 0;
+        try (Stream<Path> files = Files.find(storeDir, 3, (path, attributes) -> attributes.isRegularFile())) {
+            for (Path file : (Iterable<Path>) files::iterator) {
+                String id = file.getFileName().toString();
+                // Must sit exactly in its own shard, so nothing else is ever touched
+                if (!localFileStore.isGeneratedId(id)
+                        || !localFileStore.root().resolve(localFileStore.shardPath(id)).equals(file)
+                        || known.contains(id)
+                        || Files.getLastModifiedTime(file).toInstant().isAfter(cutoff)) {
+                    continue;
+                }
+                if (dryRun) {
+                    System.out.println("🧹 Local file GC (dry run) would delete stray " + storeDir.relativize(file));
+                } else {
+                    bytesReclaimed.addAndGet(Files.size(file));
+                    Files.deleteIfExists(file);
+                }
+                strays++;
+            }
+        }
+        if (!dryRun) {
+            strayFilesDeleted.addAndGet(strays);
+        }
+        return strays;
+    }
+
+    /**
+     * Collector counters
+     */
+    public Map<String, Object> getStats() {
+        Map<String, Object> stats = new HashMap<>();
+        stats.put("enabled", enabled);
+        stats.put("dryRun", dryRun);
+        stats.put("runs", runs.get());
+        stats.put("lastOrphans", lastOrphans);
+        stats.put("lastStrays", lastStrays);
+        stats.put("lastRunAt", lastRunAt);
+        stats.put("lastRunMs", lastRunMs);
+        stats.put("migrated", migrated.get());
+        stats.put("orphansDeleted", orphansDeleted.get());
+        stats.put("strayFilesDeleted", strayFilesDeleted.get());
+        stats.put("bytesReclaimed", bytesReclaimed.get());
+        return stats;
+    }
+}
@@ -0,0 +1,308 @@
+package com.substring.chat.services;
+
+import com.substring.chat.entities.LocalFile;
+import com.substring.chat.repositories.LocalFileRepository;
+import jakarta.annotation.PostConstruct;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.data.domain.PageRequest;
+import org.springframework.stereotype.Service;
+import org.springframework.web.multipart.MultipartFile;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.time.LocalDateTime;
+import java.time.ZoneId;
+import java.util.HashMap;
+import java.util.HexFormat;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.regex.Pattern;
+
+/**
+ * Disk store behind {@code /api/v1/files}. Every upload gets a
+ * {@link LocalFile} record (content type, location, size, SHA-256), so a
+ * download is one lookup by ID.
+ *
+ * Files live under {@code v1/ab/cd/<id>}, where {@code ab} and {@code cd}
+ * are the first two bytes of the SHA-256 of the ID, so no directory grows past
+ * a few entries per thousand files. {@code v1} is owned by this store alone;
+ * other stores under the same root (such as the local {@link StorageBackend})
+ * keep their own directories. The older flat {@code images},
+ * {@code documents} and {@code other} directories are still read, and
+ * {@link LocalFileCollector} moves their files into the shards.
+ */
+@Service
+public class LocalFileStore {
+
+    private static final int CHUNK_SIZE = 64 * 1024;
+    private static final String STORE_DIR = "v1";
+    // Shards used to share the local storage backend's directory; moved to STORE_DIR
+    private static final String OLD_STORE_DIR = "store";
+    // The UUID every generated ID starts with
+    static final String UUID_PATTERN = "[0-9a-f]{8}(?:-[0-9a-f]{4}){3}-[0-9a-f]{12}";
+    static final int UUID_LENGTH = 36;
+    // UUID plus the optional extension kept by save()
+    private static final Pattern GENERATED_ID = Pattern.compile(UUID_PATTERN + "(\\.[a-z0-9]{1,10})?");
+    static final String[] LEGACY_DIRS = { "images", "documents", "other" };
+
+    @Autowired
+    private LocalFileRepository localFileRepository;
+
+    @Value("${chat.files.dir:uploads}")
+    private String dir;
+
+    private Path root;
+
+    private final AtomicLong uploads = new AtomicLong();
+    private final AtomicLong downloads = new AtomicLong();
+    private final AtomicLong partialDownloads = new AtomicLong();
+    private final AtomicLong notModified = new AtomicLong();
+    private final AtomicLong sendfileDownloads = new AtomicLong();
+    private final AtomicLong bytesServed = new AtomicLong();
+    private final AtomicLong legacyImports = new AtomicLong();
+
+    @PostConstruct
+    public void init() throws IOException {
+        root = Paths.get(dir).toAbsolutePath().normalize();
+        Files.createDirectories(storeDir());
+    }
+
+    /**
+     * Write the upload in fixed-size chunks, hashing it on the way, and record
+     * its metadata
+     */
+    public LocalFile save(MultipartFile file, String fileType, String roomId, String uploadedBy) throws IOException {
+        String id = UUID.randomUUID() + extensionOf(file.getOriginalFilename());
+        Path relative = shardPath(id);
+        Path target = root.resolve(relative);
+        Files.createDirectories(target.getParent());
+
+        MessageDigest digest = sha256();
+        long size = 0;
+        try (InputStream in = file.getInputStream();
+                OutputStream out = Files.newOutputStream(target)) {
+            byte[] buffer = new byte[CHUNK_SIZE];
+            int read;
+            while ((read = in.read(buffer)) != -1) {
+                digest.update(buffer, 0, read);
+                out.write(buffer, 0, read);
+                size += read;
+            }
+        } catch (IOException | RuntimeException e) {
+            Files.deleteIfExists(target);
+            throw e;
+        }
+
+        // The type the client declared is not trusted, it would be served back as is
+        LocalFile record = new LocalFile(id, file.getOriginalFilename(), contentTypeOf(target), fileType,
+                relative.toString(), size, HexFormat.of().formatHex(digest.digest()), roomId, uploadedBy,
+                LocalDateTime.now(), false);
+        uploads.incrementAndGet();
+        return localFileRepository.save(record);
+    }
+
+    /**
+     * Metadata for a stored file, null if unknown. Files saved before records
+     * existed are probed for once and recorded.
+     */
+    public LocalFile find(String id) throws IOException {
+        if (!isValidId(id)) {
+            return null;
+        }
+        LocalFile record = localFileRepository.findById(id).orElse(null);
+        return record != null ? record : importLegacy(id);
+    }
+
+    public Path resolve(LocalFile record) {
+        return root.resolve(record.getPath());
+    }
+
+    Path root() {
+        return root;
+    }
+
+    Path storeDir() {
+        return root.resolve(STORE_DIR);
+    }
+
+    /**
+     * Whether {@code name} has the form of an ID generated by {@link #save}
+     */
+    boolean isGeneratedId(String name) {
+        return GENERATED_ID.matcher(name).matches();
+    }
+
+    /**
+     * Location of a file relative to the root: {@code v1/ab/cd/<id>}
+     */
+    Path shardPath(String id) {
+        return shardPath(STORE_DIR, id);
+    }
+
+    private Path shardPath(String storeDir, String id) {
+        byte[] hash = sha256().digest(id.getBytes(StandardCharsets.UTF_8));
+        HexFormat hex = HexFormat.of();
+        return Paths.get(storeDir, hex.toHexDigits(hash[0]), hex.toHexDigits(hash[1]), id);
+    }
+
+    /**
+     * Move a file from a legacy flat directory into its shard, recording it if
+     * it has no record yet
+     */
+    void migrate(String legacyDir, String id) throws IOException {
+        LocalFile record = localFileRepository.findById(id).orElse(null);
+        if (record == null) {
+            record = importLegacy(id);
+        }
+        if (record == null || !Paths.get(record.getPath()).startsWith(legacyDir)) {
+            return;
+        }
+        moveToShard(record);
+    }
+
+    /**
+     * Move up to {@code limit} files from the old {@code store/ab/cd} shards
+     * into {@code v1}; returns how many were moved
+     */
+    int migrateOldShards(int limit) throws IOException {
+        int moved = 0;
+        for (LocalFile record : localFileRepository.findByPathStartingWith(OLD_STORE_DIR + "/",
+                PageRequest.of(0, limit))) {
+            if (Files.isRegularFile(resolve(record))) {
+                moveToShard(record);
+                moved++;
+            }
+        }
+        return moved;
+    }
+
+    private void moveToShard(LocalFile record) throws IOException {
+        Path relative = shardPath(record.getId());
+        Path target = root.resolve(relative);
+        Files.createDirectories(target.getParent());
+        Files.move(resolve(record), target, StandardCopyOption.ATOMIC_MOVE);
+        record.setPath(relative.toString());
+        localFileRepository.save(record);
+    }
+
+    /**
+     * Remove a file and its record
+     */
+    long delete(LocalFile record) throws IOException {
+        Path path = resolve(record);
+        long size = Files.isRegularFile(path) ? Files.size(path) : 0;
+        Files.deleteIfExists(path);
+        localFileRepository.deleteById(record.getId());
+        return size;
+    }
+
+    private LocalFile importLegacy(String id) throws IOException {
+        for (Path sharded : new Path[] { shardPath(id), shardPath(OLD_STORE_DIR, id) }) {
+            if (Files.isRegularFile(root.resolve(sharded))) {
+                // Stored, but the record was lost
+                return localFileRepository.save(recordFor(id, sharded, "other"));
+            }
+        }
+        for (String legacyDir : LEGACY_DIRS) {
+            Path relative = Paths.get(legacyDir, id);
+            if (Files.isRegularFile(root.resolve(relative))) {
+                String fileType = legacyDir.equals("other") ? "other" : legacyDir.substring(0, legacyDir.length() - 1);
+                return localFileRepository.save(recordFor(id, relative, fileType));
+            }
+        }
+        return null;
+    }
+
+    private LocalFile recordFor(String id, Path relative, String fileType) throws IOException {
+        Path path = root.resolve(relative);
+        // Upload time is unknown; the file time is the best estimate
+        LocalDateTime uploadedAt = LocalDateTime.ofInstant(Files.getLastModifiedTime(path).toInstant(),
+                ZoneId.systemDefault());
+        legacyImports.incrementAndGet();
+        return new LocalFile(id, id, contentTypeOf(path), fileType, relative.toString(), Files.size(path),
+                hashOf(path), null, null, uploadedAt, true);
+    }
+
+    // Worked out by the server from the stored file's name
+    private String contentTypeOf(Path path) throws IOException {
+        String contentType = Files.probeContentType(path);
+        return contentType != null ? contentType : "application/octet-stream";
+    }
+
+    // IDs are generated file names; anything that could leave the root is rejected
+    private boolean isValidId(String id) {
+        return id != null && !id.isEmpty() && !id.contains("/") && !id.contains("\\") && !id.contains("..");
+    }
+
+    private String hashOf(Path path) throws IOException {
+        MessageDigest digest = sha256();
+        try (InputStream in = Files.newInputStream(path)) {
+            byte[] buffer = new byte[CHUNK_SIZE];
+            int read;
+            while ((read = in.read(buffer)) != -1) {
+                digest.update(buffer, 0, read);
+            }
+        }
+        return HexFormat.of().formatHex(digest.digest());
+    }
+
+    private String extensionOf(String fileName) {
+        if (fileName == null) {
+            return "";
+        }
+        int dot = fileName.lastIndexOf('.');
+        if (dot < 0 || dot == fileName.length() - 1) {
+            return "";
+        }
+        String extension = fileName.substring(dot).toLowerCase();
+        return extension.matches("\\.[a-z0-9]{1,10}") ? extension : "";
+    }
+
+    private MessageDigest sha256() {
+        try {
+            return MessageDigest.getInstance("SHA-256");
+        } catch (NoSuchAlgorithmException e) {
+            throw new RuntimeException(e);
+        }
+    }
+
+    public void recordDownload(long bytes, boolean partial, boolean sendfile) {
+        downloads.incrementAndGet();
+        bytesServed.addAndGet(bytes);
+        if (partial) {
+            partialDownloads.incrementAndGet();
+        }
+        if (sendfile) {
+            sendfileDownloads.incrementAndGet();
+        }
+    }
+
+    public void recordNotModified() {
+        notModified.incrementAndGet();
+    }
+
+    /**
+     * Upload and download counters
+     */
+    public Map<String, Object> getStats() {
+        Map<String, Object> stats = new HashMap<>();
+        stats.put("uploads", uploads.get());
+        stats.put("downloads", downloads.get());
+        stats.put("partialDownloads", partialDownloads.get());
+        stats.put("notModified", notModified.get());
+        stats.put("sendfileDownloads", sendfileDownloads.get());
+        stats.put("bytesServed", bytesServed.get());
+        stats.put("legacyImports", legacyImports.get());
+        return stats;
+    }
+}
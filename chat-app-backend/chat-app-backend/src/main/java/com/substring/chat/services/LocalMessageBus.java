@@ -0,0 +1,68 @@
+package com.substring.chat.services;
+
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.messaging.simp.SimpMessagingTemplate;
+import org.springframework.messaging.simp.user.SimpUserRegistry;
+import org.springframework.stereotype.Service;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * In-JVM bus: hands every message straight to the local broker. Also the right
+ * choice with the STOMP broker relay, which already fans out across nodes; in
+ * that mode reachability comes from the cluster-wide user registry the nodes
+ * broadcast over the broker.
+ */
+@Service
+@ConditionalOnProperty(name = "chat.bus.mode", havingValue = "local", matchIfMissing = true)
+public class LocalMessageBus implements MessageBus {
+
+    @Autowired
+    private SimpMessagingTemplate messagingTemplate;
+
+    @Autowired
+    private WebSocketSessionRegistry sessionRegistry;
+
+    // With the relay this is the multi-server registry, covering users on other nodes
+    @Autowired
+    private SimpUserRegistry userRegistry;
+
+    @Value("${chat.broker.relay.enabled:false}")
+    private boolean relayEnabled;
+
+    private final AtomicLong userMessages = new AtomicLong();
+    private final AtomicLong topicMessages = new AtomicLong();
+
+    @Override
+    public void sendToUser(String userId, String destination, Object payload) {
+        userMessages.incrementAndGet();
+        messagingTemplate.convertAndSendToUser(userId, destination, payload);
+    }
+
+    @Override
+    public void sendToTopic(String destination, Object payload) {
+        topicMessages.incrementAndGet();
+        messagingTemplate.convertAndSend(destination, payload);
+    }
+
+    @Override
+    public boolean isUserReachable(String userId) {
+        if (relayEnabled) {
+            return userRegistry.getUser(userId) != null;
+        }
+        return sessionRegistry.isOnline(userId);
+    }
+
+    @Override
+    public Map<String, Object> getStats() {
+        Map<String, Object> stats = new HashMap<>();
+        stats.put("mode", "local");
+        stats.put("userMessages", userMessages.get());
+        stats.put("topicMessages", topicMessages.get());
+        return stats;
+    }
+}
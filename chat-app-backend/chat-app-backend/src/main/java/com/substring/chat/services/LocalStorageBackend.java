@@ -0,0 +1,102 @@
+package com.substring.chat.services;
+
+import jakarta.annotation.PostConstruct;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.core.io.FileSystemResource;
+import org.springframework.core.io.Resource;
+import org.springframework.stereotype.Service;
+
+import java.io.IOException;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.util.UUID;
+
+/**
+ * Local disk storage for development and testing. Staged uploads are moved
+ * into {@code chat.storage.local.dir} (a rename on the same filesystem) and
+ * served by {@code GET /api/files/local/{key}}.
+ */
+@Service
+@ConditionalOnProperty(name = "chat.storage.backend", havingValue = "local")
+public class LocalStorageBackend implements StorageBackend {
+
+    @Value("${chat.storage.local.dir:uploads/store}")
+    private String dir;
+
+    @Value("${chat.storage.local.url-prefix:/api/files/local/}")
+    private String urlPrefix;
+
+    private Path root;
+
+    @PostConstruct
+    public void init() throws IOException {
+        root = Paths.get(dir).toAbsolutePath().normalize();
+        Files.createDirectories(root);
+        System.out.println("📁 Local file storage: " + root);
+    }
+
+    @Override
+    public StoredObject store(Path source, String originalFileName, String contentType) throws IOException {
+        String key = UUID.randomUUID() + extensionOf(originalFileName);
+        Path target = root.resolve(key);
+        try {
+            Files.move(source, target, StandardCopyOption.ATOMIC_MOVE);
+        } catch (AtomicMoveNotSupportedException e) {
+            // Different filesystem, the JDK copies it across
+            Files.move(source, target);
+        }
+        return new StoredObject(key, urlPrefix + key, resourceTypeOf(contentType));
+    }
+
+    @Override
+    public void delete(String key) throws IOException {
+        Path file = resolve(key);
+        if (file != null) {
+            Files.deleteIfExists(file);
+        }
+    }
+
+    @Override
+    public Resource load(String key) {
+        Path file = resolve(key);
+        return file != null && Files.isRegularFile(file) ? new FileSystemResource(file) : null;
+    }
+
+    // Keys are flat file names; anything that could leave the root is rejected
+    private Path resolve(String key) {
+        if (key == null || key.isEmpty() || key.contains("/") || key.contains("\\") || key.contains("..")) {
+            return null;
+        }
+        return root.resolve(key);
+    }
+
+    private String extensionOf(String fileName) {
+        if (fileName == null) {
+            return "";
+        }
+        int dot = fileName.lastIndexOf('.');
+        if (dot < 0 || dot == fileName.length() - 1) {
+            return "";
+        }
+        String extension = fileName.substring(dot).toLowerCase();
+        return extension.matches("\\.[a-z0-9]{1,10}") ? extension : "";
+    }
+
+    // Same broad types Cloudinary reports, so the UI treats both alike
+    private String resourceTypeOf(String contentType) {
+        if (contentType == null) {
+            return "raw";
+        }
+        if (contentType.startsWith("image/")) {
+            return "image";
+        }
+        if (contentType.startsWith("video/") || contentType.startsWith("audio/")) {
+            return "video";
+        }
+        return "raw";
+    }
+}
@@ -0,0 +1,35 @@
+package com.substring.chat.services;
+
+import java.util.Map;
+
+/**
+ * Publish side of WebSocket delivery. Services and controllers send through
+ * the bus instead of {@code SimpMessagingTemplate}, so a multi-node deployment
+ * can route each message to the nodes that hold a matching session.
+ *
+ * {@code chat.bus.mode} selects {@link LocalMessageBus} (single node, the
+ * default) or {@link TcpMessageBus} (nodes linked over TCP).
+ */
+public interface MessageBus {
+
+    /**
+     * Deliver to every session of a user, e.g. {@code /queue/messages}
+     */
+    void sendToUser(String userId, String destination, Object payload);
+
+    /**
+     * Deliver to subscribers of a topic, e.g. {@code /topic/group/123}
+     */
+    void sendToTopic(String destination, Object payload);
+
+    /**
+     * Whether the user has a session on this node or, for multi-node buses, on
+     * a peer that announced it
+     */
+    boolean isUserReachable(String userId);
+
+    /**
+     * Delivery counters
+     */
+    Map<String, Object> getStats();
+}
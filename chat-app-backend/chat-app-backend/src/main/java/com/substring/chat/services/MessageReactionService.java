@@ -0,0 +1,54 @@
+package com.substring.chat.services;
+
+import org.bson.Document;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.data.mongodb.core.FindAndModifyOptions;
+import org.springframework.data.mongodb.core.MongoTemplate;
+import org.springframework.data.mongodb.core.aggregation.AggregationOperation;
+import org.springframework.data.mongodb.core.aggregation.AggregationUpdate;
+import org.springframework.data.mongodb.core.query.Query;
+import org.springframework.stereotype.Service;
+
+import java.util.List;
+
+/**
+ * Toggles a user's entry in the {@code reactions} map (userId -> emoji) of
+ * private, group and channel messages.
+ *
+ * The toggle is one {@code findAndModify} with a pipeline update that sets
+ * {@code reactions.<userId>} to the emoji, or removes it if it already holds
+ * that emoji, so concurrent reactions from different users never overwrite each
+ * other and the message body is neither read nor rewritten.
+ */
+@Service
+public class MessageReactionService {
+
+    private static final int MAX_EMOJI_LENGTH = 32;
+
+    @Autowired
+    private MongoTemplate mongoTemplate;
+
+    /**
+     * Toggle the reaction on the message matched by {@code query}. The result
+     * only has {@code reactions} plus any fields the query already includes;
+     * null if nothing matched.
+     */
+    public <T> T toggle(Query query, String userId, String emoji, Class<T> entityClass) {
+        if (emoji == null || emoji.isBlank() || emoji.length() > MAX_EMOJI_LENGTH) {
+            throw new RuntimeException("Invalid emoji");
+        }
+
+        String field = "reactions." + userId;
+        Document literal = new Document("$literal", emoji);
+        Document set = new Document("$set", new Document(field,
+                new Document("$cond", List.of(
+                        new Document("$eq", List.of("$" + field, literal)),
+                        "$$REMOVE",
+                        literal))));
+        AggregationUpdate update = AggregationUpdate.from(List.<AggregationOperation>of(context -> set));
+
+        query.fields().include("reactions");
+        return mongoTemplate.findAndModify(query, update,
+                FindAndModifyOptions.options().returnNew(true), entityClass);
+    }
+}
@@ -8,7 +8,6 @@ import com.substring.chat.repositories.NotificationSettingsRepository;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.data.domain.Page;
 import org.springframework.data.domain.Pageable;
-import org.springframework.messaging.simp.SimpMessagingTemplate;
 import org.springframework.stereotype.Service;
 import org.springframework.transaction.annotation.Transactional;
 
@@ -27,7 +26,7 @@ public class NotificationService {
     private NotificationSettingsRepository settingsRepository;
 
     @Autowired
-    private SimpMessagingTemplate messagingTemplate;
+    private MessageBus messageBus;
 
     /**
      * Create and send notification
@@ -139,7 +138,7 @@ public class NotificationService {
                 Map<String, Object> event = new HashMap<>();
                 event.put("type", "notification:read");
                 event.put("notificationId", notificationId);
-                messagingTemplate.convertAndSendToUser(
+                messageBus.sendToUser(
                         userId,
                         "/queue/notification-events",
                         event);
@@ -167,7 +166,7 @@ public class NotificationService {
         Map<String, Object> event = new HashMap<>();
         event.put("type", "notification:mark-all-read");
         event.put("count", unreadNotifications.size());
-        messagingTemplate.convertAndSendToUser(
+        messageBus.sendToUser(
                 userId,
                 "/queue/notification-events",
                 event);
@@ -183,7 +182,7 @@ public class NotificationService {
         // Send WebSocket event
         Map<String, Object> event = new HashMap<>();
         event.put("type", "notification:clear-all");
-        messagingTemplate.convertAndSendToUser(
+        messageBus.sendToUser(
                 userId,
                 "/queue/notification-events",
                 event);
@@ -220,7 +219,7 @@ public class NotificationService {
         event.put("type", "notification:new");
         event.put("notification", notification);
 
-        messagingTemplate.convertAndSendToUser(
+        messageBus.sendToUser(
                 notification.getUserId(),
                 "/queue/notifications",
                 event);
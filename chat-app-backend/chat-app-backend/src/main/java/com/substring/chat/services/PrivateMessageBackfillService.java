@@ -0,0 +1,136 @@
+package com.substring.chat.services;
+
+import com.substring.chat.entities.Conversation;
+import com.substring.chat.entities.PrivateMessage;
+import com.substring.chat.payload.UnreadCount;
+import com.substring.chat.repositories.PrivateMessageRepository;
+import jakarta.annotation.PostConstruct;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.data.mongodb.core.BulkOperations;
+import org.springframework.data.mongodb.core.MongoTemplate;
+import org.springframework.data.mongodb.core.query.Criteria;
+import org.springframework.data.mongodb.core.query.Query;
+import org.springframework.data.mongodb.core.query.Update;
+import org.springframework.stereotype.Service;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.stream.Stream;
+
+/**
+ * One-off data migrations for private_messages. Each step only touches
+ * documents that still need it, so restarts are cheap.
+ */
+@Service
+public class PrivateMessageBackfillService {
+
+    private static final int BULK_SIZE = 500;
+
+    @Autowired
+    private MongoTemplate mongoTemplate;
+
+    @Autowired
+    private PrivateMessageRepository privateMessageRepository;
+
+    @Autowired
+    private ConversationService conversationService;
+
+    /**
+     * Build missing conversation summaries while the context starts, before
+     * the web server accepts requests: the rebuild works from a snapshot of
+     * private_messages, which live sends and reads would race with.
+     */
+    @PostConstruct
+    public void rebuildMissingSummaries() {
+        if (mongoTemplate.estimatedCount(Conversation.class) > 0) {
+            return;
+        }
+        try {
+            // The rebuild groups messages by conversationId
+            backfillConversationIds();
+            rebuildConversations();
+        } catch (Exception e) {
+            System.err.println("❌ Conversation rebuild failed: " + e.getMessage());
+        }
+    }
+
+    @EventListener(ApplicationReadyEvent.class)
+    public void runOnStartup() {
+        Thread worker = new Thread(() -> {
+            try {
+                backfillConversationIds();
+            } catch (Exception e) {
+                System.err.println("❌ Private message backfill failed: " + e.getMessage());
+            }
+        }, "private-message-backfill");
+        worker.setDaemon(true);
+        worker.start();
+    }
+
+    /**
+     * Set conversationId on messages stored before the field existed
+     */
+    public long backfillConversationIds() {
+        Query query = new Query(Criteria.where("conversationId").exists(false));
+        query.fields().include("senderId").include("receiverId");
+
+        long updated = 0;
+        BulkOperations bulk = mongoTemplate.bulkOps(BulkOperations.BulkMode.UNORDERED, PrivateMessage.class);
+        int pending = 0;
+
+        try (Stream<PrivateMessage> messages = mongoTemplate.stream(query, PrivateMessage.class)) {
+            for (PrivateMessage message : (Iterable<PrivateMessage>) messages::iterator) {
+                if (message.getSenderId() == null || message.getReceiverId() == null) {
+                    continue;
+                }
+                bulk.updateOne(
+                        new Query(Criteria.where("id").is(message.getId())),
+                        new Update().set("conversationId",
+                                PrivateMessage.conversationIdOf(message.getSenderId(), message.getReceiverId())));
+                pending++;
+
+                if (pending == BULK_SIZE) {
+                    updated += bulk.execute().getModifiedCount();
+                    bulk = mongoTemplate.bulkOps(BulkOperations.BulkMode.UNORDERED, PrivateMessage.class);
+                    pending = 0;
+                }
+            }
+        }
+        if (pending > 0) {
+            updated += bulk.execute().getModifiedCount();
+        }
+
+        if (updated > 0) {
+            System.out.println("🔧 Backfilled conversationId on " + updated + " private messages");
+        }
+        return updated;
+    }
+
+    /**
+     * Build the conversations collection from existing private_messages
+     */
+    public long rebuildConversations() {
+        Map<String, Long> unread = new HashMap<>();
+        for (UnreadCount count : privateMessageRepository.countAllUnread()) {
+            unread.put(count.getReceiverId() + "|" + count.getSenderId(), count.getCount());
+        }
+
+        long rebuilt = 0;
+        try (Stream<PrivateMessage> latest = privateMessageRepository.streamLatestMessagePerConversation()) {
+            for (PrivateMessage message : (Iterable<PrivateMessage>) latest::iterator) {
+                if (message.getConversationId() == null) {
+                    continue;
+                }
+                long unreadForReceiver = unread.getOrDefault(message.getReceiverId() + "|" + message.getSenderId(), 0L);
+                long unreadForSender = unread.getOrDefault(message.getSenderId() + "|" + message.getReceiverId(), 0L);
+                conversationService.replaceSummary(message, unreadForReceiver, unreadForSender);
+                rebuilt++;
+            }
+        }
+
+        System.out.println("🔧 Rebuilt " + rebuilt + " conversation summaries");
+        return rebuilt;
+    }
+}
@@ -0,0 +1,274 @@
+package com.substring.chat.services;
+
+import com.substring.chat.entities.PrivateMessage;
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import org.bson.types.ObjectId;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.data.mongodb.core.MongoTemplate;
+import org.springframework.stereotype.Service;
+
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Write-behind pipeline for private messages.
+ *
+ * Messages get their ID and timestamp on arrival and are pushed to both
+ * participants straight away. Persistence happens on a single flusher thread
+ * that drains the queue into one bulk insert per {@code batchSize} messages or
+ * per {@code flushIntervalMs}, whichever comes first. Once a batch is stored the
+ * sender receives an ack on {@code /queue/message-ack}.
+ *
+ * Between delivery and the flush a message is not in the database yet. Paths
+ * that look a message up by ID (history cursors, reactions, forward, delete)
+ * call {@link #awaitPersisted} first, which waits for that one message's
+ * batch, up to {@code await-persisted-ms}.
+ */
+@Service
+public class PrivateMessageIngestService {
+
+    @Autowired
+    private MongoTemplate mongoTemplate;
+
+    @Autowired
+    private MessageBus messageBus;
+
+    @Autowired
+    private ConversationService conversationService;
+
+    @Value("${chat.ingest.batch-size:100}")
+    private int batchSize;
+
+    @Value("${chat.ingest.flush-interval-ms:50}")
+    private long flushIntervalMs;
+
+    @Value("${chat.ingest.queue-capacity:10000}")
+    private int queueCapacity;
+
+    @Value("${chat.ingest.await-persisted-ms:2000}")
+    private long awaitPersistedMs;
+
+    private BlockingQueue<PrivateMessage> queue;
+
+    // Delivered but not yet stored (or failed), released once its batch is done
+    private final Map<String, CountDownLatch> pending = new ConcurrentHashMap<>();
+    private Thread flusher;
+    private volatile boolean running;
+
+    private final AtomicLong accepted = new AtomicLong();
+    private final AtomicLong persisted = new AtomicLong();
+    private final AtomicLong failed = new AtomicLong();
+    private final AtomicLong batches = new AtomicLong();
+
+    @PostConstruct
+    public void start() {
+        queue = new ArrayBlockingQueue<>(queueCapacity);
+        running = true;
+        flusher = new Thread(this::flushLoop, "private-message-flusher");
+        flusher.setDaemon(true);
+        flusher.start();
+        System.out.println("🚚 Private message pipeline started (batch=" + batchSize + ", interval="
+                + flushIntervalMs + "ms, capacity=" + queueCapacity + ")");
+    }
+
+    @PreDestroy
+    public void stop() throws InterruptedException {
+        running = false;
+        flusher.join(TimeUnit.SECONDS.toMillis(10));
+        System.out.println("🛑 Private message pipeline stopped (" + queue.size() + " messages left unflushed)");
+    }
+
+    /**
+     * Assign ID and timestamp, deliver to both participants and queue the
+     * message for persistence. Falls back to an inline save when the queue is
+     * full so messages are never dropped.
+     */
+    public PrivateMessage ingest(PrivateMessage message) {
+        if (message.getId() == null) {
+            message.setId(new ObjectId().toHexString());
+        }
+        if (message.getTimestamp() == null) {
+            message.setTimestamp(LocalDateTime.now());
+        }
+        accepted.incrementAndGet();
+
+        // Registered before delivery, the receiver may act on it right away
+        pending.put(message.getId(), new CountDownLatch(1));
+        deliver(message);
+
+        if (!queue.offer(message)) {
+            System.out.println("⚠️ Ingest queue full, persisting message " + message.getId() + " inline");
+            persist(List.of(message));
+        }
+        return message;
+    }
+
+    /**
+     * Wait until a message that is still queued has been stored. Returns at once
+     * for messages that are not queued; false if the wait timed out.
+     */
+    public boolean awaitPersisted(String messageId) {
+        CountDownLatch latch = messageId != null ? pending.get(messageId) : null;
+        if (latch == null) {
+            return true;
+        }
+        try {
+            return latch.await(awaitPersistedMs, TimeUnit.MILLISECONDS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            return false;
+        }
+    }
+
+    /**
+     * Push message to receiver and back to sender for confirmation. Offline
+     * receivers are skipped, they load the message from history.
+     */
+    private void deliver(PrivateMessage message) {
+        if (messageBus.isUserReachable(message.getReceiverId())) {
+            messageBus.sendToUser(message.getReceiverId(), "/queue/messages", message);
+        }
+        messageBus.sendToUser(message.getSenderId(), "/queue/messages", message);
+    }
+
+    private void flushLoop() {
+        List<PrivateMessage> batch = new ArrayList<>(batchSize);
+        while (running || !queue.isEmpty()) {
+            try {
+                PrivateMessage first = queue.poll(flushIntervalMs, TimeUnit.MILLISECONDS);
+                if (first == null) {
+                    continue;
+                }
+                batch.add(first);
+
+                long deadline = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(flushIntervalMs);
+                while (batch.size() < batchSize) {
+                    long remaining = deadline - System.nanoTime();
+                    if (remaining <= 0) {
+                        break;
+                    }
+                    PrivateMessage next = queue.poll(remaining, TimeUnit.NANOSECONDS);
+                    if (next == null) {
+                        break;
+                    }
+                    batch.add(next);
+                }
+
+                persist(batch);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                queue.drainTo(batch);
+                persist(batch);
+                return;
+            } finally {
+                batch.clear();
+            }
+        }
+    }
+
+    /**
+     * Store a batch with one bulk insert. If the bulk insert fails the batch is
+     * retried one document at a time so a single bad message does not fail the
+     * whole batch.
+     */
+    private void persist(List<PrivateMessage> batch) {
+        if (batch.isEmpty()) {
+            return;
+        }
+        try {
+            store(batch);
+        } finally {
+            for (PrivateMessage message : batch) {
+                CountDownLatch latch = pending.remove(message.getId());
+                if (latch != null) {
+                    latch.countDown();
+                }
+            }
+        }
+    }
+
+    private void store(List<PrivateMessage> batch) {
+        try {
+            // The receiver may have read these already, the client marks read on delivery
+            conversationService.applyReadWatermarks(batch);
+        } catch (Exception e) {
+            System.err.println("❌ Failed to apply read watermarks: " + e.getMessage());
+        }
+        try {
+            mongoTemplate.insert(batch, PrivateMessage.class);
+            batches.incrementAndGet();
+            persisted.addAndGet(batch.size());
+            acknowledge(batch, "PERSISTED");
+            updateConversations(batch);
+        } catch (Exception e) {
+            System.err.println("❌ Bulk insert of " + batch.size() + " messages failed: " + e.getMessage());
+            for (PrivateMessage message : batch) {
+                try {
+                    mongoTemplate.save(message);
+                    persisted.incrementAndGet();
+                    acknowledge(List.of(message), "PERSISTED");
+                    updateConversations(List.of(message));
+                } catch (Exception ex) {
+                    failed.incrementAndGet();
+                    System.err.println("❌ Failed to persist message " + message.getId() + ": " + ex.getMessage());
+                    acknowledge(List.of(message), "FAILED");
+                }
+            }
+        }
+    }
+
+    /**
+     * Refresh conversation summaries for stored messages
+     */
+    private void updateConversations(List<PrivateMessage> messages) {
+        try {
+            conversationService.recordMessages(messages);
+            conversationService.reconcileReads(messages);
+        } catch (Exception e) {
+            System.err.println("❌ Failed to update conversation summaries: " + e.getMessage());
+        }
+    }
+
+    /**
+     * Send durability acks grouped per sender
+     */
+    private void acknowledge(List<PrivateMessage> messages, String status) {
+        Map<String, List<String>> idsBySender = new LinkedHashMap<>();
+        for (PrivateMessage message : messages) {
+            idsBySender.computeIfAbsent(message.getSenderId(), k -> new ArrayList<>()).add(message.getId());
+        }
+
+        idsBySender.forEach((senderId, ids) -> {
+            Map<String, Object> ack = new HashMap<>();
+            ack.put("status", status);
+            ack.put("messageIds", ids);
+            messageBus.sendToUser(senderId, "/queue/message-ack", ack);
+        });
+    }
+
+    /**
+     * Pipeline counters
+     */
+    public Map<String, Object> getStats() {
+        Map<String, Object> stats = new HashMap<>();
+        stats.put("queueDepth", queue.size());
+        stats.put("pending", pending.size());
+        stats.put("accepted", accepted.get());
+        stats.put("persisted", persisted.get());
+        stats.put("failed", failed.get());
+        stats.put("batches", batches.get());
+        return stats;
+    }
+}
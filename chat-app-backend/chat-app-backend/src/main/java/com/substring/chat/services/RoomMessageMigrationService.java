@@ -0,0 +1,140 @@
+package com.substring.chat.services;
+
+import com.substring.chat.entities.Message;
+import com.substring.chat.entities.Room;
+import com.substring.chat.entities.RoomMessageBucket;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.data.mongodb.core.MongoTemplate;
+import org.springframework.data.mongodb.core.aggregation.AggregationUpdate;
+import org.springframework.data.mongodb.core.aggregation.ConditionalOperators;
+import org.springframework.data.mongodb.core.query.Criteria;
+import org.springframework.data.mongodb.core.query.Query;
+import org.springframework.data.mongodb.core.query.Update;
+import org.springframework.stereotype.Service;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Objects;
+import java.util.stream.Stream;
+
+/**
+ * Moves the embedded {@code Room.messages} arrays into room_message_buckets in
+ * the background once the application is ready.
+ *
+ * Legacy messages get the negative indexes {@code [-n, 0)}, so they sort before
+ * anything sent since the upgrade no matter when a room is migrated. Buckets
+ * have deterministic IDs, which makes a migration interrupted half way safe to
+ * run again. Rooms created before the recent-messages window existed get their
+ * window start set to their current message count.
+ */
+@Service
+public class RoomMessageMigrationService {
+
+    @Autowired
+    private MongoTemplate mongoTemplate;
+
+    @EventListener(ApplicationReadyEvent.class)
+    public void runOnStartup() {
+        Thread worker = new Thread(() -> {
+            try {
+                migrateRooms();
+                initRecentWindows();
+            } catch (Exception e) {
+                System.err.println("❌ Room message migration failed: " + e.getMessage());
+            }
+        }, "room-message-migration");
+        worker.setDaemon(true);
+        worker.start();
+    }
+
+    /**
+     * Migrate every room that still has embedded messages
+     */
+    public long migrateRooms() {
+        Query query = new Query(Criteria.where("messages.0").exists(true));
+        query.fields().include("roomId");
+
+        List<String> roomIds;
+        try (Stream<Room> rooms = mongoTemplate.stream(query, Room.class)) {
+            roomIds = rooms.map(Room::getRoomId).filter(Objects::nonNull).toList();
+        }
+
+        long migrated = 0;
+        for (String roomId : roomIds) {
+            migrated += migrateRoom(roomId);
+        }
+        if (migrated > 0) {
+            System.out.println("🔧 Migrated " + migrated + " room messages into buckets");
+        }
+        return migrated;
+    }
+
+    /**
+     * Start the recent-messages window at the current message count for rooms
+     * that predate it. Runs as a pipeline update so the value is read and set
+     * atomically per room.
+     */
+    public long initRecentWindows() {
+        long updated = mongoTemplate.updateMulti(
+                new Query(Criteria.where("recentFromIndex").exists(false)),
+                AggregationUpdate.update()
+                        .set("recentFromIndex").toValueOf(ConditionalOperators.ifNull("messageCount").then(0L)),
+                Room.class).getModifiedCount();
+        if (updated > 0) {
+            System.out.println("🔧 Initialised recent-message window on " + updated + " rooms");
+        }
+        return updated;
+    }
+
+    /**
+     * Migrate one room, returns the number of messages moved
+     */
+    public int migrateRoom(String roomId) {
+        Query query = new Query(Criteria.where("roomId").is(roomId).and("messages.0").exists(true));
+        query.fields().include("roomId").include("messages");
+
+        Room room = mongoTemplate.findOne(query, Room.class);
+        if (room == null) {
+            return 0;
+        }
+
+        List<Message> legacy = room.getMessages();
+        int total = legacy.size();
+        long firstIndex = -total;
+
+        // Group by bucket so indexes line up with live appends
+        long index = firstIndex;
+        RoomMessageBucket bucket = null;
+        List<RoomMessageBucket> buckets = new ArrayList<>();
+        for (Message message : legacy) {
+            long seq = RoomMessageBucket.seqOf(index);
+            if (bucket == null || bucket.getSeq() != seq) {
+                bucket = new RoomMessageBucket();
+                bucket.setId(RoomMessageBucket.idOf(roomId, seq));
+                bucket.setRoomId(roomId);
+                bucket.setSeq(seq);
+                bucket.setFirstIndex(index);
+                bucket.setFirstTimeStamp(message.getTimeStamp());
+                buckets.add(bucket);
+            }
+            message.setIndex(index);
+            bucket.getMessages().add(message);
+            bucket.setCount(bucket.getMessages().size());
+            bucket.setLastTimeStamp(message.getTimeStamp());
+            index++;
+        }
+
+        for (RoomMessageBucket b : buckets) {
+            mongoTemplate.save(b);
+        }
+
+        mongoTemplate.updateFirst(
+                new Query(Criteria.where("roomId").is(roomId).and("messages.0").exists(true)),
+                new Update().unset("messages").set("firstMessageIndex", firstIndex),
+                Room.class);
+
+        return total;
+    }
+}
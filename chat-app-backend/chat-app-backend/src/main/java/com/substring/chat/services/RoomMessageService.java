@@ -0,0 +1,130 @@
+package com.substring.chat.services;
+
+import com.substring.chat.entities.Message;
+import com.substring.chat.entities.Room;
+import com.substring.chat.entities.RoomMessageBucket;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.data.domain.Sort;
+import org.springframework.data.mongodb.core.FindAndModifyOptions;
+import org.springframework.data.mongodb.core.MongoTemplate;
+import org.springframework.data.mongodb.core.query.Criteria;
+import org.springframework.data.mongodb.core.query.Query;
+import org.springframework.data.mongodb.core.query.Update;
+import org.springframework.stereotype.Service;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.TreeMap;
+
+/**
+ * Room message history stored in {@link RoomMessageBucket}s. A send reserves
+ * the next index with an atomic {@code $inc} on the room and appends to the
+ * matching bucket with {@code $push}; neither write reads or rewrites history.
+ * The bucket append is a separate write, so concurrent sends can land out of
+ * order and a failed one leaves a gap: each message therefore carries its
+ * index and reads select and order by it, never by array position.
+ *
+ * The room also keeps its newest {@code recentLimit} messages in
+ * {@code recentMessages}, trimmed by {@code $slice} in the same update, so the
+ * usual "latest page" read is one {@code $slice}-projected room lookup.
+ */
+@Service
+public class RoomMessageService {
+
+    @Autowired
+    private MongoTemplate mongoTemplate;
+
+    @Value("${chat.rooms.recent-messages:200}")
+    private int recentLimit;
+
+    /**
+     * Append message to room history. Returns null if the room does not exist.
+     */
+    public Message append(String roomId, Message message) {
+        Query roomQuery = new Query(Criteria.where("roomId").is(roomId));
+        roomQuery.fields().include("messageCount");
+
+        Update update = new Update().inc("messageCount", 1L);
+        update.push("recentMessages").slice(-recentLimit).each(message);
+
+        Room room = mongoTemplate.findAndModify(roomQuery, update,
+                FindAndModifyOptions.options().returnNew(true),
+                Room.class);
+        if (room == null) {
+            return null;
+        }
+
+        long index = room.getMessageCount() - 1;
+        long seq = RoomMessageBucket.seqOf(index);
+        message.setIndex(index);
+
+        mongoTemplate.upsert(
+                new Query(Criteria.where("id").is(RoomMessageBucket.idOf(roomId, seq))),
+                new Update()
+                        .setOnInsert("roomId", roomId)
+                        .setOnInsert("seq", seq)
+                        .setOnInsert("firstIndex", seq * RoomMessageBucket.SIZE)
+                        .push("messages", message)
+                        .inc("count", 1)
+                        .min("firstTimeStamp", message.getTimeStamp())
+                        .max("lastTimeStamp", message.getTimeStamp()),
+                RoomMessageBucket.class);
+
+        return message;
+    }
+
+    /**
+     * Page of messages counted back from the newest (page 0 = latest), oldest
+     * first. Returns null if the room does not exist.
+     */
+    public List<Message> getMessages(String roomId, int page, int size) {
+        long fromEnd = (long) (page + 1) * size;
+
+        Query roomQuery = new Query(Criteria.where("roomId").is(roomId));
+        roomQuery.fields().include("messageCount").include("firstMessageIndex").include("recentFromIndex");
+        if (fromEnd <= recentLimit) {
+            // Only the requested window of the recent list is transferred
+            roomQuery.fields().slice("recentMessages", (int) -fromEnd, size);
+        } else {
+            roomQuery.fields().slice("recentMessages", 0);
+        }
+
+        Room room = mongoTemplate.findOne(roomQuery, Room.class);
+        if (room == null) {
+            return null;
+        }
+
+        // Serve from the recent list when it is known to hold the whole window
+        if (room.getRecentFromIndex() != null && fromEnd <= recentLimit
+                && room.getMessageCount() - fromEnd >= room.getRecentFromIndex()) {
+            return room.getRecentMessages();
+        }
+
+        long end = room.getMessageCount() - (long) page * size;
+        long start = Math.max(room.getFirstMessageIndex(), end - size);
+        List<Message> messages = new ArrayList<>();
+        if (end <= start) {
+            return messages;
+        }
+
+        Query bucketQuery = new Query(Criteria.where("roomId").is(roomId)
+                .and("seq").gte(RoomMessageBucket.seqOf(start)).lte(RoomMessageBucket.seqOf(end - 1)))
+                .with(Sort.by(Sort.Direction.ASC, "seq"));
+
+        TreeMap<Long, Message> byIndex = new TreeMap<>();
+        for (RoomMessageBucket bucket : mongoTemplate.find(bucketQuery, RoomMessageBucket.class)) {
+            // Messages stored before indexes were recorded come first, in order, and go by position
+            long position = bucket.getFirstIndex();
+            for (Message message : bucket.getMessages()) {
+                long index = message.getIndex() != null ? message.getIndex() : position;
+                if (index >= start && index < end) {
+                    byIndex.put(index, message);
+                }
+                position++;
+            }
+        }
+        messages.addAll(byIndex.values());
+        return messages;
+    }
+}
@@ -0,0 +1,212 @@
+package com.substring.chat.services;
+
+import com.substring.chat.entities.MessageReactionSummary;
+import com.substring.chat.payload.ReactionDelta;
+import jakarta.annotation.PostConstruct;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.dao.DuplicateKeyException;
+import org.springframework.data.mongodb.core.FindAndModifyOptions;
+import org.springframework.data.mongodb.core.MongoTemplate;
+import org.springframework.data.mongodb.core.query.Criteria;
+import org.springframework.data.mongodb.core.query.Query;
+import org.springframework.data.mongodb.core.query.Update;
+import org.springframework.stereotype.Service;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Room message reactions stored as {@link MessageReactionSummary} documents.
+ *
+ * A toggle is one conditional update: "add" only matches while the user's vote
+ * is absent and "remove" only while it is present, so concurrent reactions on
+ * the same message never overwrite each other. Summaries (without the voter
+ * list) are served from a bounded LRU cache that is invalidated on every
+ * toggle.
+ */
+@Service
+public class RoomReactionService {
+
+    private static final int MAX_EMOJI_LENGTH = 32;
+    private static final int MAX_ATTEMPTS = 3;
+
+    @Autowired
+    private MongoTemplate mongoTemplate;
+
+    @Value("${chat.reactions.cache-size:10000}")
+    private int cacheSize;
+
+    @Value("${chat.reactions.user-sample-size:20}")
+    private int userSampleSize;
+
+    private Map<String, MessageReactionSummary> cache;
+
+    // Bumped on every invalidation so a load racing with a toggle is not cached
+    private final AtomicLong generation = new AtomicLong();
+
+    private final AtomicLong hits = new AtomicLong();
+    private final AtomicLong misses = new AtomicLong();
+    private final AtomicLong toggles = new AtomicLong();
+
+    @PostConstruct
+    public void init() {
+        cache = new LinkedHashMap<>(256, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<String, MessageReactionSummary> eldest) {
+                return size() > cacheSize;
+            }
+        };
+    }
+
+    /**
+     * Add the user's reaction, or remove it if they already reacted with this
+     * emoji. Returns the change to broadcast.
+     */
+    public ReactionDelta toggle(String roomId, String messageId, String userId, String userName, String emoji) {
+        validateEmoji(emoji);
+        if (messageId == null || userId == null) {
+            throw new RuntimeException("Message and user are required");
+        }
+
+        String vote = MessageReactionSummary.voteKey(emoji, userId);
+        String countField = "counts." + emoji;
+        String usersField = "users." + emoji;
+
+        for (int attempt = 0; attempt < MAX_ATTEMPTS; attempt++) {
+            Query addQuery = new Query(Criteria.where("id").is(messageId).and("voters").ne(vote));
+            addQuery.fields().include(countField);
+            Update add = new Update().push("voters", vote).inc(countField, 1L);
+            add.push(usersField).slice(-userSampleSize).each(userName);
+
+            MessageReactionSummary added = mongoTemplate.findAndModify(addQuery, add,
+                    FindAndModifyOptions.options().returnNew(true), MessageReactionSummary.class);
+            if (added != null) {
+                return changed(messageId, userId, userName, emoji, true, added.getCounts().getOrDefault(emoji, 0L));
+            }
+
+            Query removeQuery = new Query(Criteria.where("id").is(messageId).and("voters").is(vote));
+            removeQuery.fields().include(countField);
+            Update remove = new Update().pull("voters", vote).inc(countField, -1L).pull(usersField, userName);
+
+            MessageReactionSummary removed = mongoTemplate.findAndModify(removeQuery, remove,
+                    FindAndModifyOptions.options().returnNew(true), MessageReactionSummary.class);
+            if (removed != null) {
+                long count = removed.getCounts().getOrDefault(emoji, 0L);
+                if (count <= 0) {
+                    mongoTemplate.updateFirst(
+                            new Query(Criteria.where("id").is(messageId).and(countField).lte(0)),
+                            new Update().unset(countField).unset(usersField),
+                            MessageReactionSummary.class);
+                }
+                return changed(messageId, userId, userName, emoji, false, Math.max(count, 0L));
+            }
+
+            // No summary yet, create it with this reaction
+            MessageReactionSummary summary = new MessageReactionSummary();
+            summary.setId(messageId);
+            summary.setRoomId(roomId);
+            summary.getCounts().put(emoji, 1L);
+            summary.getUsers().put(emoji, new ArrayList<>(List.of(userName)));
+            summary.getVoters().add(vote);
+            try {
+                mongoTemplate.insert(summary);
+                return changed(messageId, userId, userName, emoji, true, 1L);
+            } catch (DuplicateKeyException e) {
+                // Someone else created it first, retry against their document
+            }
+        }
+        throw new RuntimeException("Reaction update conflicted, please retry");
+    }
+
+    /**
+     * Reaction summaries (counts and a few user names per emoji) for messages
+     * that have any reactions
+     */
+    public Map<String, MessageReactionSummary> getReactions(Collection<String> messageIds) {
+        Map<String, MessageReactionSummary> result = new HashMap<>();
+        List<String> missing = new ArrayList<>();
+        synchronized (cache) {
+            for (String messageId : messageIds) {
+                MessageReactionSummary summary = cache.get(messageId);
+                if (summary != null) {
+                    hits.incrementAndGet();
+                    if (!summary.getCounts().isEmpty()) {
+                        result.put(messageId, summary);
+                    }
+                } else {
+                    missing.add(messageId);
+                }
+            }
+        }
+        if (missing.isEmpty()) {
+            return result;
+        }
+
+        misses.addAndGet(missing.size());
+        long loadGeneration = generation.get();
+
+        Query query = new Query(Criteria.where("id").in(missing));
+        query.fields().exclude("voters");
+        Map<String, MessageReactionSummary> loaded = new HashMap<>();
+        for (MessageReactionSummary summary : mongoTemplate.find(query, MessageReactionSummary.class)) {
+            loaded.put(summary.getId(), summary);
+        }
+
+        synchronized (cache) {
+            boolean current = generation.get() == loadGeneration;
+            for (String messageId : missing) {
+                MessageReactionSummary summary = loaded.get(messageId);
+                if (summary == null) {
+                    // Cache "no reactions" too, most messages never get any
+                    summary = new MessageReactionSummary();
+                    summary.setId(messageId);
+                }
+                if (current) {
+                    cache.put(messageId, summary);
+                }
+                if (!summary.getCounts().isEmpty()) {
+                    result.put(messageId, summary);
+                }
+            }
+        }
+        return result;
+    }
+
+    private ReactionDelta changed(String messageId, String userId, String userName, String emoji,
+            boolean added, long count) {
+        toggles.incrementAndGet();
+        generation.incrementAndGet();
+        synchronized (cache) {
+            cache.remove(messageId);
+        }
+        return new ReactionDelta(messageId, userId, userName, emoji, added, count);
+    }
+
+    // Emoji is used as a field name, so it must be a short, valid key
+    private void validateEmoji(String emoji) {
+        if (emoji == null || emoji.isBlank() || emoji.length() > MAX_EMOJI_LENGTH
+                || emoji.contains(".") || emoji.contains("|") || emoji.startsWith("$")) {
+            throw new RuntimeException("Invalid emoji");
+        }
+    }
+
+    /**
+     * Cache counters
+     */
+    public Map<String, Object> getStats() {
+        Map<String, Object> stats = new HashMap<>();
+        synchronized (cache) {
+            stats.put("messages", cache.size());
+        }
+        stats.put("hits", hits.get());
+        stats.put("misses", misses.get());
+        stats.put("toggles", toggles.get());
+        return stats;
+    }
+}
@@ -0,0 +1,41 @@
+package com.substring.chat.services;
+
+import org.springframework.core.io.Resource;
+
+import java.io.IOException;
+import java.nio.file.Path;
+
+/**
+ * Where uploaded file contents live. {@link FileStorageService} stages each
+ * upload on disk and hands the file to the backend, so no backend needs the
+ * whole upload in memory.
+ *
+ * {@code chat.storage.backend} selects {@link CloudinaryStorageBackend} (the
+ * default) or {@link LocalStorageBackend} (local disk, for development and
+ * testing).
+ */
+public interface StorageBackend {
+
+    /**
+     * What a stored upload is known by: the key used to delete it, the URL
+     * clients load it from and its broad type (image, video or raw)
+     */
+    record StoredObject(String key, String url, String resourceType) {
+    }
+
+    /**
+     * Store the staged file. The backend may move {@code source} instead of
+     * copying it; the caller deletes whatever is left afterwards.
+     */
+    StoredObject store(Path source, String originalFileName, String contentType) throws IOException;
+
+    void delete(String key) throws IOException;
+
+    /**
+     * The stored content for backends that serve it through this app, null for
+     * backends with their own URLs
+     */
+    default Resource load(String key) {
+        return null;
+    }
+}
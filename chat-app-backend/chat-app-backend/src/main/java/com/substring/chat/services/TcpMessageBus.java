@@ -0,0 +1,501 @@
+package com.substring.chat.services;
+
+import com.fasterxml.jackson.annotation.JsonInclude;
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.context.event.EventListener;
+import org.springframework.messaging.simp.SimpMessagingTemplate;
+import org.springframework.messaging.simp.stomp.StompHeaderAccessor;
+import org.springframework.stereotype.Service;
+import org.springframework.web.socket.messaging.SessionConnectEvent;
+import org.springframework.web.socket.messaging.SessionDisconnectEvent;
+import org.springframework.web.socket.messaging.SessionSubscribeEvent;
+import org.springframework.web.socket.messaging.SessionUnsubscribeEvent;
+
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.nio.charset.StandardCharsets;
+import java.security.GeneralSecurityException;
+import java.security.MessageDigest;
+import java.security.SecureRandom;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HexFormat;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.atomic.AtomicLong;
+
+import javax.crypto.Mac;
+import javax.crypto.spec.SecretKeySpec;
+
+/**
+ * Bus for several nodes linked over plain TCP (newline-delimited JSON frames).
+ *
+ * Every node tracks which users and topics have sessions on it and tells its
+ * peers with SUB/UNSUB frames; a full snapshot follows HELLO on every
+ * (re)connect. A publish is delivered to the local broker and forwarded only
+ * to peers that announced interest in that user or topic, so nothing is fanned
+ * out everywhere. Frames received from a peer are delivered locally and never
+ * forwarded again.
+ *
+ * Each node lists the others in {@code chat.bus.tcp.peers} by the same
+ * host:port they advertise, e.g. three nodes on one machine on ports
+ * 9701-9703 for local testing.
+ *
+ * The listener binds to {@code chat.bus.tcp.bind-address} (loopback unless
+ * set to a private interface) and only accepts peers that prove they know
+ * {@code chat.bus.tcp.secret}: the accepting node sends a random nonce and
+ * the connecting node answers with an HMAC-SHA256 of it in its HELLO.
+ */
+@Service
+@ConditionalOnProperty(name = "chat.bus.mode", havingValue = "tcp")
+public class TcpMessageBus implements MessageBus {
+
+    private static final String USER_KEY = "user:";
+    private static final String TOPIC_KEY = "topic:";
+    private static final String USER_HANDLE = "#user"; // Session's own user, next to its subscription IDs
+    private static final int HANDSHAKE_TIMEOUT_MS = 5000;
+
+    @Autowired
+    private SimpMessagingTemplate messagingTemplate;
+
+    @Autowired
+    private ObjectMapper objectMapper;
+
+    @Autowired
+    private WebSocketSessionRegistry sessionRegistry;
+
+    @Value("${chat.bus.tcp.port:9700}")
+    private int port;
+
+    @Value("${chat.bus.tcp.bind-address:127.0.0.1}")
+    private String bindAddress;
+
+    // Shared by all nodes; peers without it are refused
+    @Value("${chat.bus.tcp.secret:}")
+    private String secret;
+
+    @Value("${chat.bus.tcp.advertised-address:}")
+    private String advertisedAddress;
+
+    @Value("${chat.bus.tcp.peers:}")
+    private String peersConfig;
+
+    @Value("${chat.bus.tcp.reconnect-ms:3000}")
+    private long reconnectMs;
+
+    @Value("${chat.bus.tcp.outbox-capacity:10000}")
+    private int outboxCapacity;
+
+    private String nodeId;
+    private ServerSocket serverSocket;
+    private volatile boolean running = true;
+
+    // Interest of local sessions: key -> number of sessions/subscriptions
+    private final Map<String, Integer> localInterest = new HashMap<>();
+    // sessionId -> (subscriptionId or USER_HANDLE) -> key
+    private final Map<String, Map<String, String>> sessionKeys = new ConcurrentHashMap<>();
+    private final Object interestLock = new Object();
+
+    // Interest announced by each peer, keyed by its node ID
+    private final Map<String, Set<String>> peerInterest = new ConcurrentHashMap<>();
+    // Outbound link to each configured peer, keyed by its address
+    private final Map<String, PeerLink> links = new ConcurrentHashMap<>();
+
+    private final AtomicLong localDeliveries = new AtomicLong();
+    private final AtomicLong forwarded = new AtomicLong();
+    private final AtomicLong received = new AtomicLong();
+    private final AtomicLong dropped = new AtomicLong();
+    private final AtomicLong rejectedPeers = new AtomicLong();
+    private final SecureRandom random = new SecureRandom();
+
+    @JsonInclude(JsonInclude.Include.NON_NULL)
+    record Frame(String type, String node, String key, String destination, JsonNode payload) {
+    }
+
+    @PostConstruct
+    public void start() throws IOException {
+        nodeId = advertisedAddress.isBlank() ? "localhost:" + port : advertisedAddress;
+        if (secret.isBlank()) {
+            throw new RuntimeException("chat.bus.tcp.secret must be set for the TCP message bus");
+        }
+
+        serverSocket = new ServerSocket(port, 50, InetAddress.getByName(bindAddress));
+        daemon("bus-accept", this::acceptLoop).start();
+
+        for (String peer : peersConfig.split(",")) {
+            String address = peer.trim();
+            if (address.isEmpty() || address.equals(nodeId)) {
+                continue;
+            }
+            PeerLink link = new PeerLink(address);
+            links.put(address, link);
+            daemon("bus-peer-" + address, link).start();
+        }
+        System.out.println("🔗 TCP message bus " + nodeId + " listening on " + bindAddress + ":" + port + ", peers "
+                + links.keySet());
+    }
+
+    @PreDestroy
+    public void stop() {
+        running = false;
+        try {
+            serverSocket.close();
+        } catch (IOException e) {
+            // Closing anyway
+        }
+        links.values().forEach(PeerLink::close);
+    }
+
+    @Override
+    public void sendToUser(String userId, String destination, Object payload) {
+        localDeliveries.incrementAndGet();
+        messagingTemplate.convertAndSendToUser(userId, destination, payload);
+        forward(USER_KEY + userId, "USER", userId, destination, payload);
+    }
+
+    @Override
+    public void sendToTopic(String destination, Object payload) {
+        localDeliveries.incrementAndGet();
+        messagingTemplate.convertAndSend(destination, payload);
+        forward(TOPIC_KEY + destination, "TOPIC", null, destination, payload);
+    }
+
+    @Override
+    public boolean isUserReachable(String userId) {
+        if (sessionRegistry.isOnline(userId)) {
+            return true;
+        }
+        String key = USER_KEY + userId;
+        return peerInterest.values().stream().anyMatch(keys -> keys.contains(key));
+    }
+
+    private void forward(String key, String type, String target, String destination, Object payload) {
+        String line = null;
+        for (Map.Entry<String, Set<String>> peer : peerInterest.entrySet()) {
+            if (!peer.getValue().contains(key)) {
+                continue;
+            }
+            PeerLink link = links.get(peer.getKey());
+            if (link == null) {
+                continue;
+            }
+            if (line == null) {
+                // Serialized once, only if some peer wants it
+                line = encode(new Frame(type, nodeId, target, destination, objectMapper.valueToTree(payload)));
+            }
+            link.send(line);
+            forwarded.incrementAndGet();
+        }
+    }
+
+    // ---- Local interest, driven by STOMP session events ----
+
+    @EventListener
+    public void onConnect(SessionConnectEvent event) {
+        StompHeaderAccessor accessor = StompHeaderAccessor.wrap(event.getMessage());
+        if (accessor.getUser() != null && accessor.getSessionId() != null) {
+            addInterest(accessor.getSessionId(), USER_HANDLE, USER_KEY + accessor.getUser().getName());
+        }
+    }
+
+    @EventListener
+    public void onSubscribe(SessionSubscribeEvent event) {
+        StompHeaderAccessor accessor = StompHeaderAccessor.wrap(event.getMessage());
+        String destination = accessor.getDestination();
+        // /user/queue/* is covered by the user key
+        if (destination != null && destination.startsWith("/topic/")
+                && accessor.getSessionId() != null && accessor.getSubscriptionId() != null) {
+            addInterest(accessor.getSessionId(), accessor.getSubscriptionId(), TOPIC_KEY + destination);
+        }
+    }
+
+    @EventListener
+    public void onUnsubscribe(SessionUnsubscribeEvent event) {
+        StompHeaderAccessor accessor = StompHeaderAccessor.wrap(event.getMessage());
+        if (accessor.getSessionId() != null && accessor.getSubscriptionId() != null) {
+            removeInterest(accessor.getSessionId(), accessor.getSubscriptionId());
+        }
+    }
+
+    @EventListener
+    public void onDisconnect(SessionDisconnectEvent event) {
+        Map<String, String> keys = sessionKeys.remove(event.getSessionId());
+        if (keys != null) {
+            synchronized (interestLock) {
+                keys.values().forEach(this::decrement);
+            }
+        }
+    }
+
+    private void addInterest(String sessionId, String handle, String key) {
+        synchronized (interestLock) {
+            String previous = sessionKeys.computeIfAbsent(sessionId, k -> new ConcurrentHashMap<>()).put(handle, key);
+            if (previous != null) {
+                decrement(previous);
+            }
+            if (localInterest.merge(key, 1, Integer::sum) == 1) {
+                broadcast(encode(new Frame("SUB", nodeId, key, null, null)));
+            }
+        }
+    }
+
+    private void removeInterest(String sessionId, String handle) {
+        Map<String, String> keys = sessionKeys.get(sessionId);
+        if (keys == null) {
+            return;
+        }
+        synchronized (interestLock) {
+            String key = keys.remove(handle);
+            if (key != null) {
+                decrement(key);
+            }
+        }
+    }
+
+    // Caller holds interestLock
+    private void decrement(String key) {
+        Integer left = localInterest.computeIfPresent(key, (k, n) -> n > 1 ? n - 1 : null);
+        if (left == null) {
+            broadcast(encode(new Frame("UNSUB", nodeId, key, null, null)));
+        }
+    }
+
+    private void broadcast(String line) {
+        links.values().forEach(link -> link.send(line));
+    }
+
+    // ---- Inbound side ----
+
+    private void acceptLoop() {
+        while (running) {
+            try {
+                Socket socket = serverSocket.accept();
+                socket.setTcpNoDelay(true);
+                daemon("bus-inbound-" + socket.getRemoteSocketAddress(), () -> readLoop(socket)).start();
+            } catch (IOException e) {
+                if (running) {
+                    System.err.println("❌ Bus accept failed: " + e.getMessage());
+                }
+            }
+        }
+    }
+
+    private void readLoop(Socket socket) {
+        String peerNode = null;
+        Set<String> interest = null;
+        try (socket; BufferedReader reader = new BufferedReader(
+                new InputStreamReader(socket.getInputStream(), StandardCharsets.UTF_8))) {
+            // Challenge first; nothing else is read until the peer has answered it
+            String nonce = HexFormat.of().formatHex(nonce());
+            Writer writer = new BufferedWriter(new OutputStreamWriter(socket.getOutputStream(), StandardCharsets.UTF_8));
+            writeLine(writer, encode(new Frame("CHALLENGE", nodeId, nonce, null, null)));
+            writer.flush();
+
+            socket.setSoTimeout(HANDSHAKE_TIMEOUT_MS);
+            String line = reader.readLine();
+            Frame hello = line != null ? objectMapper.readValue(line, Frame.class) : null;
+            if (hello == null || !"HELLO".equals(hello.type()) || hello.node() == null
+                    || !MessageDigest.isEqual(sign(nonce, hello.node()).getBytes(StandardCharsets.UTF_8),
+                            String.valueOf(hello.key()).getBytes(StandardCharsets.UTF_8))) {
+                rejectedPeers.incrementAndGet();
+                System.err.println("⚠️ Bus peer " + socket.getRemoteSocketAddress() + " failed the handshake");
+                return;
+            }
+            socket.setSoTimeout(0);
+
+            // Fresh connection, the snapshot that follows replaces what we knew
+            peerNode = hello.node();
+            interest = ConcurrentHashMap.newKeySet();
+            peerInterest.put(peerNode, interest);
+            System.out.println("🔗 Bus peer " + peerNode + " connected");
+
+            while ((line = reader.readLine()) != null) {
+                Frame frame = objectMapper.readValue(line, Frame.class);
+                switch (frame.type()) {
+                    case "SUB" -> interest.add(frame.key());
+                    case "UNSUB" -> interest.remove(frame.key());
+                    case "USER" -> {
+                        received.incrementAndGet();
+                        messagingTemplate.convertAndSendToUser(frame.key(), frame.destination(), frame.payload());
+                    }
+                    case "TOPIC" -> {
+                        received.incrementAndGet();
+                        messagingTemplate.convertAndSend(frame.destination(), frame.payload());
+                    }
+                    default -> System.err.println("⚠️ Unknown bus frame: " + frame.type());
+                }
+            }
+        } catch (IOException e) {
+            if (running) {
+                System.err.println("❌ Bus peer " + peerNode + " read failed: " + e.getMessage());
+            }
+        } finally {
+            // A fast reconnect may already have replaced this connection's interest
+            if (peerNode != null && peerInterest.remove(peerNode, interest)) {
+                System.out.println("🔌 Bus peer " + peerNode + " disconnected");
+            }
+        }
+    }
+
+    // ---- Outbound side ----
+
+    /**
+     * Connection to one peer. Frames queue in a bounded outbox and a dedicated
+     * thread writes them, so a slow peer never blocks publishers.
+     */
+    private final class PeerLink implements Runnable {
+        private final String address;
+        private final BlockingQueue<String> outbox = new LinkedBlockingQueue<>(outboxCapacity);
+        private volatile Socket socket;
+
+        PeerLink(String address) {
+            this.address = address;
+        }
+
+        void send(String line) {
+            if (!outbox.offer(line)) {
+                dropped.incrementAndGet();
+            }
+        }
+
+        @Override
+        public void run() {
+            int colon = address.lastIndexOf(':');
+            String host = address.substring(0, colon);
+            int peerPort = Integer.parseInt(address.substring(colon + 1));
+
+            while (running) {
+                try (Socket s = new Socket()) {
+                    socket = s;
+                    s.connect(new InetSocketAddress(host, peerPort), 2000);
+                    s.setTcpNoDelay(true);
+                    Writer writer = new BufferedWriter(new OutputStreamWriter(s.getOutputStream(), StandardCharsets.UTF_8));
+
+                    // Answer the peer's challenge to prove we share its secret
+                    s.setSoTimeout(HANDSHAKE_TIMEOUT_MS);
+                    String challengeLine = new BufferedReader(
+                            new InputStreamReader(s.getInputStream(), StandardCharsets.UTF_8)).readLine();
+                    Frame challenge = challengeLine != null ? objectMapper.readValue(challengeLine, Frame.class) : null;
+                    if (challenge == null || !"CHALLENGE".equals(challenge.type()) || challenge.key() == null) {
+                        throw new IOException("no challenge from " + address);
+                    }
+                    s.setSoTimeout(0);
+
+                    // Snapshot under the lock; later changes queue behind it in the outbox
+                    List<String> snapshot;
+                    synchronized (interestLock) {
+                        outbox.clear();
+                        snapshot = new ArrayList<>(localInterest.keySet());
+                    }
+                    writeLine(writer, encode(new Frame("HELLO", nodeId, sign(challenge.key(), nodeId), null, null)));
+                    for (String key : snapshot) {
+                        writeLine(writer, encode(new Frame("SUB", nodeId, key, null, null)));
+                    }
+                    writer.flush();
+
+                    while (running) {
+                        writeLine(writer, outbox.take());
+                        if (outbox.isEmpty()) {
+                            writer.flush();
+                        }
+                    }
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                    return;
+                } catch (IOException e) {
+                    if (!running) {
+                        return;
+                    }
+                    try {
+                        Thread.sleep(reconnectMs);
+                    } catch (InterruptedException ie) {
+                        Thread.currentThread().interrupt();
+                        return;
+                    }
+                }
+            }
+        }
+
+        void close() {
+            Socket s = socket;
+            if (s != null) {
+                try {
+                    s.close();
+                } catch (IOException e) {
+                    // Closing anyway
+                }
+            }
+        }
+    }
+
+    private byte[] nonce() {
+        byte[] nonce = new byte[16];
+        random.nextBytes(nonce);
+        return nonce;
+    }
+
+    // HMAC-SHA256 over nonce and node ID, keyed by the shared secret
+    private String sign(String nonce, String node) {
+        try {
+            Mac mac = Mac.getInstance("HmacSHA256");
+            mac.init(new SecretKeySpec(secret.getBytes(StandardCharsets.UTF_8), "HmacSHA256"));
+            return HexFormat.of().formatHex(mac.doFinal((nonce + "|" + node).getBytes(StandardCharsets.UTF_8)));
+        } catch (GeneralSecurityException e) {
+            throw new RuntimeException(e);
+        }
+    }
+
+    private void writeLine(Writer writer, String line) throws IOException {
+        writer.write(line);
+        writer.write('\n');
+    }
+
+    private String encode(Frame frame) {
+        try {
+            return objectMapper.writeValueAsString(frame);
+        } catch (IOException e) {
+            throw new RuntimeException("Failed to encode bus frame: " + e.getMessage());
+        }
+    }
+
+    private static Thread daemon(String name, Runnable task) {
+        Thread thread = new Thread(task, name);
+        thread.setDaemon(true);
+        return thread;
+    }
+
+    @Override
+    public Map<String, Object> getStats() {
+        Map<String, Object> stats = new HashMap<>();
+        stats.put("mode", "tcp");
+        stats.put("node", nodeId);
+        synchronized (interestLock) {
+            stats.put("localInterest", localInterest.size());
+        }
+        stats.put("connectedPeers", peerInterest.keySet());
+        stats.put("localDeliveries", localDeliveries.get());
+        stats.put("forwarded", forwarded.get());
+        stats.put("received", received.get());
+        stats.put("dropped", dropped.get());
+        stats.put("rejectedPeers", rejectedPeers.get());
+        return stats;
+    }
+}
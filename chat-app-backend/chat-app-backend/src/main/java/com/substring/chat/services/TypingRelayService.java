@@ -0,0 +1,211 @@
+package com.substring.chat.services;
+
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Consumer;
+
+/**
+ * Server-side relay for typing indicators.
+ *
+ * State is kept per (user, conversation) key and only changes are forwarded:
+ * repeated "typing" frames are dropped except for one refresh every
+ * {@code refreshIntervalMs}, and no key is forwarded more than once per
+ * {@code minIntervalMs} (the latest state wins). A timer wheel ticking every
+ * {@code tickMs} sends "stopped" for keys that got no frame for
+ * {@code expireMs}, so a closed tab never leaves a stuck indicator.
+ */
+@Service
+public class TypingRelayService {
+
+    @Value("${chat.typing.min-interval-ms:1000}")
+    private long minIntervalMs;
+
+    @Value("${chat.typing.refresh-interval-ms:3000}")
+    private long refreshIntervalMs;
+
+    @Value("${chat.typing.expire-ms:6000}")
+    private long expireMs;
+
+    @Value("${chat.typing.tick-ms:250}")
+    private long tickMs;
+
+    private final Map<String, TypingState> states = new ConcurrentHashMap<>();
+
+    // Keys with a state change held back by the rate limit
+    private final Set<String> deferred = ConcurrentHashMap.newKeySet();
+
+    private List<Set<String>> wheel;
+    private final AtomicLong currentTick = new AtomicLong();
+    private ScheduledExecutorService ticker;
+
+    private final AtomicLong received = new AtomicLong();
+    private final AtomicLong forwarded = new AtomicLong();
+    private final AtomicLong expired = new AtomicLong();
+
+    private static final class TypingState {
+        final Consumer<Boolean> sink;
+        boolean typing;           // Latest state reported by the client
+        boolean forwardedTyping;  // Latest state sent to the other side
+        long lastForwardAt;
+        long expiresAt;
+        boolean scheduled;        // Sitting in a wheel slot
+        boolean removed;
+
+        TypingState(Consumer<Boolean> sink) {
+            this.sink = sink;
+        }
+    }
+
+    @PostConstruct
+    public void start() {
+        int slots = (int) (expireMs / tickMs) + 2;
+        wheel = new ArrayList<>(slots);
+        for (int i = 0; i < slots; i++) {
+            wheel.add(ConcurrentHashMap.newKeySet());
+        }
+        ticker = Executors.newSingleThreadScheduledExecutor(r -> {
+            Thread thread = new Thread(r, "typing-relay-ticker");
+            thread.setDaemon(true);
+            return thread;
+        });
+        ticker.scheduleAtFixedRate(this::tick, tickMs, tickMs, TimeUnit.MILLISECONDS);
+    }
+
+    @PreDestroy
+    public void stop() {
+        ticker.shutdownNow();
+    }
+
+    /**
+     * Report a typing frame. {@code sink} delivers a state to the other side and
+     * may be called later from the ticker thread.
+     */
+    public void onTyping(String key, boolean typing, Consumer<Boolean> sink) {
+        received.incrementAndGet();
+        long now = System.currentTimeMillis();
+        while (true) {
+            TypingState state = states.computeIfAbsent(key, k -> new TypingState(sink));
+            synchronized (state) {
+                if (state.removed) {
+                    continue; // Lost a race with removal, use the fresh state
+                }
+                state.typing = typing;
+                if (typing) {
+                    state.expiresAt = now + expireMs;
+                    if (!state.scheduled) {
+                        schedule(key, state, now);
+                    }
+                }
+                flush(key, state, now);
+                return;
+            }
+        }
+    }
+
+    /**
+     * Forward the latest state if it differs from what the other side saw (or a
+     * refresh is due) and the rate limit allows it. Caller holds the state lock.
+     */
+    private void flush(String key, TypingState state, long now) {
+        boolean changed = state.typing != state.forwardedTyping;
+        boolean refresh = state.typing && now - state.lastForwardAt >= refreshIntervalMs;
+
+        if (changed || refresh) {
+            if (now - state.lastForwardAt < minIntervalMs) {
+                deferred.add(key);
+                return;
+            }
+            try {
+                state.sink.accept(state.typing);
+                forwarded.incrementAndGet();
+            } catch (Exception e) {
+                System.err.println("❌ Failed to relay typing state for " + key + ": " + e.getMessage());
+            }
+            state.forwardedTyping = state.typing;
+            state.lastForwardAt = now;
+        }
+
+        if (!state.typing) {
+            state.removed = true;
+            states.remove(key, state);
+        }
+    }
+
+    private void schedule(String key, TypingState state, long now) {
+        long ticksAhead = Math.max(1, (state.expiresAt - now + tickMs - 1) / tickMs);
+        ticksAhead = Math.min(ticksAhead, wheel.size() - 1);
+        int slot = (int) ((currentTick.get() + ticksAhead) % wheel.size());
+        wheel.get(slot).add(key);
+        state.scheduled = true;
+    }
+
+    private void tick() {
+        try {
+            long now = System.currentTimeMillis();
+            int slot = (int) (currentTick.incrementAndGet() % wheel.size());
+
+            Set<String> due = wheel.get(slot);
+            for (String key : List.copyOf(due)) {
+                due.remove(key);
+                TypingState state = states.get(key);
+                if (state == null) {
+                    continue;
+                }
+                synchronized (state) {
+                    state.scheduled = false;
+                    if (state.removed || !state.typing) {
+                        continue;
+                    }
+                    if (state.expiresAt <= now) {
+                        expired.incrementAndGet();
+                        state.typing = false;
+                        flush(key, state, now);
+                    } else {
+                        // Refreshed since it was scheduled
+                        schedule(key, state, now);
+                    }
+                }
+            }
+
+            for (String key : List.copyOf(deferred)) {
+                deferred.remove(key);
+                TypingState state = states.get(key);
+                if (state == null) {
+                    continue;
+                }
+                synchronized (state) {
+                    if (!state.removed) {
+                        flush(key, state, now);
+                    }
+                }
+            }
+        } catch (Exception e) {
+            System.err.println("❌ Typing relay tick failed: " + e.getMessage());
+        }
+    }
+
+    /**
+     * Relay counters
+     */
+    public Map<String, Object> getStats() {
+        Map<String, Object> stats = new HashMap<>();
+        stats.put("activeTypists", states.size());
+        stats.put("received", received.get());
+        stats.put("forwarded", forwarded.get());
+        stats.put("expired", expired.get());
+        return stats;
+    }
+}
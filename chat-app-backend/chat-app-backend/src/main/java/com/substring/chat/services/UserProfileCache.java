@@ -0,0 +1,81 @@
+package com.substring.chat.services;
+
+import com.substring.chat.entities.User;
+import com.substring.chat.repositories.UserRepository;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Short-lived cache of user documents for handlers that need more than the
+ * ID and name carried by the token (avatar, about, ...). Entries expire after
+ * {@code ttlMs}; profile updates invalidate them straight away.
+ */
+@Service
+public class UserProfileCache {
+
+    @Autowired
+    private UserRepository userRepository;
+
+    @Value("${chat.user-cache.ttl-ms:30000}")
+    private long ttlMs;
+
+    @Value("${chat.user-cache.max-users:50000}")
+    private int maxUsers;
+
+    private final Map<String, Entry> users = new ConcurrentHashMap<>();
+
+    private final AtomicLong hits = new AtomicLong();
+    private final AtomicLong misses = new AtomicLong();
+
+    private record Entry(User user, long expiresAt) {
+    }
+
+    /**
+     * Get user by ID, loading it on a miss
+     */
+    public User get(String userId) {
+        long now = System.currentTimeMillis();
+        Entry entry = users.get(userId);
+        if (entry != null && entry.expiresAt() > now) {
+            hits.incrementAndGet();
+            return entry.user();
+        }
+
+        misses.incrementAndGet();
+        User user = userRepository.findById(userId)
+                .orElseThrow(() -> new RuntimeException("User not found"));
+
+        if (users.size() >= maxUsers) {
+            users.values().removeIf(e -> e.expiresAt() <= now);
+            if (users.size() >= maxUsers) {
+                users.clear();
+            }
+        }
+        users.put(userId, new Entry(user, now + ttlMs));
+        return user;
+    }
+
+    /**
+     * Drop cached profile after it changed
+     */
+    public void invalidate(String userId) {
+        users.remove(userId);
+    }
+
+    /**
+     * Cache counters
+     */
+    public Map<String, Object> getStats() {
+        Map<String, Object> stats = new HashMap<>();
+        stats.put("users", users.size());
+        stats.put("hits", hits.get());
+        stats.put("misses", misses.get());
+        return stats;
+    }
+}
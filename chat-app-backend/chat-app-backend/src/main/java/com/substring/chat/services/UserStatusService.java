@@ -1,64 +1,260 @@
 package com.substring.chat.services;
 
+import com.substring.chat.entities.Conversation;
+import com.substring.chat.entities.GroupMember;
 import com.substring.chat.entities.User;
-import com.substring.chat.repositories.UserRepository;
+import com.substring.chat.repositories.GroupMemberRepository;
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
 import org.springframework.beans.factory.annotation.Autowired;
-import org.springframework.messaging.simp.SimpMessagingTemplate;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.data.mongodb.core.BulkOperations;
+import org.springframework.data.mongodb.core.MongoTemplate;
+import org.springframework.data.mongodb.core.query.Criteria;
+import org.springframework.data.mongodb.core.query.Query;
+import org.springframework.data.mongodb.core.query.Update;
 import org.springframework.stereotype.Service;
 
 import java.time.LocalDateTime;
 import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
 import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
 
+/**
+ * In-memory presence tracking on top of {@link WebSocketSessionRegistry}.
+ *
+ * The event listener only calls in on a user's first connect and last
+ * disconnect. Going offline is debounced by {@code offlineGraceMs}: a reconnect
+ * within that window cancels it and nobody is told. Both paths run under a
+ * per-user lock, so a reconnect racing the offline broadcast is always
+ * announced after it. Status changes go to
+ * {@code /user/queue/user-status} of online users who share a conversation or a
+ * group with the user, and online/lastSeen are written to Mongo in one bulk
+ * update every {@code flushIntervalMs}.
+ */
 @Service
 public class UserStatusService {
 
     @Autowired
-    private UserRepository userRepository;
+    private MongoTemplate mongoTemplate;
 
     @Autowired
-    private SimpMessagingTemplate messagingTemplate;
+    private GroupMemberRepository groupMemberRepository;
+
+    @Autowired
+    private MessageBus messageBus;
+
+    @Autowired
+    private WebSocketSessionRegistry sessionRegistry;
+
+    @Value("${chat.presence.offline-grace-ms:5000}")
+    private long offlineGraceMs;
+
+    @Value("${chat.presence.flush-interval-ms:5000}")
+    private long flushIntervalMs;
+
+    private static final int LOCK_STRIPES = 256;
+
+    // Striped per-user locks; a user always maps to the same one
+    private final Object[] locks = new Object[LOCK_STRIPES];
+
+    // Pending offline broadcasts, cancelled on reconnect
+    private final Map<String, ScheduledFuture<?>> pendingOffline = new ConcurrentHashMap<>();
+
+    // Status not yet written to Mongo
+    private final Map<String, PendingStatus> pendingWrites = new ConcurrentHashMap<>();
+
+    private final AtomicLong broadcasts = new AtomicLong();
+    private final AtomicLong debounced = new AtomicLong();
+    private final AtomicLong flushedWrites = new AtomicLong();
+
+    private ScheduledExecutorService scheduler;
+
+    private record PendingStatus(boolean online, LocalDateTime lastSeen) {
+    }
+
+    public UserStatusService() {
+        for (int i = 0; i < LOCK_STRIPES; i++) {
+            locks[i] = new Object();
+        }
+    }
+
+    @PostConstruct
+    public void start() {
+        scheduler = Executors.newSingleThreadScheduledExecutor(r -> {
+            Thread thread = new Thread(r, "presence-scheduler");
+            thread.setDaemon(true);
+            return thread;
+        });
+        scheduler.scheduleWithFixedDelay(this::flushWrites, flushIntervalMs, flushIntervalMs, TimeUnit.MILLISECONDS);
+    }
+
+    @PreDestroy
+    public void stop() {
+        scheduler.shutdownNow();
+        flushWrites();
+    }
 
     /**
-     * Update user online status
+     * Record that the user's first session opened or last session closed
      */
     public void setUserOnline(String userId, boolean online) {
         try {
-            User user = userRepository.findById(userId).orElse(null);
-            if (user != null) {
-                user.setOnline(online);
-                if (!online) {
-                    user.setLastSeen(LocalDateTime.now());
+            synchronized (lockFor(userId)) {
+                if (online) {
+                    ScheduledFuture<?> pending = pendingOffline.remove(userId);
+                    if (pending != null && pending.cancel(false)) {
+                        // Came back within the grace period, others never saw it go offline
+                        debounced.incrementAndGet();
+                        return;
+                    }
+                    pendingWrites.put(userId, new PendingStatus(true, null));
+                    broadcast(userId, true, null);
+                } else {
+                    pendingOffline.put(userId,
+                            scheduler.schedule(() -> goOffline(userId), offlineGraceMs, TimeUnit.MILLISECONDS));
                 }
-                userRepository.save(user);
+            }
+        } catch (Exception e) {
+            System.err.println("Error updating user status: " + e.getMessage());
+        }
+    }
 
-                // Broadcast status change to all users
-                Map<String, Object> statusUpdate = new HashMap<>();
-                statusUpdate.put("userId", userId);
-                statusUpdate.put("online", online);
-                statusUpdate.put("lastSeen", user.getLastSeen());
+    private void goOffline(String userId) {
+        synchronized (lockFor(userId)) {
+            pendingOffline.remove(userId);
+            // Checked under the lock: a reconnect either shows up here or waits and goes out after
+            if (sessionRegistry.isOnline(userId)) {
+                return;
+            }
+            LocalDateTime lastSeen = LocalDateTime.now();
+            pendingWrites.put(userId, new PendingStatus(false, lastSeen));
+            broadcast(userId, false, lastSeen);
+        }
+    }
 
-                messagingTemplate.convertAndSend("/topic/user-status", statusUpdate);
+    private Object lockFor(String userId) {
+        return locks[Math.floorMod(userId.hashCode(), LOCK_STRIPES)];
+    }
 
-                System.out.println("📡 User " + user.getName() + " is now " + (online ? "online" : "offline"));
+    /**
+     * Whether the user has at least one open session
+     */
+    public boolean isOnline(String userId) {
+        return sessionRegistry.isOnline(userId);
+    }
+
+    /**
+     * Update last seen timestamp (written with the next batch)
+     */
+    public void updateLastSeen(String userId) {
+        pendingWrites.put(userId, new PendingStatus(isOnline(userId), LocalDateTime.now()));
+    }
+
+    /**
+     * Send status change to reachable users who share a conversation or group.
+     * Goes through the bus, so contacts connected to other nodes are included.
+     */
+    private void broadcast(String userId, boolean online, LocalDateTime lastSeen) {
+        try {
+            Map<String, Object> statusUpdate = new HashMap<>();
+            statusUpdate.put("userId", userId);
+            statusUpdate.put("online", online);
+            statusUpdate.put("lastSeen", lastSeen);
+
+            int sent = 0;
+            for (String contactId : findContacts(userId)) {
+                if (messageBus.isUserReachable(contactId)) {
+                    messageBus.sendToUser(contactId, "/queue/user-status", statusUpdate);
+                    sent++;
+                }
             }
+            broadcasts.incrementAndGet();
+
+            System.out.println("📡 User " + userId + " is now " + (online ? "online" : "offline")
+                    + " (notified " + sent + " contacts)");
         } catch (Exception e) {
-            System.err.println("Error updating user status: " + e.getMessage());
+            System.err.println("Error broadcasting user status: " + e.getMessage());
         }
     }
 
     /**
-     * Update last seen timestamp
+     * Users who have this user in a private conversation or a group
      */
-    public void updateLastSeen(String userId) {
+    private Set<String> findContacts(String userId) {
+        Set<String> contacts = new HashSet<>();
+
+        Query conversations = new Query(Criteria.where("participantIds").is(userId));
+        conversations.fields().include("participantIds");
+        for (Conversation conversation : mongoTemplate.find(conversations, Conversation.class)) {
+            contacts.addAll(conversation.getParticipantIds());
+        }
+
+        List<String> groupIds = groupMemberRepository.findByUserIdOrderByJoinedAtDesc(userId).stream()
+                .map(GroupMember::getGroupId)
+                .toList();
+        if (!groupIds.isEmpty()) {
+            Query members = new Query(Criteria.where("groupId").in(groupIds));
+            members.fields().include("userId");
+            for (GroupMember member : mongoTemplate.find(members, GroupMember.class)) {
+                contacts.add(member.getUserId());
+            }
+        }
+
+        contacts.remove(userId);
+        return contacts;
+    }
+
+    /**
+     * Write pending online/lastSeen changes with one bulk update
+     */
+    private void flushWrites() {
+        if (pendingWrites.isEmpty()) {
+            return;
+        }
         try {
-            User user = userRepository.findById(userId).orElse(null);
-            if (user != null) {
-                user.setLastSeen(LocalDateTime.now());
-                userRepository.save(user);
+            BulkOperations bulk = mongoTemplate.bulkOps(BulkOperations.BulkMode.UNORDERED, User.class);
+            int count = 0;
+            for (String userId : Set.copyOf(pendingWrites.keySet())) {
+                PendingStatus status = pendingWrites.remove(userId);
+                if (status == null) {
+                    continue;
+                }
+                Update update = new Update().set("online", status.online());
+                if (status.lastSeen() != null) {
+                    update.set("lastSeen", status.lastSeen());
+                }
+                bulk.updateOne(new Query(Criteria.where("id").is(userId)), update);
+                count++;
+            }
+            if (count > 0) {
+                bulk.execute();
+                flushedWrites.addAndGet(count);
             }
         } catch (Exception e) {
-            System.err.println("Error updating last seen: " + e.getMessage());
+            System.err.println("Error writing user status: " + e.getMessage());
         }
     }
+
+    /**
+     * Presence counters
+     */
+    public Map<String, Object> getStats() {
+        Map<String, Object> stats = new HashMap<>();
+        stats.put("onlineUsers", sessionRegistry.getOnlineUserIds().size());
+        stats.put("pendingOffline", pendingOffline.size());
+        stats.put("pendingWrites", pendingWrites.size());
+        stats.put("broadcasts", broadcasts.get());
+        stats.put("debounced", debounced.get());
+        stats.put("flushedWrites", flushedWrites.get());
+        return stats;
+    }
 }
@@ -0,0 +1,132 @@
+package com.substring.chat.services;
+
+import org.springframework.stereotype.Service;
+
+import java.time.Instant;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Open STOMP sessions per user (userId -> sessionId -> session info).
+ *
+ * Delivery code can ask {@link #isOnline(String)} before fanning a message out,
+ * and presence only changes on a user's first connect and last disconnect.
+ */
+@Service
+public class WebSocketSessionRegistry {
+
+    private final Map<String, Map<String, SessionInfo>> sessionsByUser = new ConcurrentHashMap<>();
+    private final Map<String, String> userBySession = new ConcurrentHashMap<>();
+
+    /**
+     * Connected session of a user
+     */
+    public static class SessionInfo {
+        private final String sessionId;
+        private final Instant connectedAt;
+        private volatile Instant lastHeartbeat;
+
+        SessionInfo(String sessionId, Instant connectedAt) {
+            this.sessionId = sessionId;
+            this.connectedAt = connectedAt;
+            this.lastHeartbeat = connectedAt;
+        }
+
+        public String getSessionId() {
+            return sessionId;
+        }
+
+        public Instant getConnectedAt() {
+            return connectedAt;
+        }
+
+        public Instant getLastHeartbeat() {
+            return lastHeartbeat;
+        }
+    }
+
+    /**
+     * Register a session, returns true if it is the user's first one
+     */
+    public boolean register(String userId, String sessionId) {
+        boolean[] first = new boolean[1];
+        sessionsByUser.compute(userId, (id, sessions) -> {
+            if (sessions == null) {
+                sessions = new ConcurrentHashMap<>();
+            }
+            first[0] = sessions.isEmpty();
+            sessions.putIfAbsent(sessionId, new SessionInfo(sessionId, Instant.now()));
+            return sessions;
+        });
+        userBySession.put(sessionId, userId);
+        return first[0];
+    }
+
+    /**
+     * Remove a session, returns the user ID if it was the user's last session,
+     * null otherwise (including unknown sessions)
+     */
+    public String unregister(String sessionId) {
+        String userId = userBySession.remove(sessionId);
+        if (userId == null) {
+            return null;
+        }
+        boolean[] last = new boolean[1];
+        sessionsByUser.computeIfPresent(userId, (id, sessions) -> {
+            sessions.remove(sessionId);
+            last[0] = sessions.isEmpty();
+            return last[0] ? null : sessions;
+        });
+        return last[0] ? userId : null;
+    }
+
+    /**
+     * Record activity (any inbound frame, including heartbeats) on a session
+     */
+    public void touch(String sessionId) {
+        String userId = userBySession.get(sessionId);
+        if (userId == null) {
+            return;
+        }
+        Map<String, SessionInfo> sessions = sessionsByUser.get(userId);
+        SessionInfo info = sessions != null ? sessions.get(sessionId) : null;
+        if (info != null) {
+            info.lastHeartbeat = Instant.now();
+        }
+    }
+
+    /**
+     * Whether the user has at least one open session
+     */
+    public boolean isOnline(String userId) {
+        return userId != null && sessionsByUser.containsKey(userId);
+    }
+
+    /**
+     * Open sessions of a user
+     */
+    public List<SessionInfo> getSessions(String userId) {
+        Map<String, SessionInfo> sessions = sessionsByUser.get(userId);
+        return sessions != null ? List.copyOf(sessions.values()) : List.of();
+    }
+
+    /**
+     * IDs of all users with an open session
+     */
+    public Set<String> getOnlineUserIds() {
+        return Set.copyOf(sessionsByUser.keySet());
+    }
+
+    /**
+     * Registry counters
+     */
+    public Map<String, Object> getStats() {
+        Map<String, Object> stats = new HashMap<>();
+        stats.put("onlineUsers", sessionsByUser.size());
+        stats.put("sessions", userBySession.size());
+        return stats;
+    }
+}
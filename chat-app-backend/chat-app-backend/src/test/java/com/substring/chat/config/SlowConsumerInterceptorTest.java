@@ -0,0 +1,158 @@
+package com.substring.chat.config;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.mockito.ArgumentCaptor;
+import org.springframework.messaging.Message;
+import org.springframework.messaging.MessageChannel;
+import org.springframework.messaging.simp.SimpMessageHeaderAccessor;
+import org.springframework.messaging.simp.SimpMessageType;
+import org.springframework.messaging.support.MessageBuilder;
+import org.springframework.test.util.ReflectionTestUtils;
+import org.springframework.web.socket.CloseStatus;
+import org.springframework.web.socket.TextMessage;
+import org.springframework.web.socket.WebSocketHandler;
+import org.springframework.web.socket.WebSocketMessage;
+import org.springframework.web.socket.WebSocketSession;
+
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.Mockito.doAnswer;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.timeout;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+class SlowConsumerInterceptorTest {
+
+    private final SlowConsumerInterceptor interceptor = new SlowConsumerInterceptor();
+    private final MessageChannel channel = mock(MessageChannel.class);
+    private final WebSocketHandler handler = mock(WebSocketHandler.class);
+    private final WebSocketSession socket = mock(WebSocketSession.class);
+    private final CountDownLatch socketBlocked = new CountDownLatch(1);
+    private final CountDownLatch releaseSocket = new CountDownLatch(1);
+
+    private WebSocketHandler decorated;
+    private WebSocketSession session;
+    private Thread writer;
+
+    @BeforeEach
+    void setUp() throws Exception {
+        ReflectionTestUtils.setField(interceptor, "backlogBytes", 10);
+        ReflectionTestUtils.setField(interceptor, "stallMs", 50L);
+        ReflectionTestUtils.setField(interceptor, "replayCapacity", 10);
+        ReflectionTestUtils.setField(interceptor, "sendTimeLimitMs", 10000);
+        ReflectionTestUtils.setField(interceptor, "sendBufferSizeLimit", 100000);
+
+        when(socket.getId()).thenReturn("s1");
+        when(socket.isOpen()).thenReturn(true);
+        // The first write blocks, like a client that stopped reading
+        doAnswer(invocation -> {
+            socketBlocked.countDown();
+            releaseSocket.await(5, TimeUnit.SECONDS);
+            return null;
+        }).when(socket).sendMessage(any());
+
+        decorated = interceptor.decorate(handler);
+        decorated.afterConnectionEstablished(socket);
+        ArgumentCaptor<WebSocketSession> tracked = ArgumentCaptor.forClass(WebSocketSession.class);
+        verify(handler).afterConnectionEstablished(tracked.capture());
+        session = tracked.getValue();
+    }
+
+    @AfterEach
+    void tearDown() throws Exception {
+        releaseSocket.countDown();
+        if (writer != null) {
+            writer.join(5000);
+        }
+    }
+
+    @Test
+    void passesFramesWhileTheSocketKeepsUp() {
+        Message<?> typing = frame("s1", "/user/queue/typing");
+
+        assertThat(interceptor.preSend(typing, channel)).isSameAs(typing);
+    }
+
+    @Test
+    void dropsAndDefersWhileFramesWaitInTheSendBuffer() throws Exception {
+        stallSocket();
+
+        assertThat(interceptor.preSend(frame("s1", "/user/queue/typing"), channel)).isNull();
+        Message<?> chat = frame("s1", "/user/queue/messages");
+        assertThat(interceptor.preSend(chat, channel)).isNull();
+        assertThat(interceptor.getStats()).containsEntry("dropped", 1L).containsEntry("deferred", 1L);
+
+        // Once the socket drains, the deferred frame is sent again
+        releaseSocket.countDown();
+        verify(channel, timeout(2000)).send(chat);
+    }
+
+    @Test
+    void coalescesSnapshotsUntilOneIsSent() {
+        Message<?> first = frame("s1", "/topic/users/room1");
+        Message<?> second = frame("s1", "/topic/users/room1");
+
+        assertThat(interceptor.preSend(first, channel)).isSameAs(first);
+        assertThat(interceptor.preSend(second, channel)).isNull();
+        // The queued frame goes out with the newest payload
+        assertThat(interceptor.beforeHandle(first, channel, null)).isSameAs(second);
+    }
+
+    @Test
+    void rejectedSnapshotDoesNotSwallowLaterOnes() {
+        Message<?> rejected = frame("s1", "/topic/users/room1");
+        assertThat(interceptor.preSend(rejected, channel)).isSameAs(rejected);
+        interceptor.afterSendCompletion(rejected, channel, false, null);
+
+        Message<?> next = frame("s1", "/topic/users/room1");
+        assertThat(interceptor.preSend(next, channel)).isSameAs(next);
+    }
+
+    @Test
+    void ignoresFramesForUnknownSessions() {
+        Message<?> late = frame("gone", "/user/queue/messages");
+
+        assertThat(interceptor.preSend(late, channel)).isSameAs(late);
+        assertThat(interceptor.getStats()).containsEntry("sessions", 1);
+    }
+
+    @Test
+    void forgetsClosedSessions() throws Exception {
+        decorated.afterConnectionClosed(socket, CloseStatus.NORMAL);
+
+        assertThat(interceptor.getStats()).containsEntry("sessions", 0);
+        Message<?> late = frame("s1", "/user/queue/messages");
+        assertThat(interceptor.preSend(late, channel)).isSameAs(late);
+        assertThat(interceptor.getStats()).containsEntry("sessions", 0);
+    }
+
+    // One write blocks in the socket, the next waits in the decorator's buffer
+    private void stallSocket() throws Exception {
+        writer = new Thread(() -> send(new TextMessage("first")));
+        writer.start();
+        assertThat(socketBlocked.await(2, TimeUnit.SECONDS)).isTrue();
+        send(new TextMessage("x".repeat(20)));
+        Thread.sleep(100);
+    }
+
+    private void send(WebSocketMessage<?> message) {
+        try {
+            session.sendMessage(message);
+        } catch (Exception e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    private Message<?> frame(String sessionId, String destination) {
+        SimpMessageHeaderAccessor accessor = SimpMessageHeaderAccessor.create(SimpMessageType.MESSAGE);
+        accessor.setSessionId(sessionId);
+        accessor.setDestination(destination);
+        return MessageBuilder.createMessage(new byte[0], accessor.getMessageHeaders());
+    }
+}
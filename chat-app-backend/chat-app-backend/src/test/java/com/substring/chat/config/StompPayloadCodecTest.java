@@ -0,0 +1,152 @@
+package com.substring.chat.config;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.dataformat.cbor.databind.CBORMapper;
+import org.junit.jupiter.api.Test;
+import org.springframework.messaging.Message;
+import org.springframework.messaging.MessageHeaders;
+import org.springframework.messaging.simp.SimpMessageHeaderAccessor;
+import org.springframework.messaging.simp.SimpMessageType;
+import org.springframework.messaging.simp.stomp.StompCommand;
+import org.springframework.messaging.simp.stomp.StompHeaderAccessor;
+import org.springframework.messaging.support.MessageBuilder;
+import org.springframework.util.MimeTypeUtils;
+import org.springframework.web.socket.messaging.SessionConnectEvent;
+
+import java.nio.charset.StandardCharsets;
+import java.util.HashMap;
+import java.util.Map;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class StompPayloadCodecTest {
+
+    private final StompPayloadCodec codec = new StompPayloadCodec();
+    private final ObjectMapper mapper = new ObjectMapper();
+
+    @Test
+    void compactShortensKnownKeysAndDropsEmptyValues() throws Exception {
+        connect("s1", "application/vnd.chat.compact+json", false);
+
+        Message<?> encoded = codec.beforeHandle(frame("s1", """
+                {"senderId":"alice","content":"hi","fileUrl":null,"fileName":"",
+                 "reactions":{},"deletedFor":[],"custom":"kept","read":false,"fileSize":0}
+                """), null, null);
+
+        JsonNode tree = mapper.readTree((byte[]) encoded.getPayload());
+        assertThat(tree.get("si").asText()).isEqualTo("alice");
+        assertThat(tree.get("c").asText()).isEqualTo("hi");
+        assertThat(tree.get("custom").asText()).isEqualTo("kept");
+        // false and 0 carry information, only null and empty values go
+        assertThat(tree.get("rd").asBoolean(true)).isFalse();
+        assertThat(tree.get("fs").asInt(-1)).isZero();
+        assertThat(tree.has("fu")).isFalse();
+        assertThat(tree.has("fn")).isFalse();
+        assertThat(tree.has("rx")).isFalse();
+        assertThat(tree.has("df")).isFalse();
+        assertThat(tree.has("senderId")).isFalse();
+        assertThat(formatOf(encoded)).isEqualTo("compact");
+    }
+
+    @Test
+    void compactAppliesAtEveryLevelAndKeepsArrayPositions() throws Exception {
+        connect("s1", "application/vnd.chat.compact+json", false);
+
+        Message<?> encoded = codec.beforeHandle(frame("s1", """
+                {"replyTo":{"messageId":"m1","content":"","senderName":"Bob"},
+                 "items":[{"userId":"u1"},{},null,"x"]}
+                """), null, null);
+
+        JsonNode tree = mapper.readTree((byte[]) encoded.getPayload());
+        assertThat(tree.get("rt").get("mi").asText()).isEqualTo("m1");
+        assertThat(tree.get("rt").get("sn").asText()).isEqualTo("Bob");
+        assertThat(tree.get("rt").has("c")).isFalse();
+        JsonNode items = tree.get("items");
+        assertThat(items.size()).isEqualTo(4);
+        assertThat(items.get(0).get("ui").asText()).isEqualTo("u1");
+        assertThat(items.get(1).isNull()).isTrue();
+        assertThat(items.get(2).isNull()).isTrue();
+        assertThat(items.get(3).asText()).isEqualTo("x");
+    }
+
+    @Test
+    void compactOfAnObjectWithOnlyEmptyFieldsIsAnEmptyObject() throws Exception {
+        connect("s1", "application/vnd.chat.compact+json", false);
+
+        Message<?> encoded = codec.beforeHandle(frame("s1", "{\"content\":null,\"reactions\":{}}"), null, null);
+
+        assertThat(new String((byte[]) encoded.getPayload(), StandardCharsets.UTF_8)).isEqualTo("{}");
+    }
+
+    @Test
+    void compactKeepsTheTypeOfTopLevelValues() throws Exception {
+        connect("s1", "application/vnd.chat.compact+json", false);
+
+        assertThat(payloadOf(codec.beforeHandle(frame("s1", "[]"), null, null))).isEqualTo("[]");
+        assertThat(payloadOf(codec.beforeHandle(frame("s1", "\"\""), null, null))).isEqualTo("\"\"");
+        assertThat(payloadOf(codec.beforeHandle(frame("s1", "[{\"userId\":\"u1\",\"userName\":\"\"}]"), null, null)))
+                .isEqualTo("[{\"ui\":\"u1\"}]");
+    }
+
+    @Test
+    void jsonSessionsAreLeftAlone() {
+        Message<?> original = frame("s2", "{\"senderId\":\"alice\",\"fileUrl\":null}");
+
+        assertThat(codec.beforeHandle(original, null, null)).isSameAs(original);
+    }
+
+    @Test
+    void binaryFormatFallsBackToCompactOnSockJs() throws Exception {
+        connect("s1", "application/cbor", false);
+
+        Message<?> encoded = codec.beforeHandle(frame("s1", "{\"senderId\":\"alice\"}"), null, null);
+
+        assertThat(formatOf(encoded)).isEqualTo("compact");
+        assertThat(mapper.readTree((byte[]) encoded.getPayload()).get("si").asText()).isEqualTo("alice");
+    }
+
+    @Test
+    void cborSessionsGetCompactTreeAsBinary() throws Exception {
+        connect("s1", "application/cbor", true);
+
+        Message<?> encoded = codec.beforeHandle(frame("s1", "{\"senderId\":\"alice\",\"fileUrl\":null}"),
+                null, null);
+
+        assertThat(formatOf(encoded)).isEqualTo("cbor");
+        assertThat(encoded.getHeaders().get(MessageHeaders.CONTENT_TYPE))
+                .isEqualTo(MimeTypeUtils.APPLICATION_OCTET_STREAM);
+        JsonNode tree = new CBORMapper().readTree((byte[]) encoded.getPayload());
+        assertThat(tree.get("si").asText()).isEqualTo("alice");
+        assertThat(tree.has("fu")).isFalse();
+    }
+
+    private void connect(String sessionId, String contentType, boolean binaryCapable) {
+        StompHeaderAccessor accessor = StompHeaderAccessor.create(StompCommand.CONNECT);
+        accessor.setSessionId(sessionId);
+        accessor.addNativeHeader(StompHeaderAccessor.STOMP_CONTENT_TYPE_HEADER, contentType);
+        Map<String, Object> attributes = new HashMap<>();
+        if (binaryCapable) {
+            // What decorate() records for plain WebSocket sessions
+            attributes.put("stompBinaryCapable", Boolean.TRUE);
+        }
+        accessor.setSessionAttributes(attributes);
+        codec.onConnect(new SessionConnectEvent(this,
+                MessageBuilder.createMessage(new byte[0], accessor.getMessageHeaders())));
+    }
+
+    private Message<byte[]> frame(String sessionId, String json) {
+        SimpMessageHeaderAccessor accessor = SimpMessageHeaderAccessor.create(SimpMessageType.MESSAGE);
+        accessor.setSessionId(sessionId);
+        accessor.setContentType(MimeTypeUtils.APPLICATION_JSON);
+        return MessageBuilder.createMessage(json.getBytes(StandardCharsets.UTF_8), accessor.getMessageHeaders());
+    }
+
+    private String payloadOf(Message<?> message) {
+        return new String((byte[]) message.getPayload(), StandardCharsets.UTF_8);
+    }
+
+    private String formatOf(Message<?> message) {
+        return SimpMessageHeaderAccessor.wrap(message).getFirstNativeHeader(StompPayloadCodec.FORMAT_HEADER);
+    }
+}
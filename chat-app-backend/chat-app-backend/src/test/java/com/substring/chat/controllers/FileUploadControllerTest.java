@@ -0,0 +1,226 @@
+package com.substring.chat.controllers;
+
+import com.substring.chat.entities.LocalFile;
+import com.substring.chat.services.LocalFileStore;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.junit.jupiter.api.io.TempDir;
+import org.mockito.InjectMocks;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+import org.springframework.http.HttpHeaders;
+import org.springframework.mock.web.MockHttpServletRequest;
+import org.springframework.mock.web.MockHttpServletResponse;
+
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.LocalDateTime;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.ArgumentMatchers.anyLong;
+import static org.mockito.ArgumentMatchers.anyBoolean;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+@ExtendWith(MockitoExtension.class)
+class FileUploadControllerTest {
+
+    private static final String ID = "3f2b8c1e-5d4a-4c2b-9e1f-0a1b2c3d4e5f.txt";
+    private static final String ETAG = "\"abc123\"";
+
+    @Mock
+    private LocalFileStore localFileStore;
+
+    @InjectMocks
+    private FileUploadController controller;
+
+    @TempDir
+    Path dir;
+
+    private MockHttpServletRequest request;
+    private MockHttpServletResponse response;
+    private LocalFile file;
+
+    @BeforeEach
+    void setUp() throws Exception {
+        Path path = dir.resolve(ID);
+        Files.writeString(path, "0123456789");
+        file = new LocalFile(ID, "notes.txt", "text/plain", "other", ID, 10, "abc123",
+                "room", "alice", LocalDateTime.now(), false);
+        when(localFileStore.find(ID)).thenReturn(file);
+        when(localFileStore.resolve(file)).thenReturn(path);
+
+        request = new MockHttpServletRequest("GET", "/api/v1/files/download/" + ID);
+        response = new MockHttpServletResponse();
+    }
+
+    @Test
+    void servesWholeFileWithEtag() throws Exception {
+        controller.downloadFile(ID, request, response);
+
+        assertThat(response.getStatus()).isEqualTo(200);
+        assertThat(response.getHeader(HttpHeaders.ETAG)).isEqualTo(ETAG);
+        assertThat(response.getHeader(HttpHeaders.ACCEPT_RANGES)).isEqualTo("bytes");
+        assertThat(response.getContentAsString(StandardCharsets.UTF_8)).isEqualTo("0123456789");
+        verify(localFileStore).recordDownload(10, false, false);
+    }
+
+    @Test
+    void servesSingleRange() throws Exception {
+        request.addHeader(HttpHeaders.RANGE, "bytes=2-5");
+
+        controller.downloadFile(ID, request, response);
+
+        assertThat(response.getStatus()).isEqualTo(206);
+        assertThat(response.getHeader(HttpHeaders.CONTENT_RANGE)).isEqualTo("bytes 2-5/10");
+        assertThat(response.getContentLengthLong()).isEqualTo(4);
+        assertThat(response.getContentAsString(StandardCharsets.UTF_8)).isEqualTo("2345");
+        verify(localFileStore).recordDownload(4, true, false);
+    }
+
+    @Test
+    void servesSuffixRange() throws Exception {
+        request.addHeader(HttpHeaders.RANGE, "bytes=-3");
+
+        controller.downloadFile(ID, request, response);
+
+        assertThat(response.getStatus()).isEqualTo(206);
+        assertThat(response.getHeader(HttpHeaders.CONTENT_RANGE)).isEqualTo("bytes 7-9/10");
+        assertThat(response.getContentAsString(StandardCharsets.UTF_8)).isEqualTo("789");
+    }
+
+    @Test
+    void clampsRangeEndToLength() throws Exception {
+        request.addHeader(HttpHeaders.RANGE, "bytes=8-100");
+
+        controller.downloadFile(ID, request, response);
+
+        assertThat(response.getStatus()).isEqualTo(206);
+        assertThat(response.getHeader(HttpHeaders.CONTENT_RANGE)).isEqualTo("bytes 8-9/10");
+        assertThat(response.getContentAsString(StandardCharsets.UTF_8)).isEqualTo("89");
+    }
+
+    @Test
+    void honoursRangeWhenIfRangeMatches() throws Exception {
+        request.addHeader(HttpHeaders.RANGE, "bytes=0-0");
+        request.addHeader(HttpHeaders.IF_RANGE, ETAG);
+
+        controller.downloadFile(ID, request, response);
+
+        assertThat(response.getStatus()).isEqualTo(206);
+        assertThat(response.getContentAsString(StandardCharsets.UTF_8)).isEqualTo("0");
+    }
+
+    @Test
+    void ignoresRangeWhenIfRangeIsStale() throws Exception {
+        request.addHeader(HttpHeaders.RANGE, "bytes=2-5");
+        request.addHeader(HttpHeaders.IF_RANGE, "\"other\"");
+
+        controller.downloadFile(ID, request, response);
+
+        assertThat(response.getStatus()).isEqualTo(200);
+        assertThat(response.getHeader(HttpHeaders.CONTENT_RANGE)).isNull();
+        assertThat(response.getContentAsString(StandardCharsets.UTF_8)).isEqualTo("0123456789");
+    }
+
+    @Test
+    void ignoresMultipleRanges() throws Exception {
+        request.addHeader(HttpHeaders.RANGE, "bytes=0-1,4-5");
+
+        controller.downloadFile(ID, request, response);
+
+        assertThat(response.getStatus()).isEqualTo(200);
+        assertThat(response.getContentAsString(StandardCharsets.UTF_8)).isEqualTo("0123456789");
+    }
+
+    @Test
+    void rejectsUnsatisfiableRange() throws Exception {
+        request.addHeader(HttpHeaders.RANGE, "bytes=10-");
+
+        controller.downloadFile(ID, request, response);
+
+        assertThat(response.getStatus()).isEqualTo(416);
+        assertThat(response.getHeader(HttpHeaders.CONTENT_RANGE)).isEqualTo("bytes */10");
+        assertThat(response.getContentAsByteArray()).isEmpty();
+        verify(localFileStore, never()).recordDownload(anyLong(), anyBoolean(), anyBoolean());
+    }
+
+    @Test
+    void answersNotModifiedForMatchingEtag() throws Exception {
+        request.addHeader(HttpHeaders.IF_NONE_MATCH, "\"stale\", W/" + ETAG);
+        request.addHeader(HttpHeaders.RANGE, "bytes=2-5");
+
+        controller.downloadFile(ID, request, response);
+
+        assertThat(response.getStatus()).isEqualTo(304);
+        assertThat(response.getHeader(HttpHeaders.ETAG)).isEqualTo(ETAG);
+        assertThat(response.getContentAsByteArray()).isEmpty();
+        verify(localFileStore).recordNotModified();
+    }
+
+    @Test
+    void servesBodyForOtherEtag() throws Exception {
+        request.addHeader(HttpHeaders.IF_NONE_MATCH, "\"stale\"");
+
+        controller.downloadFile(ID, request, response);
+
+        assertThat(response.getStatus()).isEqualTo(200);
+        assertThat(response.getContentAsString(StandardCharsets.UTF_8)).isEqualTo("0123456789");
+    }
+
+    @Test
+    void handsRangeToSendfile() throws Exception {
+        request.setAttribute("org.apache.tomcat.sendfile.support", Boolean.TRUE);
+        request.addHeader(HttpHeaders.RANGE, "bytes=2-5");
+
+        controller.downloadFile(ID, request, response);
+
+        assertThat(response.getStatus()).isEqualTo(206);
+        assertThat(request.getAttribute("org.apache.tomcat.sendfile.start")).isEqualTo(2L);
+        assertThat(request.getAttribute("org.apache.tomcat.sendfile.end")).isEqualTo(6L);
+        assertThat(response.getContentAsByteArray()).isEmpty();
+        verify(localFileStore).recordDownload(4, true, true);
+    }
+
+    @Test
+    void headSendsNoBody() throws Exception {
+        request.setMethod("HEAD");
+
+        controller.downloadFile(ID, request, response);
+
+        assertThat(response.getStatus()).isEqualTo(200);
+        assertThat(response.getContentLengthLong()).isEqualTo(10);
+        assertThat(response.getContentAsByteArray()).isEmpty();
+    }
+
+    @Test
+    void sendsOtherTypesAsAttachments() throws Exception {
+        controller.downloadFile(ID, request, response);
+
+        assertThat(response.getHeader(HttpHeaders.CONTENT_DISPOSITION)).startsWith("attachment");
+        assertThat(response.getHeader("X-Content-Type-Options")).isEqualTo("nosniff");
+    }
+
+    @Test
+    void showsImagesInPlace() throws Exception {
+        file.setContentType("image/png");
+
+        controller.downloadFile(ID, request, response);
+
+        assertThat(response.getContentType()).isEqualTo("image/png");
+        assertThat(response.getHeader(HttpHeaders.CONTENT_DISPOSITION)).startsWith("inline");
+        assertThat(response.getHeader("X-Content-Type-Options")).isEqualTo("nosniff");
+    }
+
+    @Test
+    void sendsSvgAsAttachment() throws Exception {
+        file.setContentType("image/svg+xml");
+
+        controller.downloadFile(ID, request, response);
+
+        assertThat(response.getHeader(HttpHeaders.CONTENT_DISPOSITION)).startsWith("attachment");
+    }
+}
@@ -0,0 +1,256 @@
+package com.substring.chat.services;
+
+import com.mongodb.client.result.UpdateResult;
+import com.substring.chat.entities.Conversation;
+import com.substring.chat.entities.PrivateMessage;
+import com.substring.chat.payload.UnreadCount;
+import com.substring.chat.repositories.PrivateMessageRepository;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.InjectMocks;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+import org.springframework.data.mongodb.core.BulkOperations;
+import org.springframework.data.mongodb.core.MongoTemplate;
+import org.springframework.data.mongodb.core.query.Criteria;
+import org.springframework.data.mongodb.core.query.Query;
+import org.springframework.data.mongodb.core.query.Update;
+import org.springframework.data.mongodb.core.query.UpdateDefinition;
+
+import java.time.LocalDateTime;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.argThat;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+@ExtendWith(MockitoExtension.class)
+class ConversationServiceTest {
+
+    private static final LocalDateTime T0 = LocalDateTime.of(2026, 1, 1, 12, 0);
+    private static final String CONVERSATION = PrivateMessage.conversationIdOf("alice", "bob");
+
+    @Mock
+    private MongoTemplate mongoTemplate;
+
+    @Mock
+    private PrivateMessageRepository privateMessageRepository;
+
+    @Mock
+    private BulkOperations bulk;
+
+    @InjectMocks
+    private ConversationService conversationService;
+
+    @Test
+    void recordMessagesCountsUnreadMessagesOnly() {
+        when(mongoTemplate.bulkOps(BulkOperations.BulkMode.ORDERED, Conversation.class)).thenReturn(bulk);
+        PrivateMessage unread = message("m1", T0);
+        PrivateMessage read = message("m2", T0.plusSeconds(1));
+        read.setRead(true);
+
+        conversationService.recordMessages(List.of(unread, read));
+
+        verify(bulk).upsert(eq(byId()), argThat((Update u) -> u.modifies("unreadCounts.bob")));
+        verify(bulk).upsert(eq(byId()), argThat((Update u) -> !u.modifies("unreadCounts.bob")));
+        verify(bulk).execute();
+    }
+
+    @Test
+    void recordMessagesOnlyMovesPreviewForward() {
+        when(mongoTemplate.bulkOps(BulkOperations.BulkMode.ORDERED, Conversation.class)).thenReturn(bulk);
+
+        conversationService.recordMessages(List.of(message("m1", T0)));
+
+        // The upsert never carries the preview, only the update guarded by lastMessageAt
+        verify(bulk).upsert(eq(byId()), argThat((Update u) -> !u.modifies("lastMessageId")));
+        verify(bulk).updateOne(eq(previewNotNewerThan(T0)), argThat((Update u) -> u.modifies("lastMessageId")));
+    }
+
+    @Test
+    void replaceSummaryOnlyMovesPreviewForward() {
+        conversationService.replaceSummary(message("m1", T0), 2, 0);
+
+        verify(mongoTemplate).upsert(eq(byId()),
+                argThat(u -> u.modifies("unreadCounts.bob") && !u.modifies("lastMessageId")),
+                eq(Conversation.class));
+        verify(mongoTemplate).updateFirst(eq(previewNotNewerThan(T0)), argThat(u -> u.modifies("lastMessageId")),
+                eq(Conversation.class));
+    }
+
+    @Test
+    void markReadTakesFlippedMessagesOffTheCounter() {
+        when(mongoTemplate.updateMulti(eq(readQuery(T0)), any(UpdateDefinition.class), eq(PrivateMessage.class)))
+                .thenReturn(UpdateResult.acknowledged(3, 3L, null));
+
+        assertThat(conversationService.markRead("bob", "alice", T0)).isEqualTo(3);
+
+        verify(mongoTemplate).updateFirst(eq(byId()),
+                argThat(u -> u.modifies("unreadCounts.bob") && u.modifies("lastReadAt.bob")), eq(Conversation.class));
+        // Counters that drifted below zero are reset
+        verify(mongoTemplate).updateFirst(
+                eq(new Query(Criteria.where("id").is(CONVERSATION).and("unreadCounts.bob").lt(0))),
+                argThat(u -> u.modifies("unreadCounts.bob")), eq(Conversation.class));
+    }
+
+    @Test
+    void markReadClampsFutureWatermarks() {
+        LocalDateTime future = LocalDateTime.now().plusDays(1);
+        when(mongoTemplate.updateMulti(any(Query.class), any(UpdateDefinition.class), eq(PrivateMessage.class)))
+                .thenReturn(UpdateResult.acknowledged(0, 0L, null));
+
+        conversationService.markRead("bob", "alice", future);
+
+        verify(mongoTemplate, never()).updateMulti(eq(readQuery(future)), any(UpdateDefinition.class),
+                eq(PrivateMessage.class));
+    }
+
+    @Test
+    void deletingAnUnreadMessageDecrementsAboveZeroOnly() {
+        conversationService.onMessageDeleted(message("m1", T0));
+
+        verify(mongoTemplate).updateFirst(
+                eq(new Query(Criteria.where("id").is(CONVERSATION).and("unreadCounts.bob").gt(0))),
+                argThat(u -> u.modifies("unreadCounts.bob")), eq(Conversation.class));
+    }
+
+    @Test
+    void deletingAReadMessageLeavesTheCounter() {
+        PrivateMessage message = message("m1", T0);
+        message.setRead(true);
+
+        conversationService.onMessageDeleted(message);
+
+        verify(mongoTemplate, never()).updateFirst(any(Query.class),
+                argThat((UpdateDefinition u) -> u.modifies("unreadCounts.bob")), eq(Conversation.class));
+    }
+
+    @Test
+    void watermarksMarkCoveredMessagesReadBeforeInsert() {
+        when(mongoTemplate.find(any(Query.class), eq(Conversation.class))).thenReturn(List.of(readUpTo(T0)));
+        PrivateMessage covered = message("m1", T0);
+        PrivateMessage later = message("m2", T0.plusSeconds(1));
+
+        conversationService.applyReadWatermarks(List.of(covered, later));
+
+        assertThat(covered.isRead()).isTrue();
+        assertThat(covered.getReadAt()).isNotNull();
+        assertThat(later.isRead()).isFalse();
+    }
+
+    @Test
+    void reconcileMarksReadUpToTheWatermarkOnce() {
+        LocalDateTime watermark = T0.plusSeconds(5);
+        when(mongoTemplate.find(any(Query.class), eq(Conversation.class))).thenReturn(List.of(readUpTo(watermark)));
+        when(mongoTemplate.updateMulti(any(Query.class), any(UpdateDefinition.class), eq(PrivateMessage.class)))
+                .thenReturn(UpdateResult.acknowledged(2, 2L, null));
+
+        conversationService.reconcileReads(List.of(message("m1", T0), message("m2", T0.plusSeconds(1))));
+
+        verify(mongoTemplate, times(1)).updateMulti(eq(readQuery(watermark)), any(UpdateDefinition.class),
+                eq(PrivateMessage.class));
+    }
+
+    @Test
+    void reconcileSkipsMessagesPastTheWatermark() {
+        when(mongoTemplate.find(any(Query.class), eq(Conversation.class)))
+                .thenReturn(List.of(readUpTo(T0.minusSeconds(1))));
+
+        conversationService.reconcileReads(List.of(message("m1", T0)));
+
+        verify(mongoTemplate, never()).updateMulti(any(Query.class), any(UpdateDefinition.class),
+                eq(PrivateMessage.class));
+    }
+
+    @Test
+    void rebuildSetsOnlyCountersThatDrifted() {
+        when(privateMessageRepository.countUnreadBySender("bob")).thenReturn(List.of(
+                new UnreadCount("bob", "alice", 2), new UnreadCount("bob", "carol", 1)));
+        when(mongoTemplate.find(any(Query.class), eq(Conversation.class))).thenReturn(List.of(
+                summary("alice", 5L), summary("carol", 1L), summary("dave", 4L)));
+        when(mongoTemplate.bulkOps(BulkOperations.BulkMode.UNORDERED, Conversation.class)).thenReturn(bulk);
+
+        Map<String, Long> counts = conversationService.rebuildUnreadCounts("bob");
+
+        assertThat(counts).containsOnly(Map.entry("alice", 2L), Map.entry("carol", 1L));
+        // Each set only applies if nothing changed the counter since it was read
+        verify(bulk).updateOne(eq(counterIs("alice", 5L)), eq(new Update().set("unreadCounts.bob", 2L)));
+        verify(bulk).updateOne(eq(counterIs("dave", 4L)), eq(new Update().set("unreadCounts.bob", 0L)));
+        verify(bulk, never()).updateOne(eq(counterIs("carol", 1L)), any(Update.class));
+        verify(bulk).execute();
+        // No zeroing pass over every conversation
+        verify(mongoTemplate, never()).updateMulti(any(Query.class), any(UpdateDefinition.class),
+                eq(Conversation.class));
+    }
+
+    @Test
+    void rebuildWritesNothingWhenCountersAreRight() {
+        when(privateMessageRepository.countUnreadBySender("bob")).thenReturn(List.of(new UnreadCount("bob", "alice", 2)));
+        when(mongoTemplate.find(any(Query.class), eq(Conversation.class))).thenReturn(List.of(summary("alice", 2L)));
+        when(mongoTemplate.bulkOps(BulkOperations.BulkMode.UNORDERED, Conversation.class)).thenReturn(bulk);
+
+        conversationService.rebuildUnreadCounts("bob");
+
+        verify(bulk, never()).execute();
+    }
+
+    private PrivateMessage message(String id, LocalDateTime timestamp) {
+        PrivateMessage message = new PrivateMessage();
+        message.setId(id);
+        message.setSenderId("alice");
+        message.setSenderName("Alice");
+        message.setReceiverId("bob");
+        message.setReceiverName("Bob");
+        message.setContent("hi");
+        message.setTimestamp(timestamp);
+        return message;
+    }
+
+    // Bob's side of his conversation with the partner
+    private Conversation summary(String partnerId, Long unreadForBob) {
+        Conversation conversation = new Conversation();
+        conversation.setId(PrivateMessage.conversationIdOf("bob", partnerId));
+        conversation.setParticipantIds(List.of("bob", partnerId));
+        conversation.setUnreadCounts(new HashMap<>(Map.of("bob", unreadForBob)));
+        return conversation;
+    }
+
+    private Query counterIs(String partnerId, Long value) {
+        return new Query(Criteria.where("id").is(PrivateMessage.conversationIdOf("bob", partnerId))
+                .and("unreadCounts.bob").is(value));
+    }
+
+    private Query byId() {
+        return new Query(Criteria.where("id").is(CONVERSATION));
+    }
+
+    // Bob's unread messages from Alice up to the watermark
+    private Query readQuery(LocalDateTime readUpTo) {
+        return new Query(Criteria.where("receiverId").is("bob")
+                .and("senderId").is("alice")
+                .and("isRead").is(false)
+                .and("deletedForEveryone").ne(true)
+                .and("timestamp").lte(readUpTo));
+    }
+
+    // Bob has read the conversation up to the watermark
+    private Conversation readUpTo(LocalDateTime watermark) {
+        Conversation conversation = new Conversation();
+        conversation.setId(CONVERSATION);
+        conversation.setLastReadAt(Map.of("bob", watermark));
+        return conversation;
+    }
+
+    private Query previewNotNewerThan(LocalDateTime timestamp) {
+        return new Query(Criteria.where("id").is(CONVERSATION).orOperator(
+                Criteria.where("lastMessageAt").is(null),
+                Criteria.where("lastMessageAt").lte(timestamp)));
+    }
+}
@@ -0,0 +1,210 @@
+package com.substring.chat.services;
+
+import com.mongodb.client.result.DeleteResult;
+import com.substring.chat.entities.FileAttachment;
+import com.substring.chat.entities.FileContent;
+import com.substring.chat.repositories.FileAttachmentRepository;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.junit.jupiter.api.io.TempDir;
+import org.mockito.InjectMocks;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+import org.springframework.dao.DuplicateKeyException;
+import org.springframework.data.mongodb.core.FindAndModifyOptions;
+import org.springframework.data.mongodb.core.MongoTemplate;
+import org.springframework.data.mongodb.core.query.Query;
+import org.springframework.data.mongodb.core.query.UpdateDefinition;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.LocalDateTime;
+import java.util.Optional;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.ArgumentMatchers.argThat;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.ArgumentMatchers.isNull;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+@ExtendWith(MockitoExtension.class)
+class FileStorageServiceTest {
+
+    private static final String SHA = "ab".repeat(32);
+
+    @Mock
+    private StorageBackend storageBackend;
+
+    @Mock
+    private FileAttachmentRepository fileAttachmentRepository;
+
+    @Mock
+    private MongoTemplate mongoTemplate;
+
+    @Mock
+    private ImagePreviewService imagePreviewService;
+
+    @InjectMocks
+    private FileStorageService fileStorageService;
+
+    @TempDir
+    Path dir;
+
+    private FileStorageService.StagedUpload staged;
+
+    @BeforeEach
+    void setUp() throws Exception {
+        Path file = dir.resolve("upload.part");
+        Files.writeString(file, "hello");
+        staged = new FileStorageService.StagedUpload(file, SHA, 5);
+    }
+
+    @Test
+    void reusesLiveContent() throws Exception {
+        saveReturnsArgument();
+        when(mongoTemplate.findAndModify(any(Query.class), any(UpdateDefinition.class),
+                any(FindAndModifyOptions.class), eq(FileContent.class)))
+                .thenReturn(content("existing-key", 2));
+
+        FileAttachment attachment = fileStorageService.store(staged, "a.png", "image/png", "alice");
+
+        assertThat(attachment.getPublicId()).isEqualTo("existing-key");
+        assertThat(attachment.getSha256()).isEqualTo(SHA);
+        verify(storageBackend, never()).store(any(), any(), any());
+        verify(mongoTemplate, never()).insert(any(FileContent.class));
+        assertThat(fileStorageService.getStats()).containsEntry("deduplicated", 1L);
+    }
+
+    @Test
+    void storesNewContentWithOneReference() throws Exception {
+        saveReturnsArgument();
+        when(storageBackend.store(staged.path(), "a.png", "image/png"))
+                .thenReturn(new StorageBackend.StoredObject("new-key", "https://cdn/new", "image"));
+        when(mongoTemplate.insert(any(FileContent.class))).thenAnswer(invocation -> invocation.getArgument(0));
+
+        FileAttachment attachment = fileStorageService.store(staged, "a.png", "image/png", "alice");
+
+        assertThat(attachment.getPublicId()).isEqualTo("new-key");
+        verify(mongoTemplate).insert(argThat((FileContent c) -> c.getId().equals(SHA) && c.getRefCount() == 1));
+        verify(imagePreviewService).submit(any(FileContent.class), isNull());
+        assertThat(fileStorageService.getStats()).containsEntry("stored", 1L);
+    }
+
+    @Test
+    void takesOverReleasedContent() throws Exception {
+        saveReturnsArgument();
+        when(storageBackend.store(staged.path(), "a.png", "image/png"))
+                .thenReturn(new StorageBackend.StoredObject("new-key", "https://cdn/new", "image"));
+        when(mongoTemplate.insert(any(FileContent.class))).thenThrow(new DuplicateKeyException("dup"));
+        // No live content to share, only the released record
+        when(mongoTemplate.findAndModify(any(Query.class), any(UpdateDefinition.class),
+                any(FindAndModifyOptions.class), eq(FileContent.class)))
+                .thenReturn(null);
+        FileContent zombie = content("old-key", 0);
+        zombie.setThumbnailKey("old-thumb");
+        when(mongoTemplate.findAndModify(any(Query.class), any(UpdateDefinition.class), eq(FileContent.class)))
+                .thenReturn(zombie);
+
+        FileAttachment attachment = fileStorageService.store(staged, "a.png", "image/png", "alice");
+
+        assertThat(attachment.getPublicId()).isEqualTo("new-key");
+        verify(storageBackend).delete("old-key");
+        verify(storageBackend).delete("old-thumb");
+        verify(storageBackend, never()).delete("new-key");
+        verify(imagePreviewService).submit(any(FileContent.class), isNull());
+        assertThat(fileStorageService.getStats()).containsEntry("takenOver", 1L);
+    }
+
+    @Test
+    void dropsOwnCopyWhenAConcurrentUploadWins() throws Exception {
+        saveReturnsArgument();
+        when(storageBackend.store(staged.path(), "a.png", "image/png"))
+                .thenReturn(new StorageBackend.StoredObject("new-key", "https://cdn/new", "image"));
+        when(mongoTemplate.insert(any(FileContent.class))).thenThrow(new DuplicateKeyException("dup"));
+        // No live content at first, the concurrent upload's record on the retry
+        when(mongoTemplate.findAndModify(any(Query.class), any(UpdateDefinition.class),
+                any(FindAndModifyOptions.class), eq(FileContent.class)))
+                .thenReturn(null, content("winner-key", 2));
+
+        FileAttachment attachment = fileStorageService.store(staged, "a.png", "image/png", "alice");
+
+        assertThat(attachment.getPublicId()).isEqualTo("winner-key");
+        verify(storageBackend).delete("new-key");
+        verify(storageBackend).store(any(), any(), any());
+    }
+
+    @Test
+    void destroysContentWithItsLastReference() throws Exception {
+        when(fileAttachmentRepository.findById("att")).thenReturn(Optional.of(attachment()));
+        FileContent released = content("key", 0);
+        released.setThumbnailKey("thumb");
+        when(mongoTemplate.findAndModify(any(Query.class), any(UpdateDefinition.class),
+                any(FindAndModifyOptions.class), eq(FileContent.class)))
+                .thenReturn(released);
+        when(mongoTemplate.remove(any(Query.class), eq(FileContent.class)))
+                .thenReturn(DeleteResult.acknowledged(1));
+
+        fileStorageService.deleteFile("att");
+
+        verify(fileAttachmentRepository).deleteById("att");
+        verify(storageBackend).delete("key");
+        verify(storageBackend).delete("thumb");
+    }
+
+    @Test
+    void keepsContentRemovedByAnotherRelease() throws Exception {
+        when(fileAttachmentRepository.findById("att")).thenReturn(Optional.of(attachment()));
+        when(mongoTemplate.findAndModify(any(Query.class), any(UpdateDefinition.class),
+                any(FindAndModifyOptions.class), eq(FileContent.class)))
+                .thenReturn(content("key", 0));
+        when(mongoTemplate.remove(any(Query.class), eq(FileContent.class)))
+                .thenReturn(DeleteResult.acknowledged(0));
+
+        fileStorageService.deleteFile("att");
+
+        verify(storageBackend, never()).delete(anyString());
+    }
+
+    @Test
+    void keepsContentStillReferenced() throws Exception {
+        when(fileAttachmentRepository.findById("att")).thenReturn(Optional.of(attachment()));
+        when(mongoTemplate.findAndModify(any(Query.class), any(UpdateDefinition.class),
+                any(FindAndModifyOptions.class), eq(FileContent.class)))
+                .thenReturn(content("key", 1));
+
+        fileStorageService.deleteFile("att");
+
+        verify(mongoTemplate, never()).remove(any(Query.class), eq(FileContent.class));
+        verify(storageBackend, never()).delete(anyString());
+    }
+
+    private void saveReturnsArgument() {
+        when(fileAttachmentRepository.save(any(FileAttachment.class)))
+                .thenAnswer(invocation -> invocation.getArgument(0));
+    }
+
+    private FileContent content(String storageKey, long refCount) {
+        FileContent content = new FileContent();
+        content.setId(SHA);
+        content.setStorageKey(storageKey);
+        content.setUrl("https://cdn/" + storageKey);
+        content.setResourceType("image");
+        content.setSize(5);
+        content.setRefCount(refCount);
+        content.setCreatedAt(LocalDateTime.now());
+        return content;
+    }
+
+    private FileAttachment attachment() {
+        FileAttachment attachment = new FileAttachment("a.png", "a.png", "https://cdn/key", "image", 5, "key",
+                "alice");
+        attachment.setId("att");
+        attachment.setSha256(SHA);
+        return attachment;
+    }
+}
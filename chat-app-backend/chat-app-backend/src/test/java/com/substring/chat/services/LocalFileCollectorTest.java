@@ -0,0 +1,58 @@
+package com.substring.chat.services;
+
+import org.bson.Document;
+import org.junit.jupiter.api.Test;
+
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class LocalFileCollectorTest {
+
+    private static final String A = "3f2b8c1e-5d4a-4c2b-9e1f-0a1b2c3d4e5f";
+    private static final String B = "0c9d8e7f-1a2b-4c3d-8e9f-a0b1c2d3e4f5";
+
+    @Test
+    void marksEveryUrlInsideText() {
+        Set<String> referenced = new HashSet<>();
+
+        LocalFileCollector.collectIds(new Document("content",
+                "see http://host/api/v1/files/download/" + A + ".png thanks, and /api/v1/files/download/" + B
+                        + "?x=1"), referenced);
+
+        assertThat(referenced).containsExactlyInAnyOrder(A, B);
+    }
+
+    @Test
+    void endsTheIdWhereTheUrlEnds() {
+        Set<String> referenced = new HashSet<>();
+
+        LocalFileCollector.collectIds(new Document("content",
+                "(/api/v1/files/download/" + A + ".pdf). Also /api/v1/files/download/" + B.toUpperCase() + "."),
+                referenced);
+
+        assertThat(referenced).containsExactlyInAnyOrder(A, B);
+    }
+
+    @Test
+    void walksNestedMessages() {
+        Set<String> referenced = new HashSet<>();
+
+        LocalFileCollector.collectIds(new Document("messages", List.of(
+                new Document("attachment", new Document("fileUrl", "/api/v1/files/download/" + A + ".jpg")),
+                new Document("content", "no link here"))), referenced);
+
+        assertThat(referenced).containsExactly(A);
+    }
+
+    @Test
+    void ignoresOtherIds() {
+        Set<String> referenced = new HashSet<>();
+
+        LocalFileCollector.collectIds(new Document("content", "/api/v1/files/download/not-a-file.png"), referenced);
+
+        assertThat(referenced).isEmpty();
+    }
+}
@@ -0,0 +1,77 @@
+package com.substring.chat.services;
+
+import com.substring.chat.entities.PrivateMessage;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.data.mongodb.core.MongoTemplate;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.util.Collection;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.doAnswer;
+import static org.mockito.Mockito.mock;
+
+class PrivateMessageIngestServiceTest {
+
+    private final PrivateMessageIngestService ingestService = new PrivateMessageIngestService();
+    private final MongoTemplate mongoTemplate = mock(MongoTemplate.class);
+    private final CountDownLatch releaseInsert = new CountDownLatch(1);
+
+    @BeforeEach
+    void setUp() {
+        ReflectionTestUtils.setField(ingestService, "mongoTemplate", mongoTemplate);
+        ReflectionTestUtils.setField(ingestService, "messageBus", mock(MessageBus.class));
+        ReflectionTestUtils.setField(ingestService, "conversationService", mock(ConversationService.class));
+        ReflectionTestUtils.setField(ingestService, "batchSize", 10);
+        ReflectionTestUtils.setField(ingestService, "flushIntervalMs", 10L);
+        ReflectionTestUtils.setField(ingestService, "queueCapacity", 10);
+        ReflectionTestUtils.setField(ingestService, "awaitPersistedMs", 2000L);
+        // The bulk insert holds until the test lets it through
+        doAnswer(invocation -> {
+            releaseInsert.await(5, TimeUnit.SECONDS);
+            return invocation.getArgument(0);
+        }).when(mongoTemplate).insert(any(Collection.class), eq(PrivateMessage.class));
+        ingestService.start();
+    }
+
+    @AfterEach
+    void tearDown() throws Exception {
+        releaseInsert.countDown();
+        ingestService.stop();
+    }
+
+    @Test
+    void waitsForAQueuedMessageToBeStored() throws Exception {
+        PrivateMessage message = ingestService.ingest(message());
+        CountDownLatch returned = new CountDownLatch(1);
+        Thread lookup = new Thread(() -> {
+            ingestService.awaitPersisted(message.getId());
+            returned.countDown();
+        });
+        lookup.start();
+
+        assertThat(returned.await(200, TimeUnit.MILLISECONDS)).isFalse();
+        releaseInsert.countDown();
+        assertThat(returned.await(2, TimeUnit.SECONDS)).isTrue();
+        assertThat(ingestService.getStats()).containsEntry("pending", 0);
+    }
+
+    @Test
+    void returnsAtOnceForStoredMessages() {
+        assertThat(ingestService.awaitPersisted("507f1f77bcf86cd799439011")).isTrue();
+    }
+
+    private PrivateMessage message() {
+        PrivateMessage message = new PrivateMessage();
+        message.setSenderId("alice");
+        message.setReceiverId("bob");
+        message.setContent("hi");
+        return message;
+    }
+}
@@ -0,0 +1,101 @@
+package com.substring.chat.services;
+
+import com.substring.chat.entities.Conversation;
+import com.substring.chat.entities.User;
+import com.substring.chat.repositories.GroupMemberRepository;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.mockito.ArgumentCaptor;
+import org.springframework.data.mongodb.core.BulkOperations;
+import org.springframework.data.mongodb.core.MongoTemplate;
+import org.springframework.data.mongodb.core.query.Query;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.doAnswer;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.timeout;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+class UserStatusServiceTest {
+
+    private final UserStatusService userStatusService = new UserStatusService();
+    private final MongoTemplate mongoTemplate = mock(MongoTemplate.class);
+    private final MessageBus messageBus = mock(MessageBus.class);
+    private final WebSocketSessionRegistry sessionRegistry = mock(WebSocketSessionRegistry.class);
+
+    @BeforeEach
+    void setUp() {
+        ReflectionTestUtils.setField(userStatusService, "mongoTemplate", mongoTemplate);
+        ReflectionTestUtils.setField(userStatusService, "groupMemberRepository", mock(GroupMemberRepository.class));
+        ReflectionTestUtils.setField(userStatusService, "messageBus", messageBus);
+        ReflectionTestUtils.setField(userStatusService, "sessionRegistry", sessionRegistry);
+        ReflectionTestUtils.setField(userStatusService, "offlineGraceMs", 0L);
+        ReflectionTestUtils.setField(userStatusService, "flushIntervalMs", 60000L);
+
+        Conversation conversation = new Conversation();
+        conversation.setParticipantIds(List.of("alice", "bob"));
+        when(mongoTemplate.find(any(Query.class), eq(Conversation.class))).thenReturn(List.of(conversation));
+        when(messageBus.isUserReachable("bob")).thenReturn(true);
+        when(mongoTemplate.bulkOps(BulkOperations.BulkMode.UNORDERED, User.class))
+                .thenReturn(mock(BulkOperations.class));
+        userStatusService.start();
+    }
+
+    @AfterEach
+    void tearDown() {
+        userStatusService.stop();
+    }
+
+    @Test
+    @SuppressWarnings("unchecked")
+    void reconnectDuringTheOfflineBroadcastIsAnnouncedLast() throws Exception {
+        CountDownLatch offlineSending = new CountDownLatch(1);
+        CountDownLatch releaseOffline = new CountDownLatch(1);
+        doAnswer(invocation -> {
+            if (Boolean.FALSE.equals(((Map<String, Object>) invocation.getArgument(2)).get("online"))) {
+                offlineSending.countDown();
+                releaseOffline.await(5, TimeUnit.SECONDS);
+            }
+            return null;
+        }).when(messageBus).sendToUser(eq("bob"), eq("/queue/user-status"), any());
+
+        userStatusService.setUserOnline("alice", false);
+        assertThat(offlineSending.await(2, TimeUnit.SECONDS)).isTrue();
+
+        // Alice reconnects while her offline status is still going out
+        when(sessionRegistry.isOnline("alice")).thenReturn(true);
+        Thread reconnect = new Thread(() -> userStatusService.setUserOnline("alice", true));
+        reconnect.start();
+        reconnect.join(200);
+        verify(messageBus, times(1)).sendToUser(anyString(), anyString(), any());
+
+        releaseOffline.countDown();
+        reconnect.join(2000);
+        ArgumentCaptor<Object> updates = ArgumentCaptor.forClass(Object.class);
+        verify(messageBus, timeout(2000).times(2)).sendToUser(eq("bob"), eq("/queue/user-status"), updates.capture());
+        assertThat(((Map<String, Object>) updates.getAllValues().get(1)).get("online")).isEqualTo(true);
+    }
+
+    @Test
+    void staysQuietWhenTheUserIsBackBeforeTheOfflineCheck() throws Exception {
+        when(sessionRegistry.isOnline("alice")).thenReturn(true);
+
+        userStatusService.setUserOnline("alice", false);
+
+        verify(sessionRegistry, timeout(2000)).isOnline("alice");
+        Thread.sleep(50);
+        verify(messageBus, times(0)).sendToUser(anyString(), anyString(), any());
+    }
+}
@@ -172,16 +172,18 @@ const ChatPage = () => {
                     client.subscribe(
                         `/topic/reactions/${roomId}`,
                         (message) => {
-                            const reactions = JSON.parse(message.body);
-                            console.log("😊 Reactions updated:", reactions);
-
-                            if (reactions.length > 0) {
-                                const messageId = reactions[0].messageId;
-                                setMessageReactions(prev => ({
+                            // Server sends one toggle at a time, apply it locally
+                            const delta = JSON.parse(message.body);
+                            console.log("😊 Reaction changed:", delta);
+
+                            setMessageReactions(prev => {
+                                const current = (prev[delta.messageId] || []).filter(r =>
+                                    !(r.userId === delta.userId && r.emoji === delta.emoji));
+                                return {
                                     ...prev,
-                                    [messageId]: reactions
-                                }));
-                            }
+                                    [delta.messageId]: delta.added ? [...current, delta] : current
+                                };
+                            });
                         }
                     );
 
@@ -112,11 +112,14 @@ const PrivateChat = ({ selectedUser, stompClient, onInitiateCall }) => {
         const readReceiptSubscription = stompClient.subscribe(
             `/user/queue/read-receipt`,
             (message) => {
-                const messageIds = JSON.parse(message.body);
-                console.log('✅ Received read receipt for messages:', messageIds);
+                const { readerId, readUpTo } = JSON.parse(message.body);
+                console.log('✅ Received read receipt from', readerId, 'up to', readUpTo);
+                const watermark = new Date(readUpTo);
                 setMessages((prev) =>
                     prev.map((msg) =>
-                        messageIds.includes(msg.id) ? { ...msg, isRead: true, read: true } : msg
+                        msg.receiverId === readerId && new Date(msg.timestamp) <= watermark
+                            ? { ...msg, isRead: true, read: true }
+                            : msg
                     )
                 );
             }
@@ -137,6 +140,21 @@ const PrivateChat = ({ selectedUser, stompClient, onInitiateCall }) => {
             }
         );
 
+        // Async uploads: the placeholder message gets its file URL (or FAILED)
+        const messageUpdatedSubscription = stompClient.subscribe(
+            `/user/queue/message-updated`,
+            (message) => {
+                const updatedMessage = JSON.parse(message.body);
+                setMessages((prev) =>
+                    prev.map((msg) =>
+                        msg.id === updatedMessage.id
+                            ? { ...msg, ...updatedMessage, uploadStatus: updatedMessage.uploadStatus }
+                            : msg
+                    )
+                );
+            }
+        );
+
         // Subscribe to delete message events
         const deleteSubscription = stompClient.subscribe(
             `/user/queue/delete-message`,
@@ -162,6 +180,7 @@ const PrivateChat = ({ selectedUser, stompClient, onInitiateCall }) => {
             if (readReceiptSubscription) readReceiptSubscription.unsubscribe();
             if (reactionSubscription) reactionSubscription.unsubscribe();
             if (deleteSubscription) deleteSubscription.unsubscribe();
+            if (messageUpdatedSubscription) messageUpdatedSubscription.unsubscribe();
         };
     }, [stompClient, stompClient?.connected, currentUser, selectedUser]);
 
@@ -276,6 +295,7 @@ const PrivateChat = ({ selectedUser, stompClient, onInitiateCall }) => {
             formData.append('file', selectedFile);
             formData.append('receiverId', selectedUser.id);
             formData.append('content', selectedFile.name);
+            formData.append('async', 'true');
 
             console.log('📂 FormData:', {
                 fileName: selectedFile.name,
@@ -394,6 +414,7 @@ const PrivateChat = ({ selectedUser, stompClient, onInitiateCall }) => {
             formData.append('file', file);
             formData.append('receiverId', selectedUser.id);
             formData.append('content', 'Voice Note');
+            formData.append('async', 'true');
 
             console.log('🎤 FormData:', {
                 fileName: file.name,
@@ -801,14 +822,27 @@ const PrivateChat = ({ selectedUser, stompClient, onInitiateCall }) => {
                                                 </div>
                                             )}
 
+                                            {/* Async upload still running, or given up */}
+                                            {!message.fileUrl && message.uploadStatus && (
+                                                <div className="flex items-center gap-2 p-3 mb-1 rounded-md bg-black/20 min-w-[200px] text-sm">
+                                                    <FiFile size={18} className="text-blue-400" />
+                                                    <span className="truncate flex-1">{message.fileName || 'File'}</span>
+                                                    <span className={`text-[10px] uppercase ${message.uploadStatus === 'FAILED' ? 'text-red-400' : 'opacity-60 animate-pulse'}`}>
+                                                        {message.uploadStatus === 'FAILED' ? 'Upload failed' : 'Uploading…'}
+                                                    </span>
+                                                </div>
+                                            )}
+
                                             {/* File Attachment Rendering */}
                                             {message.fileUrl && (
                                                 <div className="mb-1 rounded-md overflow-hidden bg-black/10">
                                                     {message.fileType?.startsWith('image') ? (
                                                         <a href={message.fileUrl} target="_blank" rel="noopener noreferrer" className="block">
                                                             <img
-                                                                src={message.fileUrl}
+                                                                src={message.thumbnailUrl || message.fileUrl}
                                                                 alt="shared"
+                                                                loading="lazy"
+                                                                style={message.placeholder ? { backgroundImage: `url(${message.placeholder})`, backgroundSize: 'cover' } : undefined}
                                                                 className="max-h-80 w-full object-cover hover:opacity-90 transition-opacity"
                                                             />
                                                         </a>
@@ -22,7 +22,7 @@ const UserList = ({ onSelectUser, selectedUserId, stompClient }) => {
     useEffect(() => {
         if (!stompClient || !stompClient.connected) return;
 
-        const subscription = stompClient.subscribe('/topic/user-status', (message) => {
+        const subscription = stompClient.subscribe('/user/queue/user-status', (message) => {
             const statusUpdate = JSON.parse(message.body);
             setUsers((prevUsers) =>
                 prevUsers.map((u) =>